@@ -1,22 +1,44 @@
 package gov.nih.nlm;
 
 import com.arangodb.*;
+import com.arangodb.entity.BaseDocument;
+import com.arangodb.entity.BaseEdgeDocument;
+import com.arangodb.entity.CollectionEntity;
 import com.arangodb.entity.EdgeDefinition;
+import com.arangodb.entity.ErrorEntity;
+import com.arangodb.entity.MultiDocumentEntity;
 import com.arangodb.entity.arangosearch.AnalyzerFeature;
 import com.arangodb.entity.arangosearch.CollectionLink;
 import com.arangodb.entity.arangosearch.FieldLink;
 import com.arangodb.entity.arangosearch.StoreValuesType;
 import com.arangodb.entity.arangosearch.analyzer.*;
+import com.arangodb.model.CollectionsReadOptions;
+import com.arangodb.model.DocumentCreateOptions;
 import com.arangodb.model.EdgeCollectionRemoveOptions;
+import com.arangodb.model.OverwriteMode;
 import com.arangodb.model.VertexCollectionRemoveOptions;
 import com.arangodb.model.arangosearch.ArangoSearchCreateOptions;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * Provides utilities for managing named ArangoDB databases, graphs, vertex
@@ -26,17 +48,90 @@ import java.util.*;
  */
 public class ArangoDbUtilities {
 
+    /**
+     * Default number of documents written in each multi-document request
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /**
+     * Default maximum number of multi-document requests in flight for each
+     * collection
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * Default maximum number of collections loading at once
+     */
+    public static final int DEFAULT_MAX_COLLECTIONS = 8;
+
+    /**
+     * Name of the document attribute containing the hash of the document
+     * content, used to find documents which changed
+     */
+    public static final String CONTENT_HASH = "ContentHash";
+
+    /**
+     * Default minimum ratio of the number of documents in each collection of
+     * a staging database to the number in the database it replaces
+     */
+    public static final double DEFAULT_MIN_COUNT_RATIO = 0.9;
+
+    /**
+     * Name of the collection, in the system database, containing a document
+     * for each public database name, which points to the physical database
+     * in service
+     */
+    public static final String DATABASE_POINTERS = "DatabasePointers";
+
+    /**
+     * Name of the collection, in each ontology database, containing a
+     * document for each ontology file stem, which records the release
+     * version from which the database was built
+     */
+    public static final String ONTOLOGY_RELEASES = "OntologyReleases";
+
+    // Assign a mapper which writes map entries sorted by key
+    private static final ObjectMapper canonicalMapper = new ObjectMapper().configure(
+            SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
     /**
      * An ArangoDB instance
      */
     public final ArangoDB arangoDB;
 
+    /**
+     * Number of documents written in each multi-document request
+     */
+    public final int batchSize;
+
+    /**
+     * Maximum number of multi-document requests in flight for each
+     * collection, or one to wait for each request to complete
+     */
+    public final int maxInFlight;
+
+    /**
+     * Maximum number of collections loading at once
+     */
+    public final int maxCollections;
+
+    /**
+     * Minimum ratio of the number of documents in each collection of a
+     * staging database to the number in the database it replaces
+     */
+    public final double minCountRatio;
+
+    /**
+     * Policy for retrying writes, sizing batches, and recording documents
+     * which could not be written
+     */
+    public final WritePolicy writePolicy;
+
     /**
      * Build the ArangoDB instance specified in the system environment.
      */
     public ArangoDbUtilities() {
-        Map<String, String> env = System.getenv();
-        arangoDB = new ArangoDB.Builder().host(env.get("ARANGO_DB_HOST"), Integer.parseInt(env.get("ARANGO_DB_PORT"))).user(env.get("ARANGO_DB_USER")).password(env.get("ARANGO_DB_PASSWORD")).build();
+        this(System.getenv());
     }
 
     /**
@@ -46,6 +141,15 @@ public class ArangoDbUtilities {
      */
     public ArangoDbUtilities(Map<String, String> env) {
         arangoDB = new ArangoDB.Builder().host(env.get("ARANGO_DB_HOST"), Integer.parseInt(env.get("ARANGO_DB_PORT"))).user(env.get("ARANGO_DB_USER")).password(env.get("ARANGO_DB_PASSWORD")).build();
+        String batchSizeValue = env.get("ARANGO_DB_BATCH_SIZE");
+        batchSize = batchSizeValue != null ? Integer.parseInt(batchSizeValue) : DEFAULT_BATCH_SIZE;
+        String maxInFlightValue = env.get("ARANGO_DB_MAX_IN_FLIGHT");
+        maxInFlight = maxInFlightValue != null ? Integer.parseInt(maxInFlightValue) : DEFAULT_MAX_IN_FLIGHT;
+        String maxCollectionsValue = env.get("ARANGO_DB_MAX_COLLECTIONS");
+        maxCollections = maxCollectionsValue != null ? Integer.parseInt(maxCollectionsValue) : DEFAULT_MAX_COLLECTIONS;
+        String minCountRatioValue = env.get("ARANGO_DB_MIN_COUNT_RATIO");
+        minCountRatio = minCountRatioValue != null ? Double.parseDouble(minCountRatioValue) : DEFAULT_MIN_COUNT_RATIO;
+        writePolicy = new WritePolicy(batchSize, env);
     }
 
     /**
@@ -105,6 +209,225 @@ public class ArangoDbUtilities {
         }
     }
 
+    /**
+     * Resolve a public database name to the name of the physical database in
+     * service, using the pointer document for the public name, if any.
+     *
+     * @param publicName Public database name
+     * @return Name of the physical database in service, or the public name if
+     * no pointer document exists
+     */
+    public String resolveDatabase(String publicName) {
+        ArangoCollection pointers = arangoDB.db().collection(DATABASE_POINTERS);
+        if (!pointers.exists()) {
+            return publicName;
+        }
+        BaseDocument pointer = pointers.getDocument(publicName, BaseDocument.class);
+        if (pointer == null || pointer.getAttribute("Database") == null) {
+            return publicName;
+        }
+        return pointer.getAttribute("Database").toString();
+    }
+
+    /**
+     * Test if the database named exactly a public name is stale, which is the
+     * case once the public name points to another physical database, since
+     * the database named exactly the public name is then never written
+     * again.
+     *
+     * @param publicName Public database name
+     * @return True if the database named exactly the public name exists, but
+     * is not in service
+     */
+    public boolean isStale(String publicName) {
+        return !resolveDatabase(publicName).equals(publicName) && arangoDB.db(publicName).exists();
+    }
+
+    /**
+     * Fail if the database named exactly a public name is stale, since
+     * clients which open it directly, rather than resolving the public name
+     * through its pointer, would silently serve a graph which is no longer
+     * updated.
+     *
+     * @param publicName Public database name
+     * @throws IllegalStateException If the database is stale
+     */
+    public void checkNotStale(String publicName) {
+        if (isStale(publicName)) {
+            throw new IllegalStateException("Database " + publicName + " is stale, since " + resolveDatabase(publicName) + " is in service: update every client to resolve " + publicName + " through " + DATABASE_POINTERS + " in the _system database, then delete " + publicName);
+        }
+    }
+
+    /**
+     * Get the name of the physical database not in service for a public
+     * database name, alternating between a blue and a green copy.
+     *
+     * @param publicName Public database name
+     * @return Name of the staging database
+     */
+    public String getStagingDatabaseName(String publicName) {
+        String blueName = publicName + "-blue";
+        return resolveDatabase(publicName).equals(blueName) ? publicName + "-green" : blueName;
+    }
+
+    /**
+     * Point each public database name to a physical database in a single
+     * query on a single collection, which is atomic, so that clients never
+     * see some pointers moved, and others not.
+     *
+     * @param databaseNames Name of the physical database by public database name
+     */
+    public void setDatabasePointers(Map<String, String> databaseNames) {
+        ArangoDatabase systemDb = arangoDB.db();
+        if (!systemDb.collection(DATABASE_POINTERS).exists()) {
+            systemDb.createCollection(DATABASE_POINTERS);
+        }
+        List<Map<String, String>> pointers = databaseNames.entrySet().stream().map(entry -> Map.of("key",
+                entry.getKey(), "database", entry.getValue())).toList();
+        String query = "FOR pointer IN @pointers UPSERT { _key: pointer.key } INSERT { _key: pointer.key, Database: pointer.database } UPDATE { Database: pointer.database } IN @@collection";
+        try (ArangoCursor<Void> cursor = systemDb.query(query, Void.class, Map.of("@collection", DATABASE_POINTERS,
+                "pointers", pointers))) {
+            databaseNames.forEach((publicName, databaseName) -> System.out.println("Pointed database " + publicName + " to " + databaseName));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the release version of an ontology from which a database was
+     * built.
+     *
+     * @param db   Database built from the ontology
+     * @param stem Ontology file stem
+     * @return Release version, or null if none is recorded
+     */
+    public String getReleaseVersion(ArangoDatabase db, String stem) {
+        ArangoCollection releases = db.collection(ONTOLOGY_RELEASES);
+        if (!releases.exists()) {
+            return null;
+        }
+        BaseDocument release = releases.getDocument(stem, BaseDocument.class);
+        if (release == null || release.getAttribute("Version") == null) {
+            return null;
+        }
+        return release.getAttribute("Version").toString();
+    }
+
+    /**
+     * Record the release version of each ontology from which a database was
+     * built.
+     *
+     * @param db       Database built from the ontologies
+     * @param versions Release version by ontology file stem
+     */
+    public void setReleaseVersions(ArangoDatabase db, Map<String, String> versions) {
+        if (!db.collection(ONTOLOGY_RELEASES).exists()) {
+            db.createCollection(ONTOLOGY_RELEASES);
+        }
+        List<Map<String, String>> releases = versions.entrySet().stream().map(entry -> Map.of("key", entry.getKey(),
+                "version", entry.getValue())).toList();
+        String query = "FOR release IN @releases UPSERT { _key: release.key } INSERT { _key: release.key, Version: release.version } UPDATE { Version: release.version } IN @@collection";
+        try (ArangoCursor<Void> cursor = db.query(query, Void.class, Map.of("@collection", ONTOLOGY_RELEASES,
+                "releases", releases))) {
+            versions.forEach((stem, version) -> System.out.println("Recorded release " + version + " of " + stem + " in " + db.name()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Count the documents in each collection of a database, excluding system
+     * collections.
+     *
+     * @param db Database containing the collections
+     * @return Number of documents by collection name
+     */
+    public Map<String, Long> countDocuments(ArangoDatabase db) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (CollectionEntity collection : db.getCollections(new CollectionsReadOptions().excludeSystem(true))) {
+            counts.put(collection.getName(), db.collection(collection.getName()).count().getCount());
+        }
+        return counts;
+    }
+
+    /**
+     * Validate the number of documents in each collection of a staging
+     * database against the number in the database it replaces. The staging
+     * database must contain documents, and each collection of the replaced
+     * database must retain at least the specified ratio of its documents.
+     *
+     * @param stagingCounts Number of documents by collection name in the
+     *                      staging database
+     * @param activeCounts  Number of documents by collection name in the
+     *                      database replaced, empty if none
+     * @param minCountRatio Minimum ratio of staging to replaced documents
+     * @return Description of each problem found, empty if valid
+     */
+    public static List<String> validateCounts(Map<String, Long> stagingCounts,
+                                              Map<String, Long> activeCounts,
+                                              double minCountRatio) {
+        List<String> problems = new ArrayList<>();
+        if (stagingCounts.values().stream().mapToLong(Long::longValue).sum() == 0) {
+            problems.add("Staging database contains no documents");
+        }
+        for (Map.Entry<String, Long> entry : activeCounts.entrySet()) {
+            long stagingCount = stagingCounts.getOrDefault(entry.getKey(), 0L);
+            if (stagingCount < minCountRatio * entry.getValue()) {
+                problems.add(entry.getKey() + " contains " + stagingCount + " documents, but " + entry.getValue()
+                        + " are in service");
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Promote a staging database into service under a public database name,
+     * as described for promoteDatabases.
+     *
+     * @param publicName  Public database name
+     * @param stagingName Name of the staging database
+     */
+    public void promoteDatabase(String publicName, String stagingName) {
+        promoteDatabases(Map.of(publicName, stagingName));
+    }
+
+    /**
+     * Promote staging databases into service under public database names,
+     * after validating the document counts of every staging database. The
+     * pointers for all public names are then swapped to the staging
+     * databases at once, and the physical databases previously in service
+     * are deleted, including the database named exactly the public name, on
+     * the first promotion, so that no stale copy is left for clients which
+     * open it directly. If any validation fails, no pointer is moved, and
+     * every database in service is left untouched.
+     *
+     * @param stagingNames Name of the staging database by public database name
+     */
+    public void promoteDatabases(Map<String, String> stagingNames) {
+        Map<String, String> activeNames = new TreeMap<>();
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, String> entry : new TreeMap<>(stagingNames).entrySet()) {
+            String publicName = entry.getKey();
+            String stagingName = entry.getValue();
+            String activeName = resolveDatabase(publicName);
+            if (activeName.equals(stagingName)) {
+                throw new IllegalArgumentException("Database " + stagingName + " is already in service as " + publicName);
+            }
+            activeNames.put(publicName, activeName);
+            ArangoDatabase activeDb = arangoDB.db(activeName);
+            Map<String, Long> activeCounts = activeDb.exists() ? countDocuments(activeDb) : Map.of();
+            for (String problem : validateCounts(countDocuments(arangoDB.db(stagingName)), activeCounts, minCountRatio)) {
+                problems.add(stagingName + ": " + problem);
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new RuntimeException("Could not promote databases " + stagingNames.values() + ": " + String.join("; ", problems));
+        }
+        stagingNames.forEach((publicName, stagingName) -> System.out.println("Promoting database " + stagingName + " to " + publicName + ", replacing " + activeNames.get(publicName)));
+        setDatabasePointers(stagingNames);
+        activeNames.values().forEach(this::deleteDatabase);
+    }
+
     /**
      * Create or get a named graph.
      *
@@ -324,4 +647,911 @@ public class ArangoDbUtilities {
             System.out.println("View indexed not found, skipping");
         }
     }
+
+    /**
+     * Insert documents into a collection using multi-document requests of at
+     * most the specified size. Documents which already exist are updated.
+     *
+     * @param collection Collection into which to insert the documents
+     * @param documents  Documents to insert
+     * @param batchSize  Maximum number of documents in each request
+     * @param <T>        Document type
+     * @return Report for each batch
+     */
+    public <T extends BaseDocument> List<BatchReport> insertDocuments(ArangoCollection collection,
+                                                                      List<T> documents,
+                                                                      int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<BatchReport> batchReports = new ArrayList<>();
+        DocumentCreateOptions options = new DocumentCreateOptions().overwriteMode(OverwriteMode.update).silent(false);
+        int batchNumber = 0;
+        int fromIndex = 0;
+        while (fromIndex < documents.size()) {
+            List<T> batch = documents.subList(fromIndex, Math.min(fromIndex + writePolicy.getBatchSize(batchSize),
+                    documents.size()));
+            batchReports.add(insertBatch(collection, batch, batchNumber++, options));
+            fromIndex += batch.size();
+        }
+        return batchReports;
+    }
+
+    /**
+     * Insert documents into a collection using multi-document requests of at
+     * most the specified size, sent through the asynchronous driver so that
+     * up to the specified number of requests are in flight at once. Sending
+     * waits whenever that number of requests is unanswered, which applies
+     * backpressure when the server slows down. Documents which already exist
+     * are updated. Documents which could not be written are written again
+     * synchronously, retrying as the write policy allows.
+     *
+     * @param collection  Collection into which to insert the documents
+     * @param documents   Documents to insert
+     * @param batchSize   Maximum number of documents in each request
+     * @param maxInFlight Maximum number of requests in flight
+     * @param <T>         Document type
+     * @return Report for each batch
+     */
+    public <T extends BaseDocument> List<BatchReport> insertDocumentsAsync(ArangoCollection collection,
+                                                                           List<T> documents,
+                                                                           int batchSize,
+                                                                           int maxInFlight) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum requests in flight must be positive: " + maxInFlight);
+        }
+        long startTime = System.nanoTime();
+        ArangoCollectionAsync asyncCollection = arangoDB.async().db(collection.db().name()).collection(collection.name());
+        DocumentCreateOptions options = new DocumentCreateOptions().overwriteMode(OverwriteMode.update).silent(false);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<CompletableFuture<BatchReport>> futures = new ArrayList<>();
+        List<List<T>> batches = new ArrayList<>();
+        int batchNumber = 0;
+        int fromIndex = 0;
+        while (fromIndex < documents.size()) {
+            List<T> batch = documents.subList(fromIndex, Math.min(fromIndex + writePolicy.getBatchSize(batchSize),
+                    documents.size()));
+            fromIndex += batch.size();
+            batches.add(batch);
+            futures.add(sendBatchAsync(asyncCollection, collection.name(), batch, batchNumber++, options, inFlight));
+        }
+        List<BatchReport> batchReports = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            batchReports.add(insertFailedDocuments(collection, batches.get(i), futures.get(i).join(), options));
+        }
+        long stopTime = System.nanoTime();
+        double seconds = (stopTime - startTime) / 1e9;
+        System.out.println("Inserted " + documents.size() + " documents into " + collection.name() + " in " + seconds + " s (" + Math.round(
+                documents.size() / Math.max(seconds, 1e-9)) + " documents/s)");
+        return batchReports;
+    }
+
+    /**
+     * Insert documents into a collection as insertDocumentsAsync does, except
+     * that the documents are divided into journal batches of exactly the
+     * specified size, so that each batch contains the same documents in each
+     * run, provided the documents are sorted. Batches committed to the
+     * checkpoint in a previous run are skipped. Each other batch is sent in
+     * requests sized by the write policy, with up to the specified number in
+     * flight, and is committed to the checkpoint as soon as every request
+     * completes without errors, or once the documents which could not be
+     * written are written again.
+     *
+     * @param collection  Collection into which to insert the documents
+     * @param documents   Documents to insert, sorted by key
+     * @param batchSize   Number of documents in each journal batch
+     * @param maxInFlight Maximum number of requests in flight
+     * @param checkpoint  Journal of committed batches
+     * @param <T>         Document type
+     * @return Report for each batch written
+     */
+    public <T extends BaseDocument> List<BatchReport> insertDocumentsAsync(ArangoCollection collection,
+                                                                           List<T> documents,
+                                                                           int batchSize,
+                                                                           int maxInFlight,
+                                                                           LoadCheckpoint checkpoint) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum requests in flight must be positive: " + maxInFlight);
+        }
+        long startTime = System.nanoTime();
+        ArangoCollectionAsync asyncCollection = arangoDB.async().db(collection.db().name()).collection(collection.name());
+        DocumentCreateOptions options = new DocumentCreateOptions().overwriteMode(OverwriteMode.update).silent(false);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<CompletableFuture<BatchReport>> futures = new ArrayList<>();
+        List<List<T>> batches = new ArrayList<>();
+        int nSkipped = 0;
+        int nDocuments = 0;
+        int batchNumber = 0;
+        for (int fromIndex = 0; fromIndex < documents.size(); fromIndex += batchSize) {
+            int number = batchNumber++;
+            if (checkpoint.isCommitted(collection.name(), number)) {
+                nSkipped++;
+                continue;
+            }
+            List<T> batch = documents.subList(fromIndex, Math.min(fromIndex + batchSize, documents.size()));
+            batches.add(batch);
+            nDocuments += batch.size();
+
+            // Send the batch in requests sized by the write policy, and commit it once all complete without errors
+            List<CompletableFuture<BatchReport>> requestFutures = new ArrayList<>();
+            int requestIndex = 0;
+            while (requestIndex < batch.size()) {
+                List<T> request = batch.subList(requestIndex, Math.min(requestIndex + writePolicy.getBatchSize(
+                        batchSize), batch.size()));
+                requestIndex += request.size();
+                requestFutures.add(sendBatchAsync(asyncCollection, collection.name(), request, number, options,
+                        inFlight));
+            }
+            futures.add(CompletableFuture.allOf(requestFutures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<String> failedKeys = new ArrayList<>();
+                List<String> errorMessages = new ArrayList<>();
+                for (CompletableFuture<BatchReport> requestFuture : requestFutures) {
+                    failedKeys.addAll(requestFuture.join().failedKeys());
+                    errorMessages.addAll(requestFuture.join().errorMessages());
+                }
+                BatchReport batchReport = new BatchReport(collection.name(), number, batch.size(), failedKeys,
+                        errorMessages);
+                if (!batchReport.hasErrors()) {
+                    checkpoint.commit(collection.name(), number);
+                }
+                return batchReport;
+            }));
+        }
+        List<BatchReport> batchReports = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            BatchReport batchReport = futures.get(i).join();
+            if (batchReport.hasErrors()) {
+                batchReport = insertFailedDocuments(collection, batches.get(i), batchReport, options);
+                if (!batchReport.hasErrors()) {
+                    checkpoint.commit(collection.name(), batchReport.batchNumber());
+                }
+            }
+            batchReports.add(batchReport);
+        }
+        if (nSkipped > 0) {
+            System.out.println("Skipped " + nSkipped + " committed batches of " + collection.name());
+        }
+        long stopTime = System.nanoTime();
+        double seconds = (stopTime - startTime) / 1e9;
+        System.out.println("Inserted " + nDocuments + " documents into " + collection.name() + " in " + seconds + " s (" + Math.round(
+                nDocuments / Math.max(seconds, 1e-9)) + " documents/s)");
+        return batchReports;
+    }
+
+    /**
+     * Send a multi-document request through the asynchronous driver, after
+     * waiting for one of the specified permits, which is released once the
+     * request completes. Latency, and failures which indicate the server is
+     * overloaded, are recorded by the write policy.
+     *
+     * @param asyncCollection Asynchronous collection into which to insert the
+     *                        documents
+     * @param collectionName  Name of the collection
+     * @param batch           Documents to insert
+     * @param batchNumber     Number of the batch within the collection
+     * @param options         Options for the multi-document request
+     * @param inFlight        Permits limiting the number of requests in flight
+     * @param <T>             Document type
+     * @return Report for the batch, once the request completes
+     */
+    private <T extends BaseDocument> CompletableFuture<BatchReport> sendBatchAsync(ArangoCollectionAsync asyncCollection,
+                                                                                   String collectionName,
+                                                                                   List<T> batch,
+                                                                                   int batchNumber,
+                                                                                   DocumentCreateOptions options,
+                                                                                   Semaphore inFlight) {
+        inFlight.acquireUninterruptibly();
+        long sendTime = System.nanoTime();
+        CompletableFuture<BatchReport> future;
+        try {
+            future = asyncCollection.insertDocuments(batch, options).handle((result, throwable) -> {
+                if (throwable != null) {
+                    // Count only failures which indicate the server is overloaded
+                    if (WritePolicy.isRetryable(throwable)) {
+                        writePolicy.recordFailure();
+                    }
+                    return createBatchReport(collectionName, batch, batchNumber, unwrap(throwable));
+                }
+                writePolicy.recordLatency(System.nanoTime() - sendTime);
+                return createBatchReport(collectionName, batch, batchNumber, result);
+            });
+        } catch (ArangoDBException e) {
+            if (WritePolicy.isRetryable(e)) {
+                writePolicy.recordFailure();
+            }
+            future = CompletableFuture.completedFuture(createBatchReport(collectionName, batch, batchNumber, e));
+        }
+        return future.whenComplete((batchReport, throwable) -> inFlight.release());
+    }
+
+    /**
+     * Write the documents of a batch which could not be written again,
+     * synchronously, retrying as the write policy allows.
+     *
+     * @param collection  Collection into which to insert the documents
+     * @param batch       Documents in the batch
+     * @param batchReport Report for the batch
+     * @param options     Options for the multi-document request
+     * @param <T>         Document type
+     * @return Report for the batch, listing only the documents which still
+     * could not be written
+     */
+    private <T extends BaseDocument> BatchReport insertFailedDocuments(ArangoCollection collection,
+                                                                       List<T> batch,
+                                                                       BatchReport batchReport,
+                                                                       DocumentCreateOptions options) {
+        if (!batchReport.hasErrors()) {
+            return batchReport;
+        }
+        Set<String> failedKeys = new HashSet<>(batchReport.failedKeys());
+        List<T> failedDocs = batch.stream().filter(doc -> failedKeys.contains(doc.getKey())).toList();
+        BatchReport retryReport = insertBatch(collection, failedDocs, batchReport.batchNumber(), options);
+        return new BatchReport(collection.name(), batchReport.batchNumber(), batchReport.nDocuments(),
+                retryReport.failedKeys(), retryReport.errorMessages());
+    }
+
+    /**
+     * Insert documents into a collection using multi-document requests of at
+     * most the specified size. Documents which already exist are replaced, so
+     * that attributes which are no longer present are removed.
+     *
+     * @param collection Collection into which to insert the documents
+     * @param documents  Documents to insert, or replace
+     * @param batchSize  Maximum number of documents in each request
+     * @param <T>        Document type
+     * @return Report for each batch
+     */
+    public <T extends BaseDocument> List<BatchReport> replaceDocuments(ArangoCollection collection,
+                                                                       List<T> documents,
+                                                                       int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<BatchReport> batchReports = new ArrayList<>();
+        DocumentCreateOptions options = new DocumentCreateOptions().overwriteMode(OverwriteMode.replace).silent(false);
+        int batchNumber = 0;
+        int fromIndex = 0;
+        while (fromIndex < documents.size()) {
+            List<T> batch = documents.subList(fromIndex, Math.min(fromIndex + writePolicy.getBatchSize(batchSize),
+                    documents.size()));
+            batchReports.add(insertBatch(collection, batch, batchNumber++, options));
+            fromIndex += batch.size();
+        }
+        return batchReports;
+    }
+
+    /**
+     * Remove documents from a collection using multi-document requests of at
+     * most the specified size, retrying, sizing batches, and recording
+     * documents which could not be removed as the write policy allows.
+     *
+     * @param collection Collection from which to remove the documents
+     * @param keys       Keys of the documents to remove
+     * @param batchSize  Maximum number of documents in each request
+     * @return Report for each batch
+     */
+    public List<BatchReport> removeDocuments(ArangoCollection collection, List<String> keys, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<BatchReport> batchReports = new ArrayList<>();
+        int batchNumber = 0;
+        int fromIndex = 0;
+        while (fromIndex < keys.size()) {
+            List<String> batch = keys.subList(fromIndex, Math.min(fromIndex + writePolicy.getBatchSize(batchSize),
+                    keys.size()));
+            batchReports.add(removeBatch(collection, batch, batchNumber++));
+            fromIndex += batch.size();
+        }
+        return batchReports;
+    }
+
+    /**
+     * Get the content hash of each document in a collection, by key. Documents
+     * without a content hash map to null.
+     *
+     * @param collection Collection containing the documents
+     * @return Content hash by document key
+     */
+    public Map<String, String> getContentHashes(ArangoCollection collection) {
+        Map<String, String> contentHashes = new HashMap<>();
+        String query = "FOR d IN @@collection RETURN [d._key, d." + CONTENT_HASH + "]";
+        try (ArangoCursor<String[]> cursor = collection.db().query(query, String[].class, Map.of("@collection",
+                collection.name()))) {
+            cursor.forEachRemaining(keyAndHash -> contentHashes.put(keyAndHash[0], keyAndHash[1]));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return contentHashes;
+    }
+
+    /**
+     * Get the distinct keys of the vertices to which the edges of an edge
+     * collection terminate.
+     *
+     * @param edgeCollection Edge collection containing the edges
+     * @return Keys of the vertices to which the edges terminate
+     */
+    public Set<String> getTargetKeys(ArangoCollection edgeCollection) {
+        Set<String> targetKeys = new HashSet<>();
+        String query = "FOR e IN @@collection RETURN DISTINCT PARSE_IDENTIFIER(e._to).key";
+        try (ArangoCursor<String> cursor = edgeCollection.db().query(query, String.class, Map.of("@collection",
+                edgeCollection.name()))) {
+            cursor.forEachRemaining(targetKeys::add);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return targetKeys;
+    }
+
+    /**
+     * Get the keys, of those specified, of the documents stored in a
+     * collection.
+     *
+     * @param collection Collection which may contain the documents
+     * @param keys       Keys of the documents to find
+     * @return Keys of the documents stored
+     */
+    public Set<String> getExistingKeys(ArangoCollection collection, Collection<String> keys) {
+        Set<String> existingKeys = new HashSet<>();
+        String query = "FOR k IN @keys FILTER DOCUMENT(@@collection, k) != null RETURN k";
+        try (ArangoCursor<String> cursor = collection.db().query(query, String.class, Map.of("@collection",
+                collection.name(), "keys", keys))) {
+            cursor.forEachRemaining(existingKeys::add);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return existingKeys;
+    }
+
+    /**
+     * Get the document ids, of those specified, of the vertices from, or to
+     * which an edge of an edge collection is stored.
+     *
+     * @param edgeCollection Edge collection which may contain the edges
+     * @param vertexIds      Document ids of the vertices
+     * @return Document ids of the vertices with edges stored
+     */
+    public Set<String> getConnectedVertexIds(ArangoCollection edgeCollection, Collection<String> vertexIds) {
+        Set<String> connectedIds = new HashSet<>();
+        String query = "FOR id IN @ids FILTER LENGTH(FOR e IN @@collection FILTER e._from == id OR e._to == id LIMIT 1 RETURN 1) > 0 RETURN id";
+        try (ArangoCursor<String> cursor = edgeCollection.db().query(query, String.class, Map.of("@collection",
+                edgeCollection.name(), "ids", vertexIds))) {
+            cursor.forEachRemaining(connectedIds::add);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return connectedIds;
+    }
+
+    /**
+     * Remove the edges of an edge collection which terminate at any of the
+     * specified vertices.
+     *
+     * @param edgeCollection Edge collection containing the edges
+     * @param vertexIds      Document ids of the vertices
+     * @return Number of edges removed
+     */
+    public int removeEdgesTo(ArangoCollection edgeCollection, Collection<String> vertexIds) {
+        String query = "FOR e IN @@collection FILTER e._to IN @ids REMOVE e IN @@collection RETURN 1";
+        try (ArangoCursor<Integer> cursor = edgeCollection.db().query(query, Integer.class, Map.of("@collection",
+                edgeCollection.name(), "ids", vertexIds))) {
+            return cursor.asListRemaining().size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Compute the SHA-256 hash of the canonical JSON of the attributes of a
+     * document, with keys sorted, excluding the content hash attribute, and
+     * including the from and to document ids of an edge document.
+     *
+     * @param doc Document to hash
+     * @return Hexadecimal SHA-256 hash
+     */
+    public static String computeContentHash(BaseDocument doc) {
+        Map<String, Object> content = new TreeMap<>(doc.getProperties());
+        content.remove(CONTENT_HASH);
+        if (doc instanceof BaseEdgeDocument edgeDoc) {
+            content.put("_from", edgeDoc.getFrom());
+            content.put("_to", edgeDoc.getTo());
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonicalMapper.writeValueAsBytes(content)));
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Insert a single batch of documents, collecting the key and message of
+     * each document which could not be written, as the write policy allows.
+     *
+     * @param collection  Collection into which to insert the documents
+     * @param batch       Documents to insert
+     * @param batchNumber Number of the batch within the collection
+     * @param options     Options for the multi-document request
+     * @param <T>         Document type
+     * @return Report for the batch
+     */
+    private <T extends BaseDocument> BatchReport insertBatch(ArangoCollection collection,
+                                                             List<T> batch,
+                                                             int batchNumber,
+                                                             DocumentCreateOptions options) {
+        return writePolicy.runBatch(collection.name(), batchNumber, batch,
+                pendingDocs -> collection.insertDocuments(pendingDocs, options), doc -> doc, "insertion", "");
+    }
+
+    /**
+     * Remove a single batch of documents, collecting the key and message of
+     * each document which could not be removed, as the write policy allows.
+     * Documents which could not be removed are recorded in the dead letter
+     * file by key.
+     *
+     * @param collection  Collection from which to remove the documents
+     * @param batch       Keys of the documents to remove
+     * @param batchNumber Number of the batch within the collection
+     * @return Report for the batch
+     */
+    private BatchReport removeBatch(ArangoCollection collection, List<String> batch, int batchNumber) {
+        return writePolicy.runBatch(collection.name(), batchNumber, batch, collection::deleteDocuments,
+                BaseDocument::new, "removal", "Could not remove: ");
+    }
+
+    /**
+     * Create a report for a batch from the result of a multi-document
+     * request, collecting the key and message of each document which could
+     * not be written.
+     *
+     * @param collectionName Name of the collection
+     * @param batch          Documents in the batch
+     * @param batchNumber    Number of the batch within the collection
+     * @param result         Result of the multi-document request
+     * @param <T>            Document type
+     * @return Report for the batch
+     */
+    private static <T extends BaseDocument> BatchReport createBatchReport(String collectionName,
+                                                                          List<T> batch,
+                                                                          int batchNumber,
+                                                                          MultiDocumentEntity<?> result) {
+        return createKeyBatchReport(collectionName, batch.stream().map(BaseDocument::getKey).toList(), batchNumber,
+                result);
+    }
+
+    /**
+     * Create a report for a batch of keys from the result of a
+     * multi-document request, collecting the key and message of each document
+     * which could not be written.
+     *
+     * @param collectionName Name of the collection
+     * @param keys           Keys of the documents in the batch
+     * @param batchNumber    Number of the batch within the collection
+     * @param result         Result of the multi-document request
+     * @return Report for the batch
+     */
+    private static BatchReport createKeyBatchReport(String collectionName,
+                                                    List<String> keys,
+                                                    int batchNumber,
+                                                    MultiDocumentEntity<?> result) {
+        List<String> failedKeys = new ArrayList<>();
+        List<String> errorMessages = new ArrayList<>();
+        // Results are returned in request order, so errors can be matched to documents
+        List<Object> documentsAndErrors = result.getDocumentsAndErrors();
+        for (int i = 0; i < documentsAndErrors.size(); i++) {
+            if (documentsAndErrors.get(i) instanceof ErrorEntity error) {
+                failedKeys.add(keys.get(i));
+                errorMessages.add(error.getErrorMessage());
+            }
+        }
+        return new BatchReport(collectionName, batchNumber, keys.size(), failedKeys, errorMessages);
+    }
+
+    /**
+     * Create a report for a batch whose multi-document request failed, so
+     * that no document in the batch was written.
+     *
+     * @param collectionName Name of the collection
+     * @param batch          Documents in the batch
+     * @param batchNumber    Number of the batch within the collection
+     * @param throwable      Cause of the failure
+     * @param <T>            Document type
+     * @return Report for the batch
+     */
+    private static <T extends BaseDocument> BatchReport createBatchReport(String collectionName,
+                                                                          List<T> batch,
+                                                                          int batchNumber,
+                                                                          Throwable throwable) {
+        List<String> failedKeys = new ArrayList<>();
+        for (T doc : batch) {
+            failedKeys.add(doc.getKey());
+        }
+        return new BatchReport(collectionName, batchNumber, batch.size(), failedKeys, List.of(String.valueOf(throwable.getMessage())));
+    }
+
+    /**
+     * Unwrap the cause of an exception thrown by a completion stage.
+     *
+     * @param throwable Exception thrown by a completion stage
+     * @return Cause of the exception
+     */
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * Retries writes which failed because the server was unavailable, or timed
+     * out, with exponential backoff, sizes batches by additive increase, and
+     * multiplicative decrease, so that batches shrink when latency or errors
+     * rise, and grow again when the server keeps up, and records documents
+     * which could not be written in a dead letter file, one JSON line each.
+     */
+    public static class WritePolicy {
+
+        /**
+         * Default maximum number of times a request is sent again
+         */
+        public static final int DEFAULT_MAX_RETRIES = 5;
+
+        /**
+         * Default backoff before the first retry, in milliseconds
+         */
+        public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 200;
+
+        /**
+         * Default maximum backoff, in milliseconds
+         */
+        public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+
+        /**
+         * Default request latency above which batches shrink, in milliseconds
+         */
+        public static final long DEFAULT_TARGET_LATENCY_MILLIS = 10000;
+
+        /**
+         * Default smallest batch size
+         */
+        public static final int DEFAULT_MIN_BATCH_SIZE = 100;
+
+        // Assign HTTP status codes of requests which may succeed if sent again
+        private static final Set<Integer> RETRYABLE_CODES = Set.of(408, 429, 502, 503, 504);
+
+        /**
+         * Maximum number of times a request is sent again
+         */
+        public final int maxRetries;
+
+        /**
+         * Backoff before the first retry, in milliseconds
+         */
+        public final long initialBackoffMillis;
+
+        /**
+         * Maximum backoff, in milliseconds
+         */
+        public final long maxBackoffMillis;
+
+        /**
+         * Request latency above which batches shrink, in nanoseconds
+         */
+        public final long targetLatencyNanos;
+
+        /**
+         * Smallest batch size to which batches shrink
+         */
+        public final int minBatchSize;
+
+        /**
+         * Largest batch size, and the size of the first batch
+         */
+        public final int maxBatchSize;
+
+        /**
+         * File to which documents which could not be written are appended,
+         * or null to not record them
+         */
+        public final Path deadLetterFile;
+
+        private int batchSize;
+
+        /**
+         * Build a write policy with the settings specified in the provided
+         * environment, or the defaults.
+         *
+         * @param maxBatchSize Largest batch size
+         * @param env          Environment map
+         */
+        public WritePolicy(int maxBatchSize, Map<String, String> env) {
+            this(maxBatchSize,
+                    parseSetting(env, "ARANGO_DB_MAX_RETRIES", DEFAULT_MAX_RETRIES),
+                    parseSetting(env, "ARANGO_DB_INITIAL_BACKOFF_MS", DEFAULT_INITIAL_BACKOFF_MILLIS),
+                    parseSetting(env, "ARANGO_DB_MAX_BACKOFF_MS", DEFAULT_MAX_BACKOFF_MILLIS),
+                    parseSetting(env, "ARANGO_DB_TARGET_LATENCY_MS", DEFAULT_TARGET_LATENCY_MILLIS),
+                    env.containsKey("ARANGO_DB_DEAD_LETTER_FILE") ? Path.of(env.get("ARANGO_DB_DEAD_LETTER_FILE")) :
+                            Path.of(System.getProperty("user.dir")).resolve("data/obo/dead_letters.jsonl"));
+        }
+
+        /**
+         * Build a write policy with the specified settings.
+         *
+         * @param maxBatchSize         Largest batch size
+         * @param maxRetries           Maximum number of times a request is sent again
+         * @param initialBackoffMillis Backoff before the first retry, in milliseconds
+         * @param maxBackoffMillis     Maximum backoff, in milliseconds
+         * @param targetLatencyMillis  Request latency above which batches shrink, in milliseconds
+         * @param deadLetterFile       File to which documents which could not be written are appended, or null
+         */
+        public WritePolicy(int maxBatchSize, int maxRetries, long initialBackoffMillis, long maxBackoffMillis,
+                           long targetLatencyMillis, Path deadLetterFile) {
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            this.minBatchSize = Math.min(DEFAULT_MIN_BATCH_SIZE, this.maxBatchSize);
+            this.maxRetries = maxRetries;
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            this.targetLatencyNanos = targetLatencyMillis * 1_000_000L;
+            this.deadLetterFile = deadLetterFile;
+            this.batchSize = this.maxBatchSize;
+        }
+
+        /**
+         * Parse an integer setting, or use its default.
+         */
+        private static int parseSetting(Map<String, String> env, String name, int defaultValue) {
+            return env.containsKey(name) ? Integer.parseInt(env.get(name)) : defaultValue;
+        }
+
+        /**
+         * Parse a long setting, or use its default.
+         */
+        private static long parseSetting(Map<String, String> env, String name, long defaultValue) {
+            return env.containsKey(name) ? Long.parseLong(env.get(name)) : defaultValue;
+        }
+
+        /**
+         * Get the size of the next batch, at most the size requested.
+         *
+         * @param requestedBatchSize Size requested
+         * @return Size of the next batch
+         */
+        public synchronized int getBatchSize(int requestedBatchSize) {
+            return Math.max(1, Math.min(requestedBatchSize, batchSize));
+        }
+
+        /**
+         * Record the latency of a successful request, growing the batch size
+         * additively if within the target latency, otherwise halving it.
+         *
+         * @param latencyNanos Request latency, in nanoseconds
+         */
+        public synchronized void recordLatency(long latencyNanos) {
+            if (latencyNanos > targetLatencyNanos) {
+                batchSize = Math.max(minBatchSize, batchSize / 2);
+            } else {
+                batchSize = Math.min(maxBatchSize, batchSize + minBatchSize);
+            }
+        }
+
+        /**
+         * Record a failed request, halving the batch size.
+         */
+        public synchronized void recordFailure() {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+        }
+
+        /**
+         * Get the backoff before a retry, which doubles with each attempt up
+         * to the maximum, with up to half of it random to spread out retries.
+         *
+         * @param attempt Number of the attempt which failed, from zero
+         * @return Backoff, in milliseconds
+         */
+        public long getBackoffMillis(int attempt) {
+            long backoffMillis = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 30));
+            return backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        }
+
+        /**
+         * Wait before a retry.
+         *
+         * @param attempt Number of the attempt which failed, from zero
+         */
+        public void backoff(int attempt) {
+            try {
+                Thread.sleep(getBackoffMillis(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Test if a request which failed may succeed if sent again, since the
+         * server was unavailable, the connection was refused, or the request
+         * timed out. Other failures, such as serialization errors, are not
+         * transient.
+         *
+         * @param throwable Cause of the failure
+         * @return True if the request may be sent again
+         */
+        public static boolean isRetryable(Throwable throwable) {
+            for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ArangoDBException e && e.getResponseCode() != null && RETRYABLE_CODES.contains(
+                        e.getResponseCode())) {
+                    return true;
+                }
+                if (cause instanceof ConnectException || cause instanceof SocketTimeoutException
+                        || cause instanceof HttpTimeoutException || cause instanceof TimeoutException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Test if a document which could not be written may be written if
+         * sent again.
+         *
+         * @param error Error for the document
+         * @return True if the document may be sent again
+         */
+        public static boolean isRetryable(ErrorEntity error) {
+            return RETRYABLE_CODES.contains(error.getCode());
+        }
+
+        /**
+         * Send a single batch with a multi-document request, collecting the
+         * key and message of each element which failed. The request, or the
+         * elements which failed, are sent again after a backoff if the
+         * server was unavailable, or timed out, while retries remain.
+         * Elements which still failed are recorded in the dead letter file.
+         *
+         * @param collectionName   Name of the collection
+         * @param batchNumber      Number of the batch within the collection
+         * @param batch            Elements to send
+         * @param request          Sends a multi-document request for the given elements
+         * @param toDocument       Document recorded for an element which failed
+         * @param operation        Operation named when retrying
+         * @param deadLetterPrefix Prefix of the error message of each dead letter
+         * @param <E>              Element type
+         * @return Report for the batch
+         */
+        public <E> BatchReport runBatch(String collectionName,
+                                        int batchNumber,
+                                        List<E> batch,
+                                        Function<List<E>, MultiDocumentEntity<?>> request,
+                                        Function<E, BaseDocument> toDocument,
+                                        String operation,
+                                        String deadLetterPrefix) {
+            List<E> failed = new ArrayList<>();
+            List<String> errorMessages = new ArrayList<>();
+            List<E> pending = batch;
+            for (int attempt = 0; !pending.isEmpty(); attempt++) {
+                boolean canRetry = attempt < maxRetries;
+                List<E> retry = new ArrayList<>();
+                long startTime = System.nanoTime();
+                try {
+                    List<Object> documentsAndErrors = request.apply(pending).getDocumentsAndErrors();
+                    recordLatency(System.nanoTime() - startTime);
+                    // Results are returned in request order, so errors can be matched to elements
+                    for (int i = 0; i < documentsAndErrors.size(); i++) {
+                        if (documentsAndErrors.get(i) instanceof ErrorEntity error) {
+                            if (canRetry && isRetryable(error)) {
+                                retry.add(pending.get(i));
+                            } else {
+                                failed.add(pending.get(i));
+                                errorMessages.add(error.getErrorMessage());
+                            }
+                        }
+                    }
+                } catch (ArangoDBException e) {
+                    boolean isRetryable = isRetryable(e);
+                    if (isRetryable) {
+                        recordFailure();
+                    }
+                    if (canRetry && isRetryable) {
+                        retry.addAll(pending);
+                    } else {
+                        for (E element : pending) {
+                            failed.add(element);
+                            errorMessages.add(String.valueOf(e.getMessage()));
+                        }
+                    }
+                }
+                if (!retry.isEmpty()) {
+                    System.out.println("Retrying " + operation + " of " + retry.size() + " documents of batch " + batchNumber + " of " + collectionName + " after attempt " + (attempt + 1));
+                    backoff(attempt);
+                }
+                pending = retry;
+            }
+            List<BaseDocument> failedDocs = failed.stream().map(toDocument).toList();
+            writeDeadLetters(collectionName, failedDocs,
+                    errorMessages.stream().map(message -> deadLetterPrefix + message).toList());
+            return new BatchReport(collectionName, batchNumber, batch.size(),
+                    failedDocs.stream().map(BaseDocument::getKey).toList(), errorMessages);
+        }
+
+        /**
+         * Append each document which could not be written to the dead letter
+         * file, as a JSON line containing the collection name, the error
+         * message, and the document.
+         *
+         * @param collectionName Name of the collection
+         * @param docs           Documents which could not be written
+         * @param errorMessages  Message for each document
+         * @param <T>            Document type
+         */
+        public synchronized <T extends BaseDocument> void writeDeadLetters(String collectionName,
+                                                                            List<T> docs,
+                                                                            List<String> errorMessages) {
+            if (deadLetterFile == null || docs.isEmpty()) {
+                return;
+            }
+            try {
+                Path parent = deadLetterFile.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(deadLetterFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)) {
+                    for (int i = 0; i < docs.size(); i++) {
+                        Map<String, Object> document = new TreeMap<>(docs.get(i).getProperties());
+                        document.put("_key", docs.get(i).getKey());
+                        if (docs.get(i) instanceof BaseEdgeDocument edge) {
+                            document.put("_from", edge.getFrom());
+                            document.put("_to", edge.getTo());
+                        }
+                        Map<String, Object> deadLetter = new LinkedHashMap<>();
+                        deadLetter.put("collection", collectionName);
+                        deadLetter.put("error", i < errorMessages.size() ? errorMessages.get(i) : null);
+                        deadLetter.put("document", document);
+                        writer.write(canonicalMapper.writeValueAsString(deadLetter) + "\n");
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            System.err.println("Recorded " + docs.size() + " documents of " + collectionName + " which could not be written in " + deadLetterFile);
+        }
+    }
+
+    /**
+     * Reports the outcome of writing one batch of documents to a collection.
+     *
+     * @param collectionName Name of the collection
+     * @param batchNumber    Number of the batch within the collection
+     * @param nDocuments     Number of documents in the batch
+     * @param failedKeys     Keys of documents which could not be written
+     * @param errorMessages  Messages describing why documents could not be written
+     */
+    public record BatchReport(String collectionName,
+                              int batchNumber,
+                              int nDocuments,
+                              List<String> failedKeys,
+                              List<String> errorMessages) {
+
+        /**
+         * Test if any document in the batch could not be written.
+         *
+         * @return True if any document could not be written
+         */
+        public boolean hasErrors() {
+            return !failedKeys.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Batch " + batchNumber + " of " + collectionName + ": " + failedKeys.size() + " of " + nDocuments + " documents failed" + (errorMessages.isEmpty() ? "" : ", first error: " + errorMessages.get(
+                    0));
+        }
+    }
 }
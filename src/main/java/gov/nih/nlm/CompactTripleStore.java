@@ -0,0 +1,256 @@
+package gov.nih.nlm;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Contains unique triples, interning each subject, predicate, and object node
+ * into an integer dictionary, and keeping each triple as three integer ids in
+ * a primitive array. Triples are deduplicated through a primitive open
+ * addressing hash table, and are created on demand, in insertion order, when
+ * iterated. Not thread safe.
+ */
+public class CompactTripleStore extends AbstractCollection<Triple> {
+
+    // Assign initial capacities, and maximum load factor of the hash table
+    private static final int INITIAL_TRIPLES = 1024;
+    private static final double MAX_LOAD = 0.5;
+
+    // Dictionary of nodes, and of node ids
+    private final Map<Node, Integer> nodeIds = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+
+    // Subject, predicate, and object id of each triple
+    private int[] tripleIds = new int[3 * INITIAL_TRIPLES];
+    private int nTriples = 0;
+
+    // Open addressing hash table of triple indexes plus one, zero if empty
+    private int[] table = new int[2 * INITIAL_TRIPLES];
+
+    /**
+     * Construct an empty store.
+     */
+    public CompactTripleStore() {
+    }
+
+    /**
+     * Construct a store containing the unique triples of a collection.
+     *
+     * @param triples Triples to add
+     */
+    public CompactTripleStore(Collection<Triple> triples) {
+        addAll(triples);
+    }
+
+    /**
+     * Add a triple, if not already contained.
+     *
+     * @param triple Triple to add
+     * @return True if the triple was added
+     */
+    @Override
+    public boolean add(Triple triple) {
+        int s = internNode(triple.getSubject());
+        int p = internNode(triple.getPredicate());
+        int o = internNode(triple.getObject());
+        int slot = findSlot(s, p, o);
+        if (table[slot] != 0) {
+            return false;
+        }
+        if (3 * (nTriples + 1) > tripleIds.length) {
+            tripleIds = Arrays.copyOf(tripleIds, 2 * tripleIds.length);
+        }
+        tripleIds[3 * nTriples] = s;
+        tripleIds[3 * nTriples + 1] = p;
+        tripleIds[3 * nTriples + 2] = o;
+        nTriples++;
+        table[slot] = nTriples;
+        if (nTriples > MAX_LOAD * table.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Test if a triple is contained, without interning its nodes.
+     *
+     * @param o Triple to test
+     * @return True if the triple is contained
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Triple triple)) {
+            return false;
+        }
+        Integer s = nodeIds.get(triple.getSubject());
+        Integer p = nodeIds.get(triple.getPredicate());
+        Integer obj = nodeIds.get(triple.getObject());
+        if (s == null || p == null || obj == null) {
+            return false;
+        }
+        return table[findSlot(s, p, obj)] != 0;
+    }
+
+    /**
+     * Get the triple at an index, in insertion order.
+     *
+     * @param index Index of the triple
+     * @return Triple at the index
+     */
+    public Triple get(int index) {
+        if (index < 0 || index >= nTriples) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + nTriples);
+        }
+        return Triple.create(nodes.get(tripleIds[3 * index]), nodes.get(tripleIds[3 * index + 1]),
+                nodes.get(tripleIds[3 * index + 2]));
+    }
+
+    /**
+     * Get the id of the subject of the triple at an index.
+     *
+     * @param index Index of the triple
+     * @return Id of the subject node
+     */
+    public int getSubjectId(int index) {
+        if (index < 0 || index >= nTriples) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + nTriples);
+        }
+        return tripleIds[3 * index];
+    }
+
+    /**
+     * Get the id of the object of the triple at an index.
+     *
+     * @param index Index of the triple
+     * @return Id of the object node
+     */
+    public int getObjectId(int index) {
+        if (index < 0 || index >= nTriples) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + nTriples);
+        }
+        return tripleIds[3 * index + 2];
+    }
+
+    /**
+     * Get the node with an id, from zero to the number of unique nodes.
+     *
+     * @param id Id of the node
+     * @return Node with the id
+     */
+    public Node getNode(int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * Get the number of unique nodes in the dictionary.
+     *
+     * @return Number of unique nodes
+     */
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public int size() {
+        return nTriples;
+    }
+
+    @Override
+    public Iterator<Triple> iterator() {
+        return new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < nTriples;
+            }
+
+            @Override
+            public Triple next() {
+                if (index >= nTriples) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
+    }
+
+    /**
+     * Get the id of a node, adding it to the dictionary if needed.
+     *
+     * @param node Node to intern
+     * @return Id of the node
+     */
+    private int internNode(Node node) {
+        Integer id = nodeIds.get(node);
+        if (id == null) {
+            id = nodes.size();
+            nodeIds.put(node, id);
+            nodes.add(node);
+        }
+        return id;
+    }
+
+    /**
+     * Find the slot of the hash table containing a triple, or the empty slot
+     * at which it would be inserted.
+     *
+     * @param s Subject id
+     * @param p Predicate id
+     * @param o Object id
+     * @return Slot index
+     */
+    private int findSlot(int s, int p, int o) {
+        int mask = table.length - 1;
+        int slot = hash(s, p, o) & mask;
+        while (table[slot] != 0) {
+            int index = 3 * (table[slot] - 1);
+            if (tripleIds[index] == s && tripleIds[index + 1] == p && tripleIds[index + 2] == o) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the hash table, and reinsert each triple.
+     */
+    private void rehash() {
+        table = new int[2 * table.length];
+        int mask = table.length - 1;
+        for (int i = 0; i < nTriples; i++) {
+            int slot = hash(tripleIds[3 * i], tripleIds[3 * i + 1], tripleIds[3 * i + 2]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Combine the ids of a triple into a well mixed hash.
+     *
+     * @param s Subject id
+     * @param p Predicate id
+     * @param o Object id
+     * @return Hash of the ids
+     */
+    private static int hash(int s, int p, int o) {
+        int h = (s * 31 + p) * 31 + o;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
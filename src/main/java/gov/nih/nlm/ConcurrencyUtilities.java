@@ -0,0 +1,109 @@
+package gov.nih.nlm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Collects common methods for processing files concurrently.
+ */
+public class ConcurrencyUtilities {
+
+    /**
+     * Find the number of files which can be processed at once, limited by the
+     * number of available processors, and by the number of the largest files
+     * which fit in the maximum heap at once, using the uncompressed size of
+     * compressed files.
+     *
+     * @param files       Paths to the files to process
+     * @param heapPerByte Estimated heap bytes required to process each byte of a file
+     * @return Number of files which can be processed at once, at least one
+     */
+    public static int getParallelism(List<Path> files, double heapPerByte) {
+        int nProcessors = Runtime.getRuntime().availableProcessors();
+        long largestFileSize = 0;
+        for (Path file : files) {
+            try {
+                largestFileSize = Math.max(largestFileSize, PathUtilities.getUncompressedSize(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        long heapPerFile = Math.max(1, (long) (largestFileSize * heapPerByte));
+        long nFitInHeap = Runtime.getRuntime().maxMemory() / heapPerFile;
+        return (int) Math.max(1, Math.min(Math.min(nProcessors, files.size()), nFitInHeap));
+    }
+
+    /**
+     * Run tasks on a pool of the specified number of threads, and return the
+     * results in task order.
+     *
+     * @param tasks       Tasks to run
+     * @param parallelism Number of threads in the pool
+     * @param <T>         Result type
+     * @return Result of each task, in task order
+     */
+    public static <T> List<T> invokeAll(List<Callable<T>> tasks, int parallelism) throws RuntimeException {
+        List<T> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism))) {
+            List<Future<T>> futures = executor.invokeAll(tasks);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Run tasks on a pool of the specified number of threads, and pass each
+     * result to a consumer in task order as soon as it, and all previous
+     * results, are available, so that results need not all be retained at
+     * once.
+     *
+     * @param tasks       Tasks to run
+     * @param parallelism Number of threads in the pool
+     * @param consumer    Consumer of each result, called on the calling thread
+     * @param <T>         Result type
+     */
+    public static <T> void forEachInOrder(List<Callable<T>> tasks, int parallelism, Consumer<T> consumer)
+            throws RuntimeException {
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism))) {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    consumer.accept(futures.get(i).get());
+                    futures.set(i, null);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
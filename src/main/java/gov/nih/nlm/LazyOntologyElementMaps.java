@@ -0,0 +1,117 @@
+package gov.nih.nlm;
+
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps ontology file name stems to ontology elements, loading the elements of
+ * each file, from a snapshot if possible, only when first requested. Elements
+ * may also be put directly. Safe for concurrent reads.
+ */
+public class LazyOntologyElementMaps extends AbstractMap<String, OntologyElementMap> {
+
+    // Files by name stem, in file order, and elements loaded, or put
+    private final Map<String, Path> files = new LinkedHashMap<>();
+    private final Map<String, OntologyElementMap> loaded = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a map of the specified ontology files, loading no elements.
+     *
+     * @param files Paths to ontology files
+     */
+    public LazyOntologyElementMaps(Iterable<Path> files) {
+        for (Path file : files) {
+            this.files.put(PathUtilities.getFileStem(file), file);
+        }
+    }
+
+    /**
+     * Get the ontology elements of a file name stem, loading them if needed.
+     *
+     * @param key File name stem
+     * @return Ontology elements, or null if no file has the stem
+     */
+    @Override
+    public OntologyElementMap get(Object key) {
+        OntologyElementMap ontologyElementMap = loaded.get(key);
+        if (ontologyElementMap != null || !files.containsKey(key)) {
+            return ontologyElementMap;
+        }
+
+        // Load outside the map, so that loading one file never blocks lookups of others, keeping the first loaded
+        OntologyElementMap loadedMap = OntologyElementParser.loadOntologyElements(files.get(key));
+        ontologyElementMap = loaded.putIfAbsent((String) key, loadedMap);
+        return ontologyElementMap != null ? ontologyElementMap : loadedMap;
+    }
+
+    /**
+     * Put ontology elements, replacing any file with the same name stem.
+     *
+     * @param key                File name stem
+     * @param ontologyElementMap Ontology elements
+     * @return Previous ontology elements, if loaded
+     */
+    @Override
+    public synchronized OntologyElementMap put(String key, OntologyElementMap ontologyElementMap) {
+        files.remove(key);
+        return loaded.put(key, ontologyElementMap);
+    }
+
+    /**
+     * Test if a file name stem is mapped, without loading elements.
+     *
+     * @param key File name stem
+     * @return True if mapped
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return files.containsKey(key) || loaded.containsKey(key);
+    }
+
+    /**
+     * Test if the ontology elements of a file name stem have been loaded, or
+     * put.
+     *
+     * @param key File name stem
+     * @return True if loaded
+     */
+    public boolean isLoaded(String key) {
+        return loaded.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, OntologyElementMap>> entrySet() {
+        Set<String> keys = new LinkedHashSet<>(files.keySet());
+        keys.addAll(loaded.keySet());
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, OntologyElementMap>> iterator() {
+                Iterator<String> keyIterator = keys.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keyIterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, OntologyElementMap> next() {
+                        String key = keyIterator.next();
+                        return new SimpleImmutableEntry<>(key, get(key));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+}
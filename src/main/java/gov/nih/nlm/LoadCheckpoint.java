@@ -0,0 +1,159 @@
+package gov.nih.nlm;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Journals the batches of each collection committed while loading a database,
+ * so that an interrupted load can resume from the last committed batch. The
+ * journal begins with a fingerprint of the inputs on which the batches depend,
+ * followed by one line for each committed batch, and is only resumed if the
+ * fingerprint is unchanged.
+ */
+public class LoadCheckpoint implements Closeable {
+
+    // Assign the header prefix of a journal
+    private static final String FINGERPRINT_PREFIX = "fingerprint\t";
+
+    private final Path journalFile;
+    private final boolean resumed;
+    private final Map<String, Set<Integer>> committedBatches = new ConcurrentHashMap<>();
+    private final BufferedWriter writer;
+
+    /**
+     * Open a journal, resuming it if requested, and if it exists with the
+     * same fingerprint, otherwise starting a new journal.
+     *
+     * @param journalFile Path to the journal file
+     * @param fingerprint Fingerprint of the inputs
+     * @param resume      Flag to resume an existing journal
+     * @throws IOException On read or write
+     */
+    public LoadCheckpoint(Path journalFile, String fingerprint, boolean resume) throws IOException {
+        this.journalFile = journalFile;
+        boolean resumable = false;
+        if (resume && Files.isRegularFile(journalFile)) {
+            List<String> lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(FINGERPRINT_PREFIX + fingerprint)) {
+                resumable = true;
+                for (String line : lines.subList(1, lines.size())) {
+                    int index = line.lastIndexOf('\t');
+                    if (index < 0) continue;
+                    try {
+                        committedBatches.computeIfAbsent(line.substring(0, index),
+                                k -> ConcurrentHashMap.newKeySet()).add(Integer.parseInt(line.substring(index + 1)));
+                    } catch (NumberFormatException e) {
+                        // Skip a line truncated by an interruption
+                    }
+                }
+            } else {
+                System.out.println("Inputs changed since " + journalFile.getFileName() + " was written, so starting over");
+            }
+        }
+        resumed = resumable;
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+        if (resumed) {
+            writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+            // Start a new line, in case the last line was truncated by an interruption
+            writer.write("\n");
+            writer.flush();
+            System.out.println("Resuming from " + journalFile.getFileName() + " with " + committedBatches.values().stream().mapToInt(Set::size).sum() + " committed batches");
+        } else {
+            writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8);
+            writer.write(FINGERPRINT_PREFIX + fingerprint + "\n");
+            writer.flush();
+        }
+    }
+
+    /**
+     * Compute a fingerprint of input files, and settings, as the SHA-256 hash
+     * of the content hash of each file, and each setting, in order.
+     *
+     * @param files    Paths to the input files
+     * @param settings Settings on which the batches depend, such as the batch size
+     * @return Hexadecimal SHA-256 fingerprint
+     * @throws IOException On read
+     */
+    public static String computeFingerprint(List<Path> files, String... settings) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        for (Path file : files) {
+            digest.update((file.getFileName() + "\t" + PathUtilities.getContentHash(file) + "\n").getBytes(
+                    StandardCharsets.UTF_8));
+        }
+        for (String setting : settings) {
+            digest.update((setting + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Test if an existing journal was resumed.
+     *
+     * @return True if an existing journal was resumed
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Test if a batch of a collection was committed.
+     *
+     * @param collectionName Collection name
+     * @param batchNumber    Batch number
+     * @return True if the batch was committed
+     */
+    public boolean isCommitted(String collectionName, int batchNumber) {
+        Set<Integer> batchNumbers = committedBatches.get(collectionName);
+        return batchNumbers != null && batchNumbers.contains(batchNumber);
+    }
+
+    /**
+     * Record that a batch of a collection was committed, flushing the journal
+     * so the record survives an interruption.
+     *
+     * @param collectionName Collection name
+     * @param batchNumber    Batch number
+     */
+    public synchronized void commit(String collectionName, int batchNumber) {
+        committedBatches.computeIfAbsent(collectionName, k -> ConcurrentHashMap.newKeySet()).add(batchNumber);
+        try {
+            writer.write(collectionName + "\t" + batchNumber + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Close, and delete the journal once the load is complete.
+     *
+     * @throws IOException On delete
+     */
+    public void complete() throws IOException {
+        close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -1,9 +1,15 @@
 package gov.nih.nlm;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -11,9 +17,24 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Downloads ontology files from the OBO Foundry, comparing versions to manage
@@ -36,34 +57,75 @@ public class OntologyDownloader {
     private static final Path oboDir = usrDir.resolve("data/obo");
     // Assign pattern for extracting YYYY-MM-DD dates
     private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})");
+    // Assign default number of downloads running at once
+    static final int DEFAULT_MAX_DOWNLOADS = 4;
+    // Assign size of the buffer used to stream downloads, and the number of bytes between progress reports
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long PROGRESS_BYTES = 50_000_000L;
+    // Assign name of the file recording the response headers of each download
+    static final String METADATA_FILE_NAME = ".download-metadata.json";
+    // Assign name of the content-addressed store, the pattern of its files, the suffix of partial downloads, and the
+    // pattern of a content range
+    static final String STORE_DIR_NAME = ".store";
+    private static final Pattern STORE_FILE_PATTERN = Pattern.compile("[0-9a-f]{" + PathUtilities.SHA256_HEX_LENGTH + "}\\..+");
+    static final String PART_SUFFIX = ".part";
+    // Assign the content encoding requested for transfers
+    private static final String GZIP_ENCODING = "gzip";
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
 
     /**
      * Parse the ontology XML file to find its version as a YYYY-MM-DD date
      * string. First tries owl:versionInfo, then falls back to extracting a date
-     * from owl:versionIRI.
+     * from owl:versionIRI. The file is streamed, and reading stops once the
+     * owl:Ontology header element closes, so only the header is read. Gzip
+     * compressed files are decompressed while streaming.
      *
      * @param oboFilePath Path to ontology XML file
      * @return Version string in YYYY-MM-DD format, or null if not found
      */
     public static String findOboVersion(Path oboFilePath) {
         System.out.println("Parsing " + oboFilePath);
-        Document doc = OntologyElementParser.parseXmlFile(oboFilePath.toFile());
+        String versionInfo = null;
+        String versionIRI = null;
+        try (InputStream in = PathUtilities.newInputStream(oboFilePath)) {
+            XMLStreamReader reader = OntologyElementParser.createXmlStreamReader(oboFilePath, in);
+            try {
+                boolean inOntology = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String tagName = OntologyElementParser.getQualifiedName(reader);
+                        if (tagName.equals("owl:Ontology")) {
+                            inOntology = true;
+                        } else if (tagName.equals("owl:versionInfo") && versionInfo == null) {
+                            versionInfo = getTextContent(reader);
+                        } else if (tagName.equals("owl:versionIRI") && versionIRI == null) {
+                            versionIRI = OntologyElementParser.getAttribute(reader, "rdf:resource");
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && inOntology && OntologyElementParser.getQualifiedName(
+                            reader).equals("owl:Ontology")) {
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
 
         // Try owl:versionInfo first
-        Element versionInfoElement = (Element) doc.getElementsByTagName("owl:versionInfo").item(0);
-        if (versionInfoElement != null) {
-            String text = versionInfoElement.getTextContent().trim();
-            Matcher matcher = DATE_PATTERN.matcher(text);
+        if (versionInfo != null) {
+            Matcher matcher = DATE_PATTERN.matcher(versionInfo.trim());
             if (matcher.find()) {
                 return matcher.group(1);
             }
         }
 
         // Fall back to owl:versionIRI
-        Element versionIRIElement = (Element) doc.getElementsByTagName("owl:versionIRI").item(0);
-        if (versionIRIElement != null) {
-            String resource = versionIRIElement.getAttribute("rdf:resource");
-            Matcher matcher = DATE_PATTERN.matcher(resource);
+        if (versionIRI != null) {
+            Matcher matcher = DATE_PATTERN.matcher(versionIRI);
             if (matcher.find()) {
                 return matcher.group(1);
             }
@@ -73,10 +135,34 @@ public class OntologyDownloader {
         return null;
     }
 
+    /**
+     * Get the text content of the current element, including the text of any
+     * nested elements, leaving the reader positioned on its end element.
+     *
+     * @param reader Streaming reader positioned on a start element
+     * @return Text content of the element
+     * @throws XMLStreamException On read
+     */
+    private static String getTextContent(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        text.append(reader.getText());
+                default -> {
+                }
+            }
+        }
+        return text.toString();
+    }
+
     /**
      * Download each specified URL, parse version information from new and
      * current download, and replace current with new if new is newer than
-     * current.
+     * current. Downloads run concurrently, up to the default number at once.
      *
      * @param urls        List of URLs to download
      * @param downloadDir Path to directory containing downloaded files
@@ -84,52 +170,413 @@ public class OntologyDownloader {
      * @throws InterruptedException if the download is interrupted
      */
     public static void updateDownloads(List<String> urls, Path downloadDir) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
-
-        for (String url : urls) {
-            System.out.println("Getting " + url);
-            URI uri = URI.create(url);
-            String path = uri.getPath();
-            String fileName = path.substring(path.lastIndexOf('/') + 1);
-            String stem = fileName.substring(0, fileName.lastIndexOf('.'));
-            String suffix = fileName.substring(fileName.lastIndexOf('.'));
-
-            // Download to a temporary file
-            HttpRequest request = HttpRequest.newBuilder().uri(uri).build();
-            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
-
-            Path newFile = downloadDir.resolve(stem + "-new" + suffix);
-            System.out.println("Writing " + newFile);
-            Files.write(newFile, response.body());
-
-            String versionNew = findOboVersion(newFile);
-            System.out.println("Found new version " + versionNew);
-
-            Path curFile = downloadDir.resolve(stem + suffix);
-            if (Files.exists(curFile)) {
-                String versionCur = findOboVersion(curFile);
-                System.out.println("Found current version " + versionCur);
-
-                if (versionNew != null && versionCur != null && versionNew.compareTo(versionCur) > 0) {
-                    Path archiveDir = downloadDir.resolve(".archive");
-                    Files.createDirectories(archiveDir);
-                    Path oldFile = archiveDir.resolve(stem + "-" + versionCur + suffix);
-
-                    System.out.println("Renaming " + curFile + " to " + oldFile);
-                    Files.move(curFile, oldFile);
-
-                    System.out.println("Renaming " + newFile + " to " + curFile);
-                    Files.move(newFile, curFile);
-                } else {
-                    System.out.println("New version is not newer than current version");
-                    System.out.println("Removing " + newFile);
-                    Files.delete(newFile);
+        updateDownloads(urls, downloadDir, DEFAULT_MAX_DOWNLOADS);
+    }
+
+    /**
+     * Download each specified URL, parse version information from new and
+     * current download, and replace current with new if new is newer than
+     * current. Each download is streamed to disk on its own virtual thread,
+     * with up to the specified number of downloads running at once. The
+     * ETag, and Last-Modified headers of each download are recorded in the
+     * metadata file, and sent with the next request for the same URL, so
+     * that an unchanged file is neither downloaded, nor parsed. Downloads
+     * are stored in a content-addressed store, to which the downloaded
+     * files are linked, and resume after an interruption.
+     *
+     * @param urls         List of URLs to download
+     * @param downloadDir  Path to directory containing downloaded files
+     * @param maxDownloads Maximum number of downloads running at once
+     * @throws IOException          if an I/O error occurs
+     * @throws InterruptedException if the download is interrupted
+     */
+    public static void updateDownloads(List<String> urls, Path downloadDir, int maxDownloads) throws IOException,
+            InterruptedException {
+        updateDownloads(urls, downloadDir, maxDownloads, false);
+    }
+
+    /**
+     * Download each specified URL as described above, requesting gzip
+     * compressed transfer, and optionally storing the files gzip compressed,
+     * with a ".gz" suffix, which the parsers read transparently.
+     *
+     * @param urls         List of URLs to download
+     * @param downloadDir  Path to directory containing downloaded files
+     * @param maxDownloads Maximum number of downloads running at once
+     * @param compress     Flag to store the files gzip compressed
+     * @throws IOException          if an I/O error occurs
+     * @throws InterruptedException if the download is interrupted
+     */
+    public static void updateDownloads(List<String> urls, Path downloadDir, int maxDownloads, boolean compress)
+            throws IOException, InterruptedException {
+        System.out.println("Downloading " + urls.size() + " files, " + maxDownloads + " at once");
+        long startTime = System.nanoTime();
+        HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+        Semaphore permits = new Semaphore(Math.max(1, maxDownloads));
+        Path metadataFile = downloadDir.resolve(METADATA_FILE_NAME);
+        Map<String, DownloadMetadata> metadata = readMetadata(metadataFile);
+        List<Future<Void>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String url : urls) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        updateDownload(client, URI.create(url), downloadDir, metadata, compress);
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof InterruptedException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            writeMetadata(metadataFile, metadata);
+        }
+        pruneStore(downloadDir.resolve(STORE_DIR_NAME));
+        long stopTime = System.nanoTime();
+        System.out.println("Downloaded " + urls.size() + " files in " + (stopTime - startTime) / 1e9 + " s");
+    }
+
+    /**
+     * Download the specified URL, parse version information from new and
+     * current download, and replace current with new if new is newer than
+     * current. If the current file exists, and the server reports that it
+     * is unchanged since it was downloaded, nothing is done. The current
+     * file may be compressed, or not, independent of the new file.
+     *
+     * @param client      HTTP client
+     * @param uri         URI to download
+     * @param downloadDir Path to directory containing downloaded files
+     * @param metadata    Map of URL to the metadata of its last download, updated by this download
+     * @param compress    Flag to store the file gzip compressed
+     * @throws IOException          if an I/O error occurs
+     * @throws InterruptedException if the download is interrupted
+     */
+    private static void updateDownload(HttpClient client, URI uri, Path downloadDir,
+                                       Map<String, DownloadMetadata> metadata, boolean compress) throws IOException,
+            InterruptedException {
+        String path = uri.getPath();
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        String stem = fileName.substring(0, fileName.lastIndexOf('.'));
+        String suffix = fileName.substring(fileName.lastIndexOf('.'));
+        String storedSuffix = compress ? suffix + PathUtilities.GZIP_SUFFIX : suffix;
+
+        // Download to a partial file in the store, unless the current file is unchanged
+        Path newFile = downloadDir.resolve(stem + "-new" + storedSuffix);
+        Path curFile = findCurrentFile(downloadDir, fileName, compress);
+        Path storeDir = Files.createDirectories(downloadDir.resolve(STORE_DIR_NAME));
+        Path partFile = storeDir.resolve(fileName + PART_SUFFIX);
+        DownloadMetadata previousMetadata = curFile != null ? metadata.get(uri.toString()) : null;
+        DownloadMetadata newMetadata = downloadFile(client, uri, partFile, previousMetadata);
+        if (newMetadata == null) {
+            System.out.println("Current " + fileName + " is unchanged");
+            return;
+        }
+        String sha256 = storeFile(partFile, storeDir, newMetadata, storedSuffix, compress);
+        newMetadata = new DownloadMetadata(newMetadata.etag(), newMetadata.lastModified(),
+                newMetadata.contentLength(), sha256, newMetadata.contentEncoding());
+        metadata.put(uri.toString(), newMetadata);
+        if (previousMetadata != null && sha256.equals(previousMetadata.sha256())) {
+            System.out.println("Current " + fileName + " is identical to the new download");
+            return;
+        }
+        PathUtilities.linkOrCopy(storeDir.resolve(sha256 + storedSuffix), newFile);
+
+        String versionNew = findOboVersion(newFile);
+        System.out.println("Found new version " + versionNew + " of " + fileName);
+
+        Path targetFile = downloadDir.resolve(fileName + (compress ? PathUtilities.GZIP_SUFFIX : ""));
+        if (curFile != null) {
+            String versionCur = findOboVersion(curFile);
+            System.out.println("Found current version " + versionCur + " of " + fileName);
+
+            if (versionNew != null && versionCur != null && versionNew.compareTo(versionCur) > 0) {
+                Path archiveDir = downloadDir.resolve(".archive");
+                Files.createDirectories(archiveDir);
+                Path oldFile = archiveDir.resolve(stem + "-" + versionCur + suffix + (PathUtilities.isCompressed(
+                        curFile) ? PathUtilities.GZIP_SUFFIX : ""));
+
+                System.out.println("Renaming " + curFile + " to " + oldFile);
+                Files.move(curFile, oldFile);
+
+                System.out.println("Renaming " + newFile + " to " + targetFile);
+                Files.move(newFile, targetFile);
+            } else {
+                System.out.println("New version of " + fileName + " is not newer than current version");
+                System.out.println("Removing " + newFile);
+                Files.delete(newFile);
+            }
+        } else {
+            System.out.println("Renaming " + newFile + " to " + targetFile);
+            Files.move(newFile, targetFile);
+        }
+    }
+
+    /**
+     * Find the current file, compressed, or not, preferring the form in
+     * which files are stored.
+     *
+     * @param downloadDir Path to directory containing downloaded files
+     * @param fileName    Uncompressed file name
+     * @param compress    Flag indicating files are stored gzip compressed
+     * @return Path to the current file, or null if none
+     */
+    private static Path findCurrentFile(Path downloadDir, String fileName, boolean compress) {
+        Path uncompressedFile = downloadDir.resolve(fileName);
+        Path compressedFile = downloadDir.resolve(fileName + PathUtilities.GZIP_SUFFIX);
+        for (Path file : compress ? List.of(compressedFile, uncompressedFile) : List.of(uncompressedFile,
+                compressedFile)) {
+            if (Files.exists(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stream the body of the specified URI to a partial file, without holding
+     * it in memory, computing its SHA-256 digest, and reporting progress, and
+     * throughput. If the partial file remains from an interrupted download,
+     * only the remaining bytes are requested, provided the server still has
+     * the same file, otherwise the download starts over. If metadata of a
+     * previous download is provided, the request is conditional on the ETag,
+     * and Last-Modified headers having changed. A gzip compressed transfer is
+     * requested, and the bytes are written as received. The partial file,
+     * and its metadata, remain if the download is interrupted, or truncated.
+     *
+     * @param client           HTTP client
+     * @param uri              URI to download
+     * @param partFile         Path to the partial file to write
+     * @param previousMetadata Metadata of the previous download, or null
+     * @return Metadata of the download, with the digest of the bytes received, or null if unchanged since the
+     * previous download
+     * @throws IOException          if an I/O error occurs, or the response is not successful, or is truncated
+     * @throws InterruptedException if the download is interrupted
+     */
+    static DownloadMetadata downloadFile(HttpClient client, URI uri, Path partFile, DownloadMetadata previousMetadata)
+            throws IOException, InterruptedException {
+        System.out.println("Getting " + uri);
+        long startTime = System.nanoTime();
+        Path partMetadataFile = partFile.resolveSibling(partFile.getFileName() + ".json");
+        DownloadMetadata partMetadata = null;
+        if (Files.exists(partFile) && Files.exists(partMetadataFile)) {
+            partMetadata = mapper.readValue(partMetadataFile.toFile(), DownloadMetadata.class);
+        }
+        long partLength = partMetadata != null ? Files.size(partFile) : 0;
+        String validator = partMetadata == null ? null : partMetadata.etag() != null ? partMetadata.etag() :
+                partMetadata.lastModified();
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder().uri(uri).header("Accept-Encoding",
+                GZIP_ENCODING);
+        if (validator != null && partLength > 0) {
+
+            // Request the remaining bytes if the file is unchanged, otherwise all bytes
+            requestBuilder.header("Range", "bytes=" + partLength + "-").header("If-Range", validator);
+        } else if (previousMetadata != null) {
+            if (previousMetadata.etag() != null) {
+                requestBuilder.header("If-None-Match", previousMetadata.etag());
+            }
+            if (previousMetadata.lastModified() != null) {
+                requestBuilder.header("If-Modified-Since", previousMetadata.lastModified());
+            }
+        }
+        HttpResponse<InputStream> response = client.send(requestBuilder.build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        MessageDigest digest = PathUtilities.newSha256Digest();
+        long nBytes = 0;
+        String etag;
+        String lastModified;
+        String contentEncoding;
+        try (InputStream in = response.body()) {
+            if (response.statusCode() == 304) {
+                return null;
+            }
+            contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+            if (contentEncoding != null && !contentEncoding.equals(GZIP_ENCODING)) {
+                throw new IOException("Could not get " + uri + ": unexpected content encoding " + contentEncoding);
+            }
+            boolean resumed = response.statusCode() == 206;
+            if (resumed) {
+                if (!Objects.equals(contentEncoding, partMetadata.contentEncoding())) {
+                    Files.delete(partMetadataFile);
+                    throw new IOException("Could not resume " + uri + ": content encoding changed to " + contentEncoding);
                 }
+                Matcher matcher = CONTENT_RANGE_PATTERN.matcher(response.headers().firstValue("Content-Range").orElse(
+                        ""));
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) != partLength) {
+                    throw new IOException("Could not resume " + uri + ": unexpected range " + response.headers().firstValue(
+                            "Content-Range").orElse(null));
+                }
+                System.out.println("Resuming " + partFile.getFileName() + " at " + String.format("%.1f MB",
+                        partLength / 1e6));
+                PathUtilities.updateDigest(digest, partFile);
+            } else if (response.statusCode() != 200) {
+                throw new IOException("Could not get " + uri + ": HTTP status " + response.statusCode());
             } else {
-                System.out.println("Renaming " + newFile + " to " + curFile);
-                Files.move(newFile, curFile);
+                partLength = 0;
             }
+            etag = response.headers().firstValue("ETag").orElse(partMetadata != null && resumed ? partMetadata.etag() :
+                    null);
+            lastModified = response.headers().firstValue("Last-Modified").orElse(
+                    partMetadata != null && resumed ? partMetadata.lastModified() : null);
+            long totalLength = contentLength >= 0 ? partLength + contentLength : -1;
+            mapper.writeValue(partMetadataFile.toFile(), new DownloadMetadata(etag, lastModified, totalLength, null,
+                    contentEncoding));
+            System.out.println("Writing " + partFile);
+            try (OutputStream out = resumed ? Files.newOutputStream(partFile, StandardOpenOption.APPEND) :
+                    Files.newOutputStream(partFile)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long reportedBytes = 0;
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    digest.update(buffer, 0, n);
+                    nBytes += n;
+                    if (nBytes - reportedBytes >= PROGRESS_BYTES) {
+                        reportedBytes = nBytes;
+                        System.out.println("Downloaded " + formatProgress(nBytes, contentLength, System.nanoTime() - startTime) + " of " + partFile.getFileName());
+                    }
+                }
+            }
+        }
+        if (contentLength >= 0 && nBytes != contentLength) {
+            throw new IOException("Got " + nBytes + " of " + contentLength + " bytes of " + uri);
+        }
+        Files.delete(partMetadataFile);
+        long stopTime = System.nanoTime();
+        System.out.println("Downloaded " + formatProgress(nBytes, contentLength, stopTime - startTime) + " of " + partFile.getFileName() + " in " + (stopTime - startTime) / 1e9 + " s");
+        return new DownloadMetadata(etag, lastModified, partLength + nBytes, HexFormat.of().formatHex(
+                digest.digest()), contentEncoding);
+    }
+
+    /**
+     * Move a completed partial file into the store, named by the SHA-256
+     * digest of its uncompressed content, unless the store already contains
+     * an identical file. The file is decompressed, or compressed while
+     * streaming if its transfer encoding differs from the form in which
+     * files are stored.
+     *
+     * @param partFile Path to the completed partial file
+     * @param storeDir Path to the store directory
+     * @param metadata Metadata of the download
+     * @param suffix   Suffix of the stored file, including the dot, and any compression suffix
+     * @param compress Flag to store the file gzip compressed
+     * @return Hexadecimal SHA-256 digest of the uncompressed content
+     * @throws IOException if an I/O error occurs
+     */
+    static String storeFile(Path partFile, Path storeDir, DownloadMetadata metadata, String suffix, boolean compress)
+            throws IOException {
+        boolean encoded = GZIP_ENCODING.equals(metadata.contentEncoding());
+        String sha256 = metadata.sha256();
+        Path sourceFile = partFile;
+        if (encoded && compress) {
+            sha256 = PathUtilities.transcode(partFile, true, null, false);
+        } else if (encoded || compress) {
+            sourceFile = partFile.resolveSibling(partFile.getFileName() + ".tmp");
+            System.out.println((encoded ? "Decompressing " : "Compressing ") + partFile);
+            sha256 = PathUtilities.transcode(partFile, encoded, sourceFile, compress);
+            Files.delete(partFile);
+        }
+        Path storeFile = storeDir.resolve(sha256 + suffix);
+        if (Files.exists(storeFile)) {
+            System.out.println("Found " + storeFile + " in store");
+            Files.delete(sourceFile);
+        } else {
+            System.out.println("Storing " + storeFile);
+            Files.move(sourceFile, storeFile, StandardCopyOption.ATOMIC_MOVE);
         }
+        return sha256;
+    }
+
+    /**
+     * Delete each file in the store to which no file in the download, or
+     * archive directories links, such as a download which was not newer
+     * than the current file, or a release which is no longer current, or
+     * archived. Files are only deleted if the file system reports their
+     * number of links, otherwise pruning is skipped, and reported once.
+     * Partial downloads are kept so they can be resumed.
+     *
+     * @param storeDir Path to the store directory
+     * @throws IOException if an I/O error occurs
+     */
+    static void pruneStore(Path storeDir) throws IOException {
+        if (!Files.isDirectory(storeDir)) {
+            return;
+        }
+        List<Path> storeFiles;
+        try (Stream<Path> files = Files.list(storeDir)) {
+            storeFiles = files.filter(file -> STORE_FILE_PATTERN.matcher(file.getFileName().toString()).matches())
+                    .toList();
+        }
+        for (Path storeFile : storeFiles) {
+            int nLinks;
+            try {
+                nLinks = (Integer) Files.getAttribute(storeFile, "unix:nlink");
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                System.out.println("Not pruning " + storeDir + ", since the file system does not report the number of links to a file");
+                return;
+            }
+            if (nLinks <= 1) {
+                System.out.println("Removing " + storeFile + " from store");
+                Files.delete(storeFile);
+            }
+        }
+    }
+
+    /**
+     * Read the metadata of previous downloads, if any.
+     *
+     * @param metadataFile Path to the metadata file
+     * @return Map of URL to the metadata of its last download
+     * @throws IOException if an I/O error occurs
+     */
+    static Map<String, DownloadMetadata> readMetadata(Path metadataFile) throws IOException {
+        Map<String, DownloadMetadata> metadata = new ConcurrentHashMap<>();
+        if (Files.exists(metadataFile)) {
+            metadata.putAll(mapper.readValue(metadataFile.toFile(), new TypeReference<Map<String, DownloadMetadata>>() {
+            }));
+        }
+        return metadata;
+    }
+
+    /**
+     * Write the metadata of downloads, sorted by URL.
+     *
+     * @param metadataFile Path to the metadata file
+     * @param metadata     Map of URL to the metadata of its last download
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeMetadata(Path metadataFile, Map<String, DownloadMetadata> metadata) throws IOException {
+        Files.createDirectories(metadataFile.toAbsolutePath().getParent());
+        mapper.writeValue(metadataFile.toFile(), new TreeMap<>(metadata));
+    }
+
+    /**
+     * Format the number of bytes downloaded, the percent of the content
+     * length if known, and the throughput.
+     *
+     * @param nBytes        Number of bytes downloaded
+     * @param contentLength Content length, or -1 if unknown
+     * @param elapsedNanos  Time elapsed, in nanoseconds
+     * @return Progress message
+     */
+    static String formatProgress(long nBytes, long contentLength, long elapsedNanos) {
+        StringBuilder progress = new StringBuilder(String.format("%.1f MB", nBytes / 1e6));
+        if (contentLength > 0) {
+            progress.append(String.format(" (%.0f%%)", 100.0 * nBytes / contentLength));
+        }
+        progress.append(String.format(" at %.1f MB/s", nBytes / 1e6 / Math.max(elapsedNanos / 1e9, 1e-3)));
+        return progress.toString();
     }
 
     /**
@@ -139,9 +586,16 @@ public class OntologyDownloader {
      */
     public static void main(String[] args) {
         try {
-            updateDownloads(OBO_PURLS, oboDir);
+            String maxDownloadsValue = System.getenv("OBO_MAX_DOWNLOADS");
+            updateDownloads(OBO_PURLS, oboDir, maxDownloadsValue != null ? Integer.parseInt(
+                    maxDownloadsValue) : DEFAULT_MAX_DOWNLOADS, "gzip".equals(System.getenv("OBO_COMPRESS")));
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
+
+    // Define a record describing the response headers, and the SHA-256 digest of the content of a download
+    public record DownloadMetadata(String etag, String lastModified, long contentLength, String sha256,
+                                   String contentEncoding) {
+    }
 }
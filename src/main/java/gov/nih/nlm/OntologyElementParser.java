@@ -9,18 +9,36 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static gov.nih.nlm.PathUtilities.getCacheFile;
 import static gov.nih.nlm.PathUtilities.listFilesMatchingPattern;
+import static gov.nih.nlm.PathUtilities.writeCacheFile;
 
 /**
  * Identifies ontology files in the data/obo directory, parses each file to
@@ -37,14 +55,26 @@ public class OntologyElementParser {
     // Assign pattern for matching to required elements
     private static final Pattern owlPattern = Pattern.compile("^owl:");
 
-    // Assign pattern for matching to pcl/CS terms
-    private static final Pattern pclPattern = Pattern.compile("/pcl/CS");
+    // Assign path, and pattern for matching to pcl/CS terms
+    private static final String PCL_PATH = "/pcl/CS";
+    private static final Pattern pclPattern = Pattern.compile(Pattern.quote(PCL_PATH));
 
-    // Assign pattern for matching to ensembl/ENSG terms
-    private static final Pattern ensemblPattern = Pattern.compile("/ensembl/ENSG");
+    // Assign path, and pattern for matching to ensembl/ENSG terms
+    private static final String ENSEMBL_PATH = "/ensembl/ENSG";
+    private static final Pattern ensemblPattern = Pattern.compile(Pattern.quote(ENSEMBL_PATH));
+
+    // Assign estimated heap bytes required to stream each byte of an ontology file
+    private static final double HEAP_PER_BYTE = 0.5;
+
+    // Assign the suffix, leading magic number, and version of ontology element snapshot files, incrementing the
+    // version whenever the snapshot format, or the elements parsed, change
+    private static final String SNAPSHOT_SUFFIX = ".oem";
+    private static final int SNAPSHOT_MAGIC = 0x4F454D31;
+    static final int SNAPSHOT_VERSION = 1;
 
     /**
-     * Parse the specified file, and normalize.
+     * Parse the specified file, decompressing it if gzip compressed, and
+     * normalize.
      *
      * @param xmlFile File containing XML to parse
      * @return Document resulting after parsing, and normalization
@@ -58,8 +88,8 @@ public class OntologyElementParser {
             throw new RuntimeException(e);
         }
         Document doc;
-        try {
-            doc = dBuilder.parse(xmlFile);
+        try (InputStream in = PathUtilities.newInputStream(xmlFile.toPath())) {
+            doc = dBuilder.parse(in, xmlFile.toURI().toString());
         } catch (SAXException | IOException e) {
             throw new RuntimeException(e);
         }
@@ -86,6 +116,17 @@ public class OntologyElementParser {
         return URI.create(uri);
     }
 
+    /**
+     * Test if creating a URI from a string rewrites it, as for the provisional
+     * cell ontology, and ensembl terms.
+     *
+     * @param uri String from which to create URI
+     * @return True if the string is rewritten
+     */
+    static boolean isRewrittenURI(String uri) {
+        return uri.contains(PCL_PATH) || uri.contains(ENSEMBL_PATH);
+    }
+
     /**
      * Parse a node recursively to find all elements in the "owl" namespace which
      * contain a non-empty "about" attribute, and at least one "label" element. Also
@@ -134,6 +175,220 @@ public class OntologyElementParser {
         }
     }
 
+    /**
+     * Parse a document to produce ontology terms for all elements with a
+     * non-empty "about" attribute and at least one "label" element, along with
+     * the ontology title, description, PURL, version, and root term.
+     *
+     * @param doc Document resulting after parsing an ontology file
+     * @return Ontology terms, and corresponding unique term ids
+     */
+    public static OntologyElementMap parseOntologyDocument(Document doc) throws RuntimeException {
+        OntologyElementMap ontologyElementMap = new OntologyElementMap();
+        // Get title
+        Element titleElement = (Element) doc.getElementsByTagName("dc:title").item(0);
+        if (titleElement != null) {
+            ontologyElementMap.title = titleElement.getTextContent();
+        }
+        // Get description
+        Element descriptionElement = (Element) doc.getElementsByTagName("dc:description").item(0);
+        if (descriptionElement != null) {
+            ontologyElementMap.description = descriptionElement.getTextContent();
+        }
+        // Get PURL
+        Element purlElement = (Element) doc.getElementsByTagName("owl:Ontology").item(0);
+        if (purlElement != null) {
+            ontologyElementMap.purl = URI.create(purlElement.getAttribute("rdf:about"));
+            // Get version
+            Element versionElement = (Element) purlElement.getElementsByTagName("owl:versionIRI").item(0);
+            if (versionElement != null) {
+                ontologyElementMap.versionIRI = URI.create(versionElement.getAttribute("rdf:resource"));
+            }
+        }
+        // Get root
+        Element rootElement = (Element) doc.getElementsByTagName("obo:IAO_0000700").item(0);
+        if (rootElement != null) {
+            ontologyElementMap.root = URI.create(rootElement.getAttribute("rdf:resource"));
+        }
+        // Parse the first node
+        parseOntologyNode(doc.getDocumentElement(), ontologyElementMap);
+        return ontologyElementMap;
+    }
+
+    /**
+     * Create a streaming reader for the specified XML file which replaces
+     * entity references, and reports adjacent text as a single event.
+     *
+     * @param xmlFile Path to XML file
+     * @param in      Stream from which to read the file
+     * @return Streaming reader
+     * @throws XMLStreamException On creating the reader
+     */
+    static XMLStreamReader createXmlStreamReader(Path xmlFile, InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory.createXMLStreamReader(xmlFile.toUri().toString(), in);
+    }
+
+    /**
+     * Get the qualified name of the current element, as it appears in the
+     * file, for example "rdfs:label".
+     *
+     * @param reader Streaming reader positioned on an element
+     * @return Qualified name of the element
+     */
+    static String getQualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+    }
+
+    /**
+     * Get the value of an attribute of the current element by its qualified
+     * name, as it appears in the file, for example "rdf:about".
+     *
+     * @param reader        Streaming reader positioned on an element
+     * @param qualifiedName Qualified name of the attribute
+     * @return Value of the attribute, or an empty string if not present
+     */
+    static String getAttribute(XMLStreamReader reader, String qualifiedName) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String name = prefix == null || prefix.isEmpty() ? reader.getAttributeLocalName(i) : prefix + ":" + reader.getAttributeLocalName(
+                    i);
+            if (name.equals(qualifiedName)) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Parse an ontology file in a single forward pass to produce ontology terms
+     * for all elements with a non-empty "about" attribute and at least one
+     * "label" element, along with the ontology title, description, PURL,
+     * version, and root term. Produces the same result as parsing the document
+     * object model of the file, without holding the file in memory.
+     *
+     * @param file Path to ontology file
+     * @return Ontology terms, and corresponding unique term ids
+     */
+    public static OntologyElementMap streamOntologyElements(Path file) throws RuntimeException {
+        OntologyElementMap ontologyElementMap = new OntologyElementMap();
+        boolean hasOntology = false;
+        boolean hasVersionIRI = false;
+        boolean hasRoot = false;
+        int ontologyDepth = -1;
+
+        // Element in the "owl" namespace with an "about" attribute which has
+        // no "label" element yet, at the given depth
+        record UnlabeledTerm(int depth, String term, URI uri) {
+        }
+        List<UnlabeledTerm> unlabeledTerms = new ArrayList<>();
+
+        // Text content being collected for the title, description, or the
+        // first label of each unlabeled term
+        StringBuilder text = null;
+        String textElement = null;
+        int textDepth = -1;
+        List<UnlabeledTerm> labeledTerms = null;
+
+        try (InputStream in = PathUtilities.newInputStream(file)) {
+            XMLStreamReader reader = createXmlStreamReader(file, in);
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        depth++;
+                        String tagName = getQualifiedName(reader);
+
+                        // Get title, description, PURL, version, and root
+                        if (text == null && ((tagName.equals("dc:title") && ontologyElementMap.title == null) || (tagName.equals(
+                                "dc:description") && ontologyElementMap.description == null))) {
+                            text = new StringBuilder();
+                            textElement = tagName;
+                            textDepth = depth;
+                        } else if (tagName.equals("owl:Ontology") && !hasOntology) {
+                            hasOntology = true;
+                            ontologyDepth = depth;
+                            ontologyElementMap.purl = URI.create(getAttribute(reader, "rdf:about"));
+                        } else if (tagName.equals("owl:versionIRI") && ontologyDepth > 0 && !hasVersionIRI) {
+                            hasVersionIRI = true;
+                            ontologyElementMap.versionIRI = URI.create(getAttribute(reader, "rdf:resource"));
+                        } else if (tagName.equals("obo:IAO_0000700") && !hasRoot) {
+                            hasRoot = true;
+                            ontologyElementMap.root = URI.create(getAttribute(reader, "rdf:resource"));
+                        }
+
+                        // Consider elements with tags in the "owl" namespace, and a
+                        // non-empty "about" attribute
+                        if (owlPattern.matcher(tagName).find()) {
+                            String about = getAttribute(reader, "rdf:about");
+                            if (!about.isEmpty()) {
+
+                                // Consider terms containing an underscore
+                                URI uri = createURI(about);
+                                String term = Paths.get(uri.getPath()).getFileName().toString();
+                                if (term.contains("_")) {
+                                    String id = term.split("_")[0];
+                                    if (!id.equals("valid")) {
+                                        ontologyElementMap.ids.add(id);
+                                    }
+                                }
+                                unlabeledTerms.add(new UnlabeledTerm(depth, term, uri));
+                            }
+                        }
+
+                        // The first "label" element after an unlabeled term starts
+                        // is the first "label" element within each open unlabeled term
+                        if (tagName.equals("rdfs:label") && text == null && !unlabeledTerms.isEmpty()) {
+                            text = new StringBuilder();
+                            textElement = tagName;
+                            textDepth = depth;
+                            labeledTerms = new ArrayList<>(unlabeledTerms);
+                            unlabeledTerms.clear();
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (text != null) {
+                            text.append(reader.getText());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (text != null && depth == textDepth) {
+                            switch (textElement) {
+                                case "dc:title" -> ontologyElementMap.title = text.toString();
+                                case "dc:description" -> ontologyElementMap.description = text.toString();
+                                default -> {
+                                    for (UnlabeledTerm labeledTerm : labeledTerms) {
+                                        ontologyElementMap.terms.put(labeledTerm.term(),
+                                                new OntologyElementMap.OntologyTerm(labeledTerm.uri(),
+                                                        text.toString()));
+                                    }
+                                }
+                            }
+                            text = null;
+                        }
+                        if (!unlabeledTerms.isEmpty() && unlabeledTerms.getLast().depth() == depth) {
+                            unlabeledTerms.removeLast();
+                        }
+                        if (depth == ontologyDepth) {
+                            ontologyDepth = -1;
+                        }
+                        depth--;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            reader.close();
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+        return ontologyElementMap;
+    }
+
     /**
      * Parse ontology files to produce ontology terms for all elements with a
      * non-empty "about" attribute and at least one "label" element.
@@ -144,43 +399,275 @@ public class OntologyElementParser {
      * "label" element, and corresponding unique term ids.
      */
     public static Map<String, OntologyElementMap> parseOntologyElements(List<Path> files) throws RuntimeException {
-        Map<String, OntologyElementMap> ontologyElementMaps = new HashMap<>();
+        return parseOntologyElements(files, ConcurrencyUtilities.getParallelism(files, HEAP_PER_BYTE));
+    }
+
+    /**
+     * Parse ontology files concurrently on a pool of the specified number of
+     * threads to produce ontology terms for all elements with a non-empty
+     * "about" attribute and at least one "label" element.
+     *
+     * @param files       Paths to ontology files
+     * @param parallelism Number of files to parse at once
+     * @return Map by ontology term containing ontology term PURLs and labels for
+     * all elements with a non-empty "about" attribute and at least one
+     * "label" element, and corresponding unique term ids.
+     */
+    public static Map<String, OntologyElementMap> parseOntologyElements(List<Path> files,
+                                                                        int parallelism) throws RuntimeException {
+        return parseOntologyElements(files, parallelism, OntologyElementParser::streamOntologyElements);
+    }
+
+    /**
+     * Parse ontology files concurrently on a pool of the specified number of
+     * threads, using the specified parser for each file.
+     *
+     * @param files       Paths to ontology files
+     * @param parallelism Number of files to parse at once
+     * @param parser      Parser of the ontology elements of one file
+     * @return Map by file name stem to ontology elements
+     */
+    static Map<String, OntologyElementMap> parseOntologyElements(List<Path> files,
+                                                                 int parallelism,
+                                                                 Function<Path, OntologyElementMap> parser)
+            throws RuntimeException {
+        List<Callable<OntologyElementMap>> tasks = new ArrayList<>();
         for (Path file : files) {
-            String oboFNm = file.getFileName().toString();
-            System.out.println("Parsing ontology element in " + oboFNm);
-            Document doc = parseXmlFile(file.toFile());
-            OntologyElementMap ontologyElementMap = new OntologyElementMap();
-            // Get title
-            Element titleElement = (Element) doc.getElementsByTagName("dc:title").item(0);
-            if (titleElement != null) {
-                ontologyElementMap.title = titleElement.getTextContent();
+            tasks.add(() -> {
+                System.out.println("Parsing ontology element in " + file.getFileName());
+                return parser.apply(file);
+            });
+        }
+        List<OntologyElementMap> results = ConcurrencyUtilities.invokeAll(tasks, parallelism);
+        // Map maps by filename, in file order
+        Map<String, OntologyElementMap> ontologyElementMaps = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            ontologyElementMaps.put(PathUtilities.getFileStem(files.get(i)), results.get(i));
+        }
+        return ontologyElementMaps;
+    }
+
+    /**
+     * Load ontology elements from a snapshot in the ".cache" directory beside
+     * an ontology file, if the snapshot was written from a file with the same
+     * content, in the current snapshot version. Otherwise, stream the file,
+     * then write a snapshot, replacing any snapshot of a previous version of
+     * the file, or of the snapshot.
+     *
+     * @param file Path to ontology file
+     * @return Ontology terms for all elements with a non-empty "about"
+     * attribute and at least one "label" element
+     */
+    public static OntologyElementMap loadOntologyElements(Path file) throws RuntimeException {
+        Path snapshotFile = getSnapshotFile(file);
+        if (Files.isRegularFile(snapshotFile)) {
+            try {
+                return readOntologyElementSnapshot(snapshotFile);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not read ontology elements from " + snapshotFile + ": " + e.getMessage());
             }
-            // Get description
-            Element descriptionElement = (Element) doc.getElementsByTagName("dc:description").item(0);
-            if (descriptionElement != null) {
-                ontologyElementMap.description = descriptionElement.getTextContent();
+        }
+        System.out.println("Parsing ontology element in " + file.getFileName());
+        OntologyElementMap ontologyElementMap = streamOntologyElements(file);
+        writeSnapshot(snapshotFile, ontologyElementMap);
+        return ontologyElementMap;
+    }
+
+    /**
+     * Map ontology files by file name stem to ontology elements which are
+     * loaded, from a snapshot, only when first requested. Files without a
+     * snapshot, such as on a cold start, are first parsed concurrently, as
+     * many at once as fit in the heap, and their snapshots written.
+     *
+     * @param files Paths to ontology files
+     * @return Map by file name stem to ontology elements, loaded lazily
+     */
+    public static Map<String, OntologyElementMap> loadOntologyElements(List<Path> files) {
+        List<Path> missingFiles = findFilesWithoutSnapshot(files);
+        return loadOntologyElements(files, missingFiles.isEmpty() ? 1 : ConcurrencyUtilities.getParallelism(
+                missingFiles, HEAP_PER_BYTE), OntologyElementParser::streamOntologyElements);
+    }
+
+    /**
+     * Map ontology files by file name stem to ontology elements which are
+     * loaded lazily, after parsing the files without a snapshot on a pool of
+     * the specified number of threads, using the specified parser, and
+     * writing their snapshots.
+     *
+     * @param files       Paths to ontology files
+     * @param parallelism Number of files to parse at once
+     * @param parser      Parser of the ontology elements of one file
+     * @return Map by file name stem to ontology elements, loaded lazily
+     */
+    static Map<String, OntologyElementMap> loadOntologyElements(List<Path> files,
+                                                                int parallelism,
+                                                                Function<Path, OntologyElementMap> parser) {
+        List<Path> missingFiles = findFilesWithoutSnapshot(files);
+        if (!missingFiles.isEmpty()) {
+            Map<String, OntologyElementMap> parsedMaps = parseOntologyElements(missingFiles, parallelism, parser);
+            for (Path file : missingFiles) {
+                writeSnapshot(getSnapshotFile(file), parsedMaps.get(PathUtilities.getFileStem(file)));
             }
-            // Get PURL
-            Element purlElement = (Element) doc.getElementsByTagName("owl:Ontology").item(0);
-            if (purlElement != null) {
-                ontologyElementMap.purl = URI.create(purlElement.getAttribute("rdf:about"));
-                // Get version
-                Element versionElement = (Element) purlElement.getElementsByTagName("owl:versionIRI").item(0);
-                if (versionElement != null) {
-                    ontologyElementMap.versionIRI = URI.create(versionElement.getAttribute("rdf:resource"));
-                }
+        }
+        return new LazyOntologyElementMaps(files);
+    }
+
+    /**
+     * Find the ontology files without a snapshot of their current content in
+     * the current snapshot version.
+     *
+     * @param files Paths to ontology files
+     * @return Paths to the ontology files without a snapshot, in file order
+     */
+    private static List<Path> findFilesWithoutSnapshot(List<Path> files) {
+        List<Path> missingFiles = new ArrayList<>();
+        for (Path file : files) {
+            if (!Files.isRegularFile(getSnapshotFile(file))) {
+                missingFiles.add(file);
             }
-            // Get root
-            Element rootElement = (Element) doc.getElementsByTagName("obo:IAO_0000700").item(0);
-            if (rootElement != null) {
-                ontologyElementMap.root = URI.create(rootElement.getAttribute("rdf:resource"));
+        }
+        return missingFiles;
+    }
+
+    /**
+     * Get the path to the snapshot of the current content of an ontology
+     * file, in the current snapshot version.
+     *
+     * @param file Path to ontology file
+     * @return Path to the snapshot file
+     */
+    private static Path getSnapshotFile(Path file) {
+        try {
+            return getCacheFile(file, SNAPSHOT_SUFFIX, SNAPSHOT_VERSION);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write a snapshot of ontology elements, replacing any snapshot of a
+     * previous version of the file, or of the snapshot, and reporting, rather
+     * than throwing, if the snapshot could not be written.
+     *
+     * @param snapshotFile       Path to the snapshot file
+     * @param ontologyElementMap Ontology elements to write
+     */
+    private static void writeSnapshot(Path snapshotFile, OntologyElementMap ontologyElementMap) {
+        try {
+            writeCacheFile(snapshotFile, SNAPSHOT_SUFFIX, f -> writeOntologyElementSnapshot(ontologyElementMap, f));
+        } catch (IOException e) {
+            System.err.println("Could not write ontology elements to " + snapshotFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write ontology elements to a compact binary snapshot, with a header
+     * containing the magic number, and snapshot version.
+     *
+     * @param ontologyElementMap Ontology elements to write
+     * @param snapshotFile       Path to the snapshot file
+     * @throws IOException On write
+     */
+    public static void writeOntologyElementSnapshot(OntologyElementMap ontologyElementMap,
+                                                    Path snapshotFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                snapshotFile)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            writeString(out, ontologyElementMap.title);
+            writeString(out, ontologyElementMap.description);
+            writeString(out, ontologyElementMap.purl == null ? null : ontologyElementMap.purl.toString());
+            writeString(out, ontologyElementMap.versionIRI == null ? null : ontologyElementMap.versionIRI.toString());
+            writeString(out, ontologyElementMap.root == null ? null : ontologyElementMap.root.toString());
+            out.writeInt(ontologyElementMap.ids.size());
+            for (String id : ontologyElementMap.ids) {
+                writeString(out, id);
+            }
+            out.writeInt(ontologyElementMap.terms.size());
+            for (Map.Entry<String, OntologyElementMap.OntologyTerm> entry : ontologyElementMap.terms.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue().purl == null ? null : entry.getValue().purl.toString());
+                writeString(out, entry.getValue().label);
             }
-            // Parse the first node
-            parseOntologyNode(doc.getDocumentElement(), ontologyElementMap);
-            // Map maps by filename
-            ontologyElementMaps.put(oboFNm.substring(0, oboFNm.lastIndexOf(".")), ontologyElementMap);
         }
-        return ontologyElementMaps;
+    }
+
+    /**
+     * Read ontology elements from a compact binary snapshot through a
+     * buffered stream, checking the magic number, and snapshot version.
+     *
+     * @param snapshotFile Path to the snapshot file
+     * @return Ontology elements read
+     * @throws IOException On read, or if the snapshot is truncated, or in another format, or version
+     */
+    public static OntologyElementMap readOntologyElementSnapshot(Path snapshotFile) throws IOException {
+        long startTime = System.nanoTime();
+        OntologyElementMap ontologyElementMap = new OntologyElementMap();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Unexpected snapshot format in " + snapshotFile);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unexpected snapshot version " + version + " in " + snapshotFile);
+            }
+            ontologyElementMap.title = readString(in);
+            ontologyElementMap.description = readString(in);
+            ontologyElementMap.purl = readURI(in);
+            ontologyElementMap.versionIRI = readURI(in);
+            ontologyElementMap.root = readURI(in);
+            int nIds = in.readInt();
+            for (int i = 0; i < nIds; i++) {
+                ontologyElementMap.ids.add(readString(in));
+            }
+            int nTerms = in.readInt();
+            ontologyElementMap.terms = new HashMap<>(2 * nTerms);
+            for (int i = 0; i < nTerms; i++) {
+                String term = readString(in);
+                URI purl = readURI(in);
+                String label = readString(in);
+                ontologyElementMap.terms.put(term, new OntologyElementMap.OntologyTerm(purl, label));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated snapshot " + snapshotFile, e);
+        }
+        long stopTime = System.nanoTime();
+        System.out.println("Read " + ontologyElementMap.terms.size() + " ontology terms from " + snapshotFile.getFileName() + " in " + (stopTime - startTime) / 1e9 + " s");
+        return ontologyElementMap;
+    }
+
+    /**
+     * Write a string, which may be null, as a length followed by UTF-8 bytes.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string, which may be null, written by writeString.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a URI, which may be null, written by writeString.
+     */
+    private static URI readURI(DataInputStream in) throws IOException {
+        String value = readString(in);
+        return value == null ? null : URI.create(value);
     }
 
     /**
@@ -1,11 +1,13 @@
 package gov.nih.nlm;
 
+import com.arangodb.ArangoCollection;
 import com.arangodb.ArangoDatabase;
 import com.arangodb.ArangoEdgeCollection;
 import com.arangodb.ArangoGraph;
 import com.arangodb.ArangoVertexCollection;
 import com.arangodb.entity.BaseDocument;
 import com.arangodb.entity.BaseEdgeDocument;
+import gov.nih.nlm.ArangoDbUtilities.BatchReport;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 
@@ -19,15 +21,31 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
+import static gov.nih.nlm.ArangoDbUtilities.CONTENT_HASH;
+import static gov.nih.nlm.ArangoDbUtilities.computeContentHash;
 import static gov.nih.nlm.OntologyElementParser.createURI;
-import static gov.nih.nlm.OntologyElementParser.parseOntologyElements;
-import static gov.nih.nlm.OntologyTripleParser.collectUniqueTriples;
+import static gov.nih.nlm.OntologyElementParser.isRewrittenURI;
+import static gov.nih.nlm.OntologyElementParser.loadOntologyElements;
+import static gov.nih.nlm.OntologyTripleParser.collectCompactTriples;
 import static gov.nih.nlm.PathUtilities.listFilesMatchingPattern;
 
 /**
@@ -40,9 +58,10 @@ public class OntologyGraphBuilder {
     public static final Path oboDir = usrDir.resolve("data/obo");
     public static final Path deprecatedTermsFile = oboDir.resolve("deprecated_terms.txt");
     public static final Path edgeLabelsFile = oboDir.resolve("edge_labels.txt");
+    public static final Path checkpointDir = oboDir.resolve(".checkpoint");
 
     // Assign vertices to include in the graph
-    private static final ArrayList<String> validVertices = new ArrayList<>(Arrays.asList("BGS",
+    private static final Set<String> validVertices = new HashSet<>(Arrays.asList("BGS",
             "BMC",
             "CHEBI",
             "CHEMBL",
@@ -63,6 +82,9 @@ public class OntologyGraphBuilder {
             "RS",
             "UBERON"));
 
+    // Assign the VTuple of nodes which are not parsed
+    private static final VTuple emptyVTuple = new VTuple(null, null, null, false);
+
     /**
      * Parse a URI to find an ontology term, ID, and number, and test if the ID is a valid vertex.
      *
@@ -70,18 +92,100 @@ public class OntologyGraphBuilder {
      * @return VTuple created from node
      */
     public static VTuple createVTuple(Node n) {
-        VTuple vtuple = new VTuple(null, null, null, false);
-        if (!n.isURI()) return vtuple;
-        URI uri;
+        if (!n.isURI()) return emptyVTuple;
+        return parseVTuple(n.getURI());
+    }
+
+    /**
+     * Parse a URI to find an ontology term, ID, and number, and test if the ID is a valid vertex. Scan HTTP URIs which
+     * contain only unreserved characters, slashes, colons, and at most one fragment directly, and which creating a URI
+     * would not rewrite, otherwise create a URI.
+     *
+     * @param uri URI string to parse
+     * @return VTuple created from URI
+     */
+    static VTuple parseVTuple(String uri) {
+        int pathStart;
+        if (uri.startsWith("http://")) {
+            pathStart = "http://".length();
+        } else if (uri.startsWith("https://")) {
+            pathStart = "https://".length();
+        } else {
+            return parseVTupleFromURI(uri);
+        }
+
+        // Find the end of a non-empty authority containing only letters, digits, dots, and hyphens
+        int authorityStart = pathStart;
+        while (pathStart < uri.length() && uri.charAt(pathStart) != '/') {
+            char c = uri.charAt(pathStart);
+            if (!(isAlphaNumeric(c) || c == '.' || c == '-')) {
+                return parseVTupleFromURI(uri);
+            }
+            pathStart++;
+        }
+        if (pathStart == authorityStart || isRewrittenURI(uri)) {
+            return parseVTupleFromURI(uri);
+        }
+
+        // Find the last non-empty path segment, ending at the fragment
+        int pathEnd = uri.length();
+        int termStart = -1;
+        int termEnd = -1;
+        int segmentStart = pathStart;
+        for (int i = pathStart; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '/' || c == '#') {
+                if (i > segmentStart && pathEnd == uri.length()) {
+                    termStart = segmentStart;
+                    termEnd = i;
+                }
+                segmentStart = i + 1;
+                if (c == '#') {
+                    if (pathEnd != uri.length()) {
+                        return parseVTupleFromURI(uri);
+                    }
+                    pathEnd = i;
+                }
+            } else if (!(isAlphaNumeric(c) || c == '-' || c == '.' || c == '_' || c == '~' || c == ':')) {
+                return parseVTupleFromURI(uri);
+            }
+        }
+        if (pathEnd == uri.length() && uri.length() > segmentStart) {
+            termStart = segmentStart;
+            termEnd = uri.length();
+        }
+        if (termStart < 0) return emptyVTuple;
+        String term = uri.substring(termStart, termEnd);
+
+        // Split the term into an ID and number
+        String[] tokens = null;
+        if (term.indexOf('_') >= 0) {
+            tokens = splitPair(term, '_');
+        } else if (term.indexOf(':') >= 0) {
+            tokens = splitPair(term, ':');
+        }
+        if (tokens == null) return emptyVTuple;
+        return new VTuple(term, tokens[0], tokens[1], validVertices.contains(tokens[0]));
+    }
+
+    /**
+     * Parse a URI to find an ontology term, ID, and number, and test if the ID is a valid vertex, by creating a URI,
+     * and a path from the URI path.
+     *
+     * @param uri URI string to parse
+     * @return VTuple created from URI
+     */
+    static VTuple parseVTupleFromURI(String uri) {
+        URI u;
         try {
-            uri = createURI(n.getURI());
+            u = createURI(uri);
         } catch (RuntimeException e) {
-            return vtuple;
+            return emptyVTuple;
         }
-        String path = uri.getPath();
-        if (path == null) return vtuple;
+        String path = u.getPath();
+        if (path == null) return emptyVTuple;
         Path fileName = Paths.get(path).getFileName();
-        if (fileName == null) return vtuple;
+        if (fileName == null) return emptyVTuple;
         String term = fileName.toString();
         String[] tokens = null;
         if (term.contains("_")) {
@@ -95,10 +199,33 @@ public class OntologyGraphBuilder {
             id = tokens[0];
             number = tokens[1];
         } else {
-            return vtuple;
+            return emptyVTuple;
+        }
+        return new VTuple(term, id, number, validVertices.contains(id));
+    }
+
+    /**
+     * Split a term into exactly two tokens at a separator, with the semantics of String.split, which drops trailing
+     * empty tokens.
+     *
+     * @param term      Term to split
+     * @param separator Separator character
+     * @return Two tokens, or null if the term does not split into exactly two tokens
+     */
+    private static String[] splitPair(String term, char separator) {
+        int end = term.length();
+        while (end > 0 && term.charAt(end - 1) == separator) {
+            end--;
         }
-        Boolean isValidVertex = validVertices.contains(id);
-        return new VTuple(term, id, number, isValidVertex);
+        int index = term.indexOf(separator);
+        if (index < 0 || index >= end) return null;
+        int next = term.indexOf(separator, index + 1);
+        if (next >= 0 && next < end) return null;
+        return new String[]{term.substring(0, index), term.substring(index + 1, end)};
+    }
+
+    private static boolean isAlphaNumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
     }
 
     /**
@@ -129,153 +256,172 @@ public class OntologyGraphBuilder {
     }
 
     /**
-     * Construct vertices using triples parsed from specified ontology files that contain a named subject and object
-     * which contain an ontology ID contained in the valid vertices' collection.
+     * Collect the vertices to insert in each vertex collection, skipping deprecated vertices, and documenting them in
+     * the deprecated terms file.
      *
-     * @param uniqueTriples     Unique triples with which to construct vertices
-     * @param arangoDbUtilities Utilities for accessing ArangoDB
-     * @param graph             ArangoDB graph in which to create vertex collections
-     * @param vertexCollections ArangoDB vertex collections
-     * @param vertexDocuments   ArangoDB vertex documents
+     * @param vertexDocuments ArangoDB vertex documents
+     * @return Vertices to insert in each vertex collection
      */
-    public static void constructVertices(HashSet<Triple> uniqueTriples,
-                                         ArangoDbUtilities arangoDbUtilities,
-                                         ArangoGraph graph,
-                                         Map<String, ArangoVertexCollection> vertexCollections,
-                                         Map<String, Map<String, BaseDocument>> vertexDocuments) {
-
-        // Collect vertex keys for each vertex collection to prevent constructing
-        // duplicate vertices in the vertex collection
-        Map<String, Set<String>> vertexKeys = new HashMap<>();
-
-        // Process triples
-        long startTime = System.nanoTime();
-        System.out.println("Constructing vertices using " + uniqueTriples.size() + " triples");
-        int nVertices = 0;
-        for (Triple triple : uniqueTriples) {
-
-            // Consider the subject and object nodes
-            ArrayList<Node> nodes = new ArrayList<>(Arrays.asList(triple.getSubject(), triple.getObject()));
-            for (Node n : nodes) {
-
-                // Construct a vertex from the current node, if it contains a valid id
-                VTuple vtuple = createVTuple(n);
-                if (vtuple.isValidVertex) {
-
-                    // Create a vertex collection, if needed
-                    if (!vertexCollections.containsKey(vtuple.id)) {
-                        vertexCollections.put(vtuple.id,
-                                arangoDbUtilities.createOrGetVertexCollection(graph, vtuple.id));
-                        vertexDocuments.put(vtuple.id, new HashMap<>());
-                        vertexKeys.put(vtuple.id, new HashSet<>());
-                    }
-
-                    // Construct the vertex, if needed
-                    if (!vertexKeys.get(vtuple.id).contains(vtuple.number)) {
-                        nVertices++;
-                        BaseDocument doc = new BaseDocument(vtuple.number);
-                        vertexDocuments.get(vtuple.id).put(vtuple.number, doc);
-                        vertexKeys.get(vtuple.id).add(vtuple.number);
+    private static Map<String, List<BaseDocument>> collectVerticesToInsert(Map<String, Map<String, BaseDocument>> vertexDocuments) throws IOException {
+        Map<String, List<BaseDocument>> docsToInsert = new HashMap<>();
+        Charset charset = StandardCharsets.US_ASCII;
+        try (BufferedWriter deprecatedTermsWriter = Files.newBufferedWriter(deprecatedTermsFile, charset)) {
+            for (String id : vertexDocuments.keySet()) {
+                List<BaseDocument> docs = new ArrayList<>();
+                for (String number : vertexDocuments.get(id).keySet()) {
+                    BaseDocument doc = vertexDocuments.get(id).get(number);
+                    if (isDeprecated(doc)) {
+                        deprecatedTermsWriter.write(id + "_" + number + "\n");
+                        continue;
                     }
+                    docs.add(doc);
                 }
+                docsToInsert.put(id, docs);
             }
         }
-        long stopTime = System.nanoTime();
-        System.out.println("Constructed " + nVertices + " vertices using " + uniqueTriples.size() + " triples in " + (stopTime - startTime) / 1e9 + " s");
+        return docsToInsert;
     }
 
     /**
-     * Update vertices using triples parsed from specified ontology files that contain a named subject which contains an
-     * ontology ID contained in the valid vertices collection, and a filled object literal.
+     * Insert the vertices of one vertex collection in batches, and record the keys of the vertices written.
      *
-     * @param uniqueTriples   Unique triples with which to update
-     * @param vertexDocuments ArangoDB vertex documents
+     * @param arangoDbUtilities Utilities for accessing ArangoDB
+     * @param vertexCollection  ArangoDB vertex collection
+     * @param docs              Vertices to insert
+     * @param batchSize         Maximum number of vertices in each batch
+     * @param insertedKeys      Keys of the vertices written, or kept in the vertex collection
+     * @param incremental       Flag to synchronize, rather than insert vertices
+     * @param keptKeys          Keys of stored vertices to keep, even if not constructed
+     * @param checkpoint        Journal of committed batches, or null
+     * @return Report for each batch
      */
-    public static void updateVertices(HashSet<Triple> uniqueTriples,
-                                      Map<String, OntologyElementMap> ontologyElementMaps,
-                                      Map<String, Map<String, BaseDocument>> vertexDocuments) throws RuntimeException {
-
-        // Process triples
-        long startTime = System.nanoTime();
-        System.out.println("Updating vertices using " + uniqueTriples.size() + " triples");
-        Set<String> updatedVertices = new HashSet<>(); // For counting only
-        for (Triple triple : uniqueTriples) {
-
-            // Ensure the object contains a literal
-            Node o = triple.getObject();
-            if (!o.isLiteral()) {
-                continue;
-            }
-
-            // Ensure the subject contains a valid ontology ID
-            VTuple vtuple = createVTuple(triple.getSubject());
-            if (vtuple.isValidVertex) {
-
-                // Parse the predicate
-                String attribute = parsePredicate(ontologyElementMaps, triple.getPredicate());
+    private static List<BatchReport> insertVertexCollection(ArangoDbUtilities arangoDbUtilities,
+                                                            ArangoVertexCollection vertexCollection,
+                                                            List<BaseDocument> docs,
+                                                            int batchSize,
+                                                            Set<String> insertedKeys,
+                                                            boolean incremental,
+                                                            Set<String> keptKeys,
+                                                            LoadCheckpoint checkpoint) {
+        // Insert, or synchronize the vertices using the underlying document collection
+        ArangoCollection collection = vertexCollection.graph().db().collection(vertexCollection.name());
+        List<BatchReport> batchReports = incremental ? synchronizeDocuments(arangoDbUtilities, collection, docs,
+                batchSize, keptKeys) : insertDocuments(arangoDbUtilities, collection, docs, batchSize, checkpoint);
 
-                // Parse the object
-                String literal = o.getLiteralValue().toString();
+        // Record the vertices written, or kept
+        for (BaseDocument doc : docs) {
+            insertedKeys.add(doc.getKey());
+        }
+        insertedKeys.addAll(keptKeys);
+        for (BatchReport batchReport : batchReports) {
+            batchReport.failedKeys().forEach(insertedKeys::remove);
+        }
+        return batchReports;
+    }
 
-                // Get the vertex to update
-                updatedVertices.add(vtuple.id + "-" + vtuple.number);
-                BaseDocument doc = vertexDocuments.get(vtuple.id).get(vtuple.number);
+    /**
+     * Insert documents in batches, keeping several batches in flight through the asynchronous driver unless the
+     * maximum number of requests in flight is one.
+     *
+     * @param arangoDbUtilities Utilities for accessing ArangoDB
+     * @param collection        Collection into which to insert the documents
+     * @param docs              Documents to insert
+     * @param batchSize         Maximum number of documents in each batch
+     * @param <T>               Document type
+     * @return Report for each batch
+     */
+    private static <T extends BaseDocument> List<BatchReport> insertDocuments(ArangoDbUtilities arangoDbUtilities,
+                                                                              ArangoCollection collection,
+                                                                              List<T> docs,
+                                                                              int batchSize) {
+        if (arangoDbUtilities.maxInFlight > 1) {
+            return arangoDbUtilities.insertDocumentsAsync(collection, docs, batchSize, arangoDbUtilities.maxInFlight);
+        }
+        return arangoDbUtilities.insertDocuments(collection, docs, batchSize);
+    }
 
-                // Handle each attribute as a single literal value
-                if (doc.getAttribute(attribute) == null) {
-                    doc.addAttribute(attribute, literal);
-                } else {
-                    doc.updateAttribute(attribute, literal);
+    /**
+     * Insert documents in batches, as insertDocuments does, unless a checkpoint is specified. Then the documents are
+     * sorted by key, so that each batch contains the same documents in each run, batches committed in a previous run
+     * are skipped, and each batch written without errors is committed to the checkpoint. Several batches are still
+     * kept in flight through the asynchronous driver unless the maximum number of requests in flight is one.
+     *
+     * @param arangoDbUtilities Utilities for accessing ArangoDB
+     * @param collection        Collection into which to insert the documents
+     * @param docs              Documents to insert
+     * @param batchSize         Maximum number of documents in each batch
+     * @param checkpoint        Journal of committed batches, or null
+     * @param <T>               Document type
+     * @return Report for each batch written
+     */
+    static <T extends BaseDocument> List<BatchReport> insertDocuments(ArangoDbUtilities arangoDbUtilities,
+                                                                      ArangoCollection collection,
+                                                                      List<T> docs,
+                                                                      int batchSize,
+                                                                      LoadCheckpoint checkpoint) {
+        if (checkpoint == null) {
+            return insertDocuments(arangoDbUtilities, collection, docs, batchSize);
+        }
+        List<T> sortedDocs = new ArrayList<>(docs);
+        sortedDocs.sort(Comparator.comparing(BaseDocument::getKey));
+        if (arangoDbUtilities.maxInFlight > 1) {
+            return arangoDbUtilities.insertDocumentsAsync(collection, sortedDocs, batchSize,
+                    arangoDbUtilities.maxInFlight, checkpoint);
+        }
+        List<BatchReport> batchReports = new ArrayList<>();
+        int nSkipped = 0;
+        int batchNumber = 0;
+        for (int fromIndex = 0; fromIndex < sortedDocs.size(); fromIndex += batchSize) {
+            if (checkpoint.isCommitted(collection.name(), batchNumber)) {
+                nSkipped++;
+            } else {
+                List<T> batch = sortedDocs.subList(fromIndex, Math.min(fromIndex + batchSize, sortedDocs.size()));
+                // Journal the whole batch, though the write policy may split it into smaller batches
+                List<String> failedKeys = new ArrayList<>();
+                List<String> errorMessages = new ArrayList<>();
+                for (BatchReport batchReport : arangoDbUtilities.insertDocuments(collection, batch, batchSize)) {
+                    failedKeys.addAll(batchReport.failedKeys());
+                    errorMessages.addAll(batchReport.errorMessages());
+                }
+                BatchReport batchReport = new BatchReport(collection.name(), batchNumber, batch.size(), failedKeys,
+                        errorMessages);
+                batchReports.add(batchReport);
+                if (!batchReport.hasErrors()) {
+                    checkpoint.commit(collection.name(), batchNumber);
                 }
             }
+            batchNumber++;
         }
-        long stopTime = System.nanoTime();
-        System.out.println("Updated " + updatedVertices.size() + " vertices using " + uniqueTriples.size() + " triples in " + (stopTime - startTime) / 1e9 + " s");
+        if (nSkipped > 0) {
+            System.out.println("Skipped " + nSkipped + " committed batches of " + collection.name());
+        }
+        return batchReports;
     }
 
     /**
-     * Insert all vertices after they have been constructed and updated to improve performance.
+     * Test if a vertex document describes a deprecated, or obsolete term.
      *
-     * @param vertexCollections ArangoDB vertex collections
-     * @param vertexDocuments   ArangoDB vertex documents
+     * @param doc Vertex document
+     * @return True if the term is deprecated, or obsolete
      */
-    public static void insertVertices(Map<String, ArangoVertexCollection> vertexCollections,
-                                      Map<String, Map<String, BaseDocument>> vertexDocuments) throws IOException {
-        System.out.println("Inserting vertices");
-        long startTime = System.nanoTime();
-        Charset charset = StandardCharsets.US_ASCII;
-        BufferedWriter deprecatedTermsWriter = Files.newBufferedWriter(deprecatedTermsFile, charset);
-        int nVertices = 0;
-        for (String id : vertexDocuments.keySet()) {
-            ArangoVertexCollection vertexCollection = vertexCollections.get(id);
-            for (String number : vertexDocuments.get(id).keySet()) {
-                nVertices++;
-                BaseDocument doc = vertexDocuments.get(id).get(number);
-                if (vertexCollection.getVertex(doc.getKey(), doc.getClass()) == null) {
-                    Object deprecated = doc.getAttribute("deprecated");
-                    Object label = doc.getAttribute("label");
-                    if ((deprecated != null && deprecated.toString().contains("true")) || (label != null && label.toString().contains(
-                            "obsolete"))) {
-                        deprecatedTermsWriter.write(id + "_" + number + "\n");
-                        continue;
-                    }
-                    try {
-                        vertexCollection.insertVertex(doc);
-                    } catch (Exception e) {
-                        System.err.println("Error inserting vertex " + doc + ": " + e.getMessage());
-                    }
-                } else {
-                    try {
-                        vertexCollection.updateVertex(doc.getKey(), doc);
-                    } catch (Exception e) {
-                        System.err.println("Error updating vertex " + doc + ": " + e.getMessage());
-                    }
-                }
+    public static boolean isDeprecated(BaseDocument doc) {
+        Object deprecated = doc.getAttribute("deprecated");
+        Object label = doc.getAttribute("label");
+        return (deprecated != null && deprecated.toString().contains("true")) || (label != null && label.toString().contains(
+                "obsolete"));
+    }
+
+    /**
+     * Print one line for each batch which contained documents that could not be written.
+     *
+     * @param batchReports Report for each batch
+     */
+    public static void printBatchErrors(List<BatchReport> batchReports) {
+        for (BatchReport batchReport : batchReports) {
+            if (batchReport.hasErrors()) {
+                System.err.println(batchReport);
             }
         }
-        deprecatedTermsWriter.close();
-        long stopTime = System.nanoTime();
-        System.out.println("Inserted " + nVertices + " vertices in " + (stopTime - startTime) / 1e9 + " s");
     }
 
     /**
@@ -326,85 +472,399 @@ public class OntologyGraphBuilder {
     }
 
     /**
-     * Construct edges using triples parsed from specified ontology files that contain a named subject and object which
-     * contain an ontology ID contained in the valid vertices' collection.
+     * Construct vertices, update vertices, and construct edges in a single pass over triples parsed from specified
+     * ontology files, classifying each triple once. Vertices are constructed from each subject and object which
+     * contain an ontology ID contained in the valid vertices' collection, then updated using each filled object
+     * literal, or connected by an edge to each such object. The VTuple of each node of a triple store is parsed once,
+     * and cached by node id for the pass only.
      *
-     * @param triples             Triples with which to construct edges
+     * @param triples             Triples with which to construct vertices and edges
      * @param ontologyElementMaps Maps terms and labels
-     * @param graph               ArangoDB graph in which to create vertex collections
-     * @param edgeCollections     ArangoDB edge collections
+     * @param vertexDocuments     ArangoDB vertex documents
      * @param edgeDocuments       ArangoDB edge documents
+     * @return Unique edge labels
      */
-    public static HashSet<String> constructEdges(HashSet<Triple> triples,
+    public static HashSet<String> constructGraph(Collection<Triple> triples,
                                                  Map<String, OntologyElementMap> ontologyElementMaps,
-                                                 ArangoDbUtilities arangoDbUtilities,
-                                                 ArangoGraph graph,
-                                                 Map<String, ArangoEdgeCollection> edgeCollections,
-                                                 Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) throws RuntimeException, IOException {
-
-        // Collect edge keys in each edge collection to prevent constructing duplicate
-        // edges in the edge collection
-        Map<String, Set<String>> edgeKeys = new HashMap<>();
+                                                 Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                 Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) throws RuntimeException {
 
         // Process triples
         long startTime = System.nanoTime();
-        System.out.println("Constructing edges using " + triples.size() + " triples");
+        System.out.println("Constructing vertices and edges using " + triples.size() + " triples");
         HashSet<String> edgeLabels = new HashSet<>();
-        int nEdges = 0;
-        for (Triple triple : triples) {
+        int[] counts = new int[3];
+        if (triples instanceof CompactTripleStore store) {
+            VTupleCache vTuples = new VTupleCache(store);
+            for (int index = 0; index < store.size(); index++) {
+                applyTriple(store.get(index), vTuples.getSubject(index), vTuples.getObject(index),
+                        ontologyElementMaps, vertexDocuments, edgeDocuments, edgeLabels, counts);
+            }
+        } else {
+            for (Triple triple : triples) {
+                applyTriple(triple, createVTuple(triple.getSubject()), createVTuple(triple.getObject()),
+                        ontologyElementMaps, vertexDocuments, edgeDocuments, edgeLabels, counts);
+            }
+        }
+        long stopTime = System.nanoTime();
+        System.out.println("Constructed " + counts[0] + " vertices, with " + counts[1] + " updates, and " + counts[2] + " edges using " + triples.size() + " triples in " + (stopTime - startTime) / 1e9 + " s");
+        return edgeLabels;
+    }
 
-            // Ensure the subject contains a valid ontology ID
-            VTuple subjectVTuple = createVTuple(triple.getSubject());
-            if (!subjectVTuple.isValidVertex) continue;
+    /**
+     * Apply a single triple, constructing a vertex from its subject and object, if they contain a valid id, then
+     * updating the subject vertex using an object literal, or connecting it by an edge to the object vertex.
+     *
+     * @param triple              Triple to apply
+     * @param subjectVTuple       VTuple of the subject
+     * @param objectVTuple        VTuple of the object
+     * @param ontologyElementMaps Maps terms and labels
+     * @param vertexDocuments     ArangoDB vertex documents
+     * @param edgeDocuments       ArangoDB edge documents
+     * @param edgeLabels          Unique edge labels
+     * @param counts              Number of vertices constructed, vertices updated, and edges constructed
+     */
+    private static void applyTriple(Triple triple, VTuple subjectVTuple, VTuple objectVTuple,
+                                    Map<String, OntologyElementMap> ontologyElementMaps,
+                                    Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                    Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                    Set<String> edgeLabels,
+                                    int[] counts) {
 
-            // Ensure the object contains a valid ontology ID
-            VTuple objectVTuple = createVTuple(triple.getObject());
-            if (!objectVTuple.isValidVertex) continue;
+        // Construct a vertex from the subject and object nodes, if they contain a valid id
+        Node o = triple.getObject();
+        if (subjectVTuple.isValidVertex && constructVertex(subjectVTuple, vertexDocuments)) {
+            counts[0]++;
+        }
+        if (objectVTuple.isValidVertex && constructVertex(objectVTuple, vertexDocuments)) {
+            counts[0]++;
+        }
+        if (!subjectVTuple.isValidVertex) return;
 
-            // Parse the predicate and collect unique labels
+        if (o.isLiteral()) {
+
+            // Update the subject vertex using the object literal
+            String attribute = parsePredicate(ontologyElementMaps, triple.getPredicate());
+            String literal = o.getLiteralValue().toString();
+            updateVertex(vertexDocuments.get(subjectVTuple.id).get(subjectVTuple.number), attribute, literal);
+            counts[1]++;
+
+        } else if (objectVTuple.isValidVertex) {
+
+            // Construct an edge, collecting unique labels
             String label = parsePredicate(ontologyElementMaps, triple.getPredicate());
             edgeLabels.add(label);
-
-            // Create an edge collection, if needed
-            String idPair = subjectVTuple.id + "-" + objectVTuple.id;
-            if (!edgeCollections.containsKey(idPair)) {
-                edgeCollections.put(idPair,
-                        arangoDbUtilities.createOrGetEdgeCollection(graph, subjectVTuple.id, objectVTuple.id));
-                edgeDocuments.put(idPair, new HashMap<>());
+            if (constructEdge(subjectVTuple, objectVTuple, label, edgeDocuments)) {
+                counts[2]++;
             }
+        }
+    }
 
-            // Create an edge key set, if needed
-            if (!edgeKeys.containsKey(idPair)) {
-                edgeKeys.put(idPair, new HashSet<>());
+    /**
+     * Construct vertices, update vertices, and construct edges as constructGraph does, using the specified number of
+     * threads of a fork-join pool. Chunks of triples are classified in parallel into the indices of the triples in the
+     * store which touch each shard, a vertex collection id, or edge collection id pair. Each shard then re-derives the
+     * vertex tuples of its triples, and applies them in triple order, so the "last label and source wins" rule for
+     * edges, and the order in which documents are constructed, are the same as for the sequential pass, regardless of
+     * the number of threads. The VTuple of each node is parsed once, and cached by node id for the pass only.
+     *
+     * @param triples             Triples with which to construct vertices and edges
+     * @param ontologyElementMaps Maps terms and labels
+     * @param vertexDocuments     ArangoDB vertex documents
+     * @param edgeDocuments       ArangoDB edge documents
+     * @param parallelism         Number of threads with which to construct vertices and edges
+     * @return Unique edge labels
+     */
+    public static HashSet<String> constructGraph(CompactTripleStore triples,
+                                                 Map<String, OntologyElementMap> ontologyElementMaps,
+                                                 Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                 Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                                 int parallelism) throws RuntimeException {
+        if (parallelism <= 1) {
+            return constructGraph(triples, ontologyElementMaps, vertexDocuments, edgeDocuments);
+        }
+
+        // Split the triples into chunks
+        long startTime = System.nanoTime();
+        System.out.println("Constructing vertices and edges using " + triples.size() + " triples and " + parallelism + " threads");
+        int nTriples = triples.size();
+        int chunkSize = Math.max(1, (nTriples + 4 * parallelism - 1) / (4 * parallelism));
+        List<int[]> chunks = new ArrayList<>();
+        for (int start = 0; start < nTriples; start += chunkSize) {
+            chunks.add(new int[]{start, Math.min(nTriples, start + chunkSize)});
+        }
+
+        HashSet<String> edgeLabels = new HashSet<>();
+        int[] counts = new int[3];
+        VTupleCache vTuples = new VTupleCache(triples);
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+
+            // Classify each chunk of triples into the indices of the triples touching each shard
+            List<GraphChunk> graphChunks = pool.submit(() -> chunks.parallelStream().map(
+                    chunk -> classifyTriples(triples, vTuples, chunk[0], chunk[1])).toList()).get();
+
+            // Collect the indices of each shard in chunk order, and shards in order of first appearance
+            Map<String, List<TripleIndices>> vertexShards = new LinkedHashMap<>();
+            Map<String, List<TripleIndices>> edgeShards = new LinkedHashMap<>();
+            for (GraphChunk graphChunk : graphChunks) {
+                graphChunk.vertexIndices().forEach((id, indices) -> vertexShards.computeIfAbsent(id,
+                        k -> new ArrayList<>()).add(indices));
+                graphChunk.edgeIndices().forEach((idPair, indices) -> edgeShards.computeIfAbsent(idPair,
+                        k -> new ArrayList<>()).add(indices));
             }
 
-            // Construct the edge, if needed
-            String key = subjectVTuple.number + "-" + objectVTuple.number;
-            String normalizedSource = normalizeEdgeSource(subjectVTuple.id);
-            String normalizedLabel = normalizeEdgeLabel(label);
-            if (!edgeKeys.get(idPair).contains(key)) {
-                nEdges++;
-                BaseEdgeDocument doc = new BaseEdgeDocument(key,
-                        subjectVTuple.id + "/" + subjectVTuple.number,
-                        objectVTuple.id + "/" + objectVTuple.number);
-
-                // Assign the first label and source
-                doc.addAttribute("Label", normalizedLabel);
-                doc.addAttribute("Source", normalizedSource);
-                edgeDocuments.get(idPair).put(key, doc);
-                edgeKeys.get(idPair).add(key);
-            } else {
-                BaseEdgeDocument doc = edgeDocuments.get(idPair).get(key);
-                // Assign the last label and source
-                doc.updateAttribute("Label", normalizedLabel);
-                doc.updateAttribute("Source", normalizedSource);
+            // Apply the triples of each shard in parallel
+            Map<String, Map<String, BaseDocument>> shardVertexDocuments = new ConcurrentHashMap<>();
+            Map<String, Map<String, BaseEdgeDocument>> shardEdgeDocuments = new ConcurrentHashMap<>();
+            Map<String, int[]> shardCounts = new ConcurrentHashMap<>();
+            Set<String> shardEdgeLabels = ConcurrentHashMap.newKeySet();
+            pool.submit(() -> {
+                vertexShards.entrySet().parallelStream().forEach(shard -> {
+                    Map<String, Map<String, BaseDocument>> documents = new HashMap<>();
+                    documents.put(shard.getKey(), vertexDocuments.getOrDefault(shard.getKey(), new HashMap<>()));
+                    shardCounts.put("V:" + shard.getKey(), applyVertexShard(triples, vTuples, shard.getKey(),
+                            shard.getValue(), ontologyElementMaps, documents));
+                    shardVertexDocuments.put(shard.getKey(), documents.get(shard.getKey()));
+                });
+                edgeShards.entrySet().parallelStream().forEach(shard -> {
+                    Map<String, Map<String, BaseEdgeDocument>> documents = new HashMap<>();
+                    documents.put(shard.getKey(), edgeDocuments.getOrDefault(shard.getKey(), new HashMap<>()));
+                    shardCounts.put("E:" + shard.getKey(), applyEdgeShard(triples, vTuples, shard.getValue(),
+                            ontologyElementMaps, documents, shardEdgeLabels));
+                    shardEdgeDocuments.put(shard.getKey(), documents.get(shard.getKey()));
+                });
+            }).get();
+            edgeLabels.addAll(shardEdgeLabels);
+
+            // Collect the shards in order of first appearance
+            for (String id : vertexShards.keySet()) {
+                vertexDocuments.put(id, shardVertexDocuments.get(id));
+            }
+            for (String idPair : edgeShards.keySet()) {
+                edgeDocuments.put(idPair, shardEdgeDocuments.get(idPair));
+            }
+            for (int[] shardCount : shardCounts.values()) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += shardCount[i];
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
         }
         long stopTime = System.nanoTime();
-        System.out.println("Constructed " + nEdges + " edges from " + triples.size() + " triples in " + (stopTime - startTime) / 1e9 + " s");
+        System.out.println("Constructed " + counts[0] + " vertices, with " + counts[1] + " updates, and " + counts[2] + " edges using " + triples.size() + " triples in " + (stopTime - startTime) / 1e9 + " s");
         return edgeLabels;
     }
 
+    /**
+     * Classify a chunk of triples into the indices of the triples which construct, or update vertices of each vertex
+     * collection id, and which construct edges of each edge collection id pair, in triple order.
+     *
+     * @param triples Triples with which to construct vertices and edges
+     * @param vTuples VTuple of each node of the triples
+     * @param start   Index of the first triple of the chunk
+     * @param stop    Index after the last triple of the chunk
+     * @return Indices of the triples touching each shard
+     */
+    private static GraphChunk classifyTriples(CompactTripleStore triples, VTupleCache vTuples, int start, int stop) {
+        Map<String, TripleIndices> vertexIndices = new LinkedHashMap<>();
+        Map<String, TripleIndices> edgeIndices = new LinkedHashMap<>();
+        for (int index = start; index < stop; index++) {
+            Triple triple = triples.get(index);
+            VTuple subjectVTuple = vTuples.getSubject(index);
+            VTuple objectVTuple = vTuples.getObject(index);
+            if (subjectVTuple.isValidVertex) {
+                vertexIndices.computeIfAbsent(subjectVTuple.id, k -> new TripleIndices()).add(index);
+            }
+            if (objectVTuple.isValidVertex && !(subjectVTuple.isValidVertex && objectVTuple.id.equals(
+                    subjectVTuple.id))) {
+                vertexIndices.computeIfAbsent(objectVTuple.id, k -> new TripleIndices()).add(index);
+            }
+            if (subjectVTuple.isValidVertex && objectVTuple.isValidVertex && !triple.getObject().isLiteral()) {
+                edgeIndices.computeIfAbsent(subjectVTuple.id + "-" + objectVTuple.id, k -> new TripleIndices()).add(
+                        index);
+            }
+        }
+        return new GraphChunk(vertexIndices, edgeIndices);
+    }
+
+    /**
+     * Apply the triples of a single vertex shard, in chunk order, constructing the vertices of the shard from each
+     * subject, and object, and updating them using each object literal.
+     *
+     * @param triples             Triples with which to construct vertices and edges
+     * @param vTuples             VTuple of each node of the triples
+     * @param id                  Vertex collection id of the shard
+     * @param indices             Indices of the triples touching the shard in each chunk
+     * @param ontologyElementMaps Maps terms and labels
+     * @param vertexDocuments     ArangoDB vertex documents of the shard
+     * @return Number of vertices constructed, vertices updated, and edges constructed
+     */
+    private static int[] applyVertexShard(CompactTripleStore triples, VTupleCache vTuples, String id,
+                                          List<TripleIndices> indices,
+                                          Map<String, OntologyElementMap> ontologyElementMaps,
+                                          Map<String, Map<String, BaseDocument>> vertexDocuments) {
+        int[] counts = new int[3];
+        for (TripleIndices chunkIndices : indices) {
+            for (int i = 0; i < chunkIndices.size; i++) {
+                int index = chunkIndices.indices[i];
+                Triple triple = triples.get(index);
+                VTuple subjectVTuple = vTuples.getSubject(index);
+                Node o = triple.getObject();
+                VTuple objectVTuple = vTuples.getObject(index);
+                boolean isSubjectInShard = subjectVTuple.isValidVertex && subjectVTuple.id.equals(id);
+                if (isSubjectInShard && constructVertex(subjectVTuple, vertexDocuments)) {
+                    counts[0]++;
+                }
+                if (objectVTuple.isValidVertex && objectVTuple.id.equals(id) && constructVertex(objectVTuple,
+                        vertexDocuments)) {
+                    counts[0]++;
+                }
+                if (isSubjectInShard && o.isLiteral()) {
+                    String attribute = parsePredicate(ontologyElementMaps, triple.getPredicate());
+                    updateVertex(vertexDocuments.get(id).get(subjectVTuple.number), attribute,
+                            o.getLiteralValue().toString());
+                    counts[1]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Apply the triples of a single edge shard, in chunk order, constructing an edge from each, and collecting
+     * unique labels.
+     *
+     * @param triples             Triples with which to construct vertices and edges
+     * @param vTuples             VTuple of each node of the triples
+     * @param indices             Indices of the triples touching the shard in each chunk
+     * @param ontologyElementMaps Maps terms and labels
+     * @param edgeDocuments       ArangoDB edge documents of the shard
+     * @param edgeLabels          Unique edge labels
+     * @return Number of vertices constructed, vertices updated, and edges constructed
+     */
+    private static int[] applyEdgeShard(CompactTripleStore triples, VTupleCache vTuples, List<TripleIndices> indices,
+                                        Map<String, OntologyElementMap> ontologyElementMaps,
+                                        Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                        Set<String> edgeLabels) {
+        int[] counts = new int[3];
+        for (TripleIndices chunkIndices : indices) {
+            for (int i = 0; i < chunkIndices.size; i++) {
+                int index = chunkIndices.indices[i];
+                Triple triple = triples.get(index);
+                String label = parsePredicate(ontologyElementMaps, triple.getPredicate());
+                edgeLabels.add(label);
+                if (constructEdge(vTuples.getSubject(index), vTuples.getObject(index), label, edgeDocuments)) {
+                    counts[2]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Create, or get the vertex and edge collections containing constructed documents.
+     *
+     * @param arangoDbUtilities ArangoDB utilities
+     * @param graph             ArangoDB graph in which to create collections
+     * @param vertexDocuments   ArangoDB vertex documents
+     * @param edgeDocuments     ArangoDB edge documents
+     * @param vertexCollections ArangoDB vertex collections
+     * @param edgeCollections   ArangoDB edge collections
+     */
+    public static void createCollections(ArangoDbUtilities arangoDbUtilities,
+                                         ArangoGraph graph,
+                                         Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                         Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                         Map<String, ArangoVertexCollection> vertexCollections,
+                                         Map<String, ArangoEdgeCollection> edgeCollections) {
+        for (String id : vertexDocuments.keySet()) {
+            if (!vertexCollections.containsKey(id)) {
+                vertexCollections.put(id, arangoDbUtilities.createOrGetVertexCollection(graph, id));
+            }
+        }
+        for (String idPair : edgeDocuments.keySet()) {
+            if (!edgeCollections.containsKey(idPair) && !edgeDocuments.get(idPair).isEmpty()) {
+                BaseEdgeDocument doc = edgeDocuments.get(idPair).values().iterator().next();
+                edgeCollections.put(idPair, arangoDbUtilities.createOrGetEdgeCollection(graph,
+                        getDocumentCollectionName(doc.getFrom()),
+                        getDocumentCollectionName(doc.getTo())));
+            }
+        }
+    }
+
+    /**
+     * Construct a vertex document from a VTuple, if not already constructed.
+     *
+     * @param vtuple          VTuple containing a valid id
+     * @param vertexDocuments ArangoDB vertex documents
+     * @return True if the vertex was constructed
+     */
+    static boolean constructVertex(VTuple vtuple, Map<String, Map<String, BaseDocument>> vertexDocuments) {
+        Map<String, BaseDocument> documents = vertexDocuments.computeIfAbsent(vtuple.id, k -> new HashMap<>());
+        if (documents.containsKey(vtuple.number)) {
+            return false;
+        }
+        documents.put(vtuple.number, new BaseDocument(vtuple.number));
+        return true;
+    }
+
+    /**
+     * Update a vertex document attribute, handling each attribute as a single literal value.
+     *
+     * @param doc       Vertex document to update
+     * @param attribute Attribute name
+     * @param literal   Attribute value
+     */
+    static void updateVertex(BaseDocument doc, String attribute, String literal) {
+        if (doc.getAttribute(attribute) == null) {
+            doc.addAttribute(attribute, literal);
+        } else {
+            doc.updateAttribute(attribute, literal);
+        }
+    }
+
+    /**
+     * Construct an edge document from subject and object VTuples, if not already constructed, assigning the first
+     * label and source, otherwise assign the last label and source.
+     *
+     * @param subjectVTuple Subject VTuple containing a valid id
+     * @param objectVTuple  Object VTuple containing a valid id
+     * @param label         Edge label
+     * @param edgeDocuments ArangoDB edge documents
+     * @return True if the edge was constructed
+     */
+    static boolean constructEdge(VTuple subjectVTuple, VTuple objectVTuple, String label,
+                                         Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
+        String idPair = subjectVTuple.id + "-" + objectVTuple.id;
+        Map<String, BaseEdgeDocument> documents = edgeDocuments.computeIfAbsent(idPair, k -> new HashMap<>());
+        String key = subjectVTuple.number + "-" + objectVTuple.number;
+        String normalizedSource = normalizeEdgeSource(subjectVTuple.id);
+        String normalizedLabel = normalizeEdgeLabel(label);
+        BaseEdgeDocument doc = documents.get(key);
+        if (doc == null) {
+            doc = new BaseEdgeDocument(key,
+                    subjectVTuple.id + "/" + subjectVTuple.number,
+                    objectVTuple.id + "/" + objectVTuple.number);
+
+            // Assign the first label and source
+            doc.addAttribute("Label", normalizedLabel);
+            doc.addAttribute("Source", normalizedSource);
+            documents.put(key, doc);
+            return true;
+        }
+        // Assign the last label and source
+        doc.updateAttribute("Label", normalizedLabel);
+        doc.updateAttribute("Source", normalizedSource);
+        return false;
+    }
+
     /**
      * Get the document collection name, which is typically an ontology id for a vertex document, or an ontology id pair
      * for an edge document, from a document id.
@@ -436,60 +896,820 @@ public class OntologyGraphBuilder {
     }
 
     /**
-     * Insert all edges after they have been constructed to improve performance.
+     * Collect the edges to insert, skipping edges to or from vertices not written.
      *
-     * @param vertexCollections ArangoDB vertex collections
-     * @param edgeCollections   ArangoDB edge collections
-     * @param edgeDocuments     ArangoDB edge documents
+     * @param edgeDocuments      ArangoDB edge documents of one edge collection
+     * @param insertedVertexKeys Keys of the vertices written to each vertex collection
+     * @return Edges to insert
+     */
+    private static List<BaseEdgeDocument> collectEdgesToInsert(Collection<BaseEdgeDocument> edgeDocuments,
+                                                               Map<String, Set<String>> insertedVertexKeys) {
+        List<BaseEdgeDocument> docs = new ArrayList<>();
+        for (BaseEdgeDocument doc : edgeDocuments) {
+            if (isVertexInserted(insertedVertexKeys, doc.getFrom()) && isVertexInserted(insertedVertexKeys,
+                    doc.getTo())) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * Insert the edges of one edge collection in batches.
+     *
+     * @param arangoDbUtilities Utilities for accessing ArangoDB
+     * @param edgeCollection    ArangoDB edge collection
+     * @param docs              Edges to insert
+     * @param batchSize         Maximum number of edges in each batch
+     * @param incremental       Flag to synchronize, rather than insert edges
+     * @param checkpoint        Journal of committed batches, or null
+     * @return Report for each batch
+     */
+    private static List<BatchReport> insertEdgeCollection(ArangoDbUtilities arangoDbUtilities,
+                                                          ArangoEdgeCollection edgeCollection,
+                                                          List<BaseEdgeDocument> docs,
+                                                          int batchSize,
+                                                          boolean incremental,
+                                                          LoadCheckpoint checkpoint) {
+        // Insert, or synchronize the edges using the underlying document collection
+        ArangoCollection collection = edgeCollection.graph().db().collection(edgeCollection.name());
+        if (incremental) {
+            return synchronizeDocuments(arangoDbUtilities, collection, docs, batchSize);
+        }
+        return insertDocuments(arangoDbUtilities, collection, docs, batchSize, checkpoint);
+    }
+
+    /**
+     * Synchronize a collection with the documents constructed for it, by comparing the content hash of each document
+     * with the content hash stored. Documents which are new, or changed are inserted, or replaced, and stored documents
+     * which were not constructed are removed. Unchanged documents are not written.
+     *
+     * @param arangoDbUtilities ArangoDB utilities
+     * @param collection        Collection to synchronize
+     * @param docs              Documents constructed for the collection, each with a content hash
+     * @param batchSize         Maximum number of documents in each request
+     * @param <T>               Document type
+     * @return Report for each batch written, or removed
      */
-    public static void insertEdges(Map<String, ArangoVertexCollection> vertexCollections,
-                                   Map<String, ArangoEdgeCollection> edgeCollections,
-                                   Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
-        System.out.println("Inserting edges");
+    public static <T extends BaseDocument> List<BatchReport> synchronizeDocuments(ArangoDbUtilities arangoDbUtilities,
+                                                                                  ArangoCollection collection,
+                                                                                  List<T> docs,
+                                                                                  int batchSize) {
+        return synchronizeDocuments(arangoDbUtilities, collection, docs, batchSize, Set.of());
+    }
+
+    /**
+     * Synchronize a collection with the documents constructed for it, as synchronizeDocuments does, except that stored
+     * documents with the specified keys are kept, even if not constructed.
+     *
+     * @param arangoDbUtilities ArangoDB utilities
+     * @param collection        Collection to synchronize
+     * @param docs              Documents constructed for the collection, each with a content hash
+     * @param batchSize         Maximum number of documents in each request
+     * @param keptKeys          Keys of stored documents to keep, even if not constructed
+     * @param <T>               Document type
+     * @return Report for each batch written, or removed
+     */
+    public static <T extends BaseDocument> List<BatchReport> synchronizeDocuments(ArangoDbUtilities arangoDbUtilities,
+                                                                                  ArangoCollection collection,
+                                                                                  List<T> docs,
+                                                                                  int batchSize,
+                                                                                  Set<String> keptKeys) {
         long startTime = System.nanoTime();
-        int nEdges = 0;
-        for (String idPair : edgeDocuments.keySet()) {
-            ArangoEdgeCollection edgeCollection = edgeCollections.get(idPair);
-            for (String key : edgeDocuments.get(idPair).keySet()) {
-                nEdges++;
-                BaseEdgeDocument doc = edgeDocuments.get(idPair).get(key);
-                String docKey = doc.getKey();
-                String fromId = doc.getFrom();
-                String fromName = getDocumentCollectionName(fromId);
-                String fromKey = getDocumentKey(fromId);
-                String toId = doc.getTo();
-                String toName = getDocumentCollectionName(toId);
-                String toKey = getDocumentKey(toId);
-                if (edgeCollection.getEdge(docKey, doc.getClass()) == null) {
-                    if (!(vertexCollections.get(fromName).getVertex(fromKey,
-                            BaseDocument.class) == null) && !(vertexCollections.get(toName).getVertex(toKey,
-                            BaseDocument.class) == null)) {
-                        try {
-                            edgeCollection.insertEdge(doc);
-                        } catch (Exception e) {
-                            System.err.println("Error inserting edge " + doc + ": " + e.getMessage());
-                        }
+        Map<String, String> storedHashes = arangoDbUtilities.getContentHashes(collection);
+        List<T> docsToWrite = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        for (T doc : docs) {
+            keys.add(doc.getKey());
+            if (!Objects.equals(storedHashes.get(doc.getKey()), doc.getAttribute(CONTENT_HASH))) {
+                docsToWrite.add(doc);
+            }
+        }
+        List<String> keysToRemove = new ArrayList<>();
+        for (String key : storedHashes.keySet()) {
+            if (!keys.contains(key) && !keptKeys.contains(key)) {
+                keysToRemove.add(key);
+            }
+        }
+        List<BatchReport> batchReports = new ArrayList<>(arangoDbUtilities.replaceDocuments(collection, docsToWrite,
+                batchSize));
+        batchReports.addAll(arangoDbUtilities.removeDocuments(collection, keysToRemove, batchSize));
+        long stopTime = System.nanoTime();
+        System.out.println("Synchronized " + collection.name() + ": wrote " + docsToWrite.size() + ", removed " + keysToRemove.size() + ", and kept " + (docs.size() - docsToWrite.size()) + " documents in " + (stopTime - startTime) / 1e9 + " s");
+        return batchReports;
+    }
+
+    /**
+     * Assign the content hash attribute of each document.
+     *
+     * @param documents Documents by collection name and key
+     */
+    public static void addContentHashes(Map<String, ? extends Map<String, ? extends BaseDocument>> documents) {
+        for (Map<String, ? extends BaseDocument> docs : documents.values()) {
+            for (BaseDocument doc : docs.values()) {
+                doc.addAttribute(CONTENT_HASH, computeContentHash(doc));
+            }
+        }
+    }
+
+    /**
+     * Insert all vertices, then all edges, loading each collection on its own virtual thread, with at most the
+     * specified number of collections loading at once. Each edge collection starts loading only after both the vertex
+     * collection from which its edges originate, and the vertex collection to which they terminate have been loaded.
+     * Deprecated vertices are skipped, and documented in the deprecated terms file, and edges to or from vertices not
+     * written are skipped.
+     *
+     * @param arangoDbUtilities  Utilities for accessing ArangoDB
+     * @param vertexCollections  ArangoDB vertex collections
+     * @param vertexDocuments    ArangoDB vertex documents
+     * @param edgeCollections    ArangoDB edge collections
+     * @param edgeDocuments      ArangoDB edge documents
+     * @param batchSize          Maximum number of documents in each batch
+     * @param maxCollections     Maximum number of collections loading at once
+     * @param insertedVertexKeys Keys of the vertices written to each vertex collection
+     * @return Report for each batch
+     */
+    public static List<BatchReport> insertInParallel(ArangoDbUtilities arangoDbUtilities,
+                                                     Map<String, ArangoVertexCollection> vertexCollections,
+                                                     Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                     Map<String, ArangoEdgeCollection> edgeCollections,
+                                                     Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                                     int batchSize,
+                                                     int maxCollections,
+                                                     Map<String, Set<String>> insertedVertexKeys) throws IOException {
+        return insertInParallel(arangoDbUtilities, vertexCollections, vertexDocuments, edgeCollections,
+                edgeDocuments, batchSize, maxCollections, insertedVertexKeys, false);
+    }
+
+    /**
+     * Insert, or synchronize all vertices, then all edges, as insertInParallel does. When incremental, each collection
+     * is synchronized with its documents by content hash, so that only new, or changed documents are written, and
+     * documents no longer constructed are removed.
+     *
+     * @param arangoDbUtilities  Utilities for accessing ArangoDB
+     * @param vertexCollections  ArangoDB vertex collections
+     * @param vertexDocuments    ArangoDB vertex documents
+     * @param edgeCollections    ArangoDB edge collections
+     * @param edgeDocuments      ArangoDB edge documents
+     * @param batchSize          Maximum number of documents in each batch
+     * @param maxCollections     Maximum number of collections loading at once
+     * @param insertedVertexKeys Keys of the vertices written, or kept in each vertex collection
+     * @param incremental        Flag to synchronize, rather than insert documents
+     * @return Report for each batch
+     */
+    public static List<BatchReport> insertInParallel(ArangoDbUtilities arangoDbUtilities,
+                                                     Map<String, ArangoVertexCollection> vertexCollections,
+                                                     Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                     Map<String, ArangoEdgeCollection> edgeCollections,
+                                                     Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                                     int batchSize,
+                                                     int maxCollections,
+                                                     Map<String, Set<String>> insertedVertexKeys,
+                                                     boolean incremental) throws IOException {
+        return insertInParallel(arangoDbUtilities, vertexCollections, vertexDocuments, edgeCollections,
+                edgeDocuments, batchSize, maxCollections, insertedVertexKeys, incremental, Map.of(), null);
+    }
+
+    /**
+     * Insert, or synchronize all vertices, then all edges, as insertInParallel does, except that, when incremental,
+     * stored vertices with the specified keys are kept in each vertex collection, even if not constructed. Vertex
+     * collections without documents are not written, but keys already recorded for them are used to decide which
+     * edges to write.
+     *
+     * @param arangoDbUtilities  Utilities for accessing ArangoDB
+     * @param vertexCollections  ArangoDB vertex collections
+     * @param vertexDocuments    ArangoDB vertex documents
+     * @param edgeCollections    ArangoDB edge collections
+     * @param edgeDocuments      ArangoDB edge documents
+     * @param batchSize          Maximum number of documents in each batch
+     * @param maxCollections     Maximum number of collections loading at once
+     * @param insertedVertexKeys Keys of the vertices written, or kept in each vertex collection
+     * @param incremental        Flag to synchronize, rather than insert documents
+     * @param keptVertexKeys     Keys of stored vertices to keep in each vertex collection
+     * @return Report for each batch
+     */
+    public static List<BatchReport> insertInParallel(ArangoDbUtilities arangoDbUtilities,
+                                                     Map<String, ArangoVertexCollection> vertexCollections,
+                                                     Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                     Map<String, ArangoEdgeCollection> edgeCollections,
+                                                     Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                                     int batchSize,
+                                                     int maxCollections,
+                                                     Map<String, Set<String>> insertedVertexKeys,
+                                                     boolean incremental,
+                                                     Map<String, Set<String>> keptVertexKeys) throws IOException {
+        return insertInParallel(arangoDbUtilities, vertexCollections, vertexDocuments, edgeCollections,
+                edgeDocuments, batchSize, maxCollections, insertedVertexKeys, incremental, keptVertexKeys, null);
+    }
+
+    /**
+     * Insert, or synchronize all vertices, then all edges, as insertInParallel does, except that, when not
+     * incremental, and a checkpoint is specified, each batch written is committed to the checkpoint, and batches
+     * committed in a previous run are skipped.
+     *
+     * @param arangoDbUtilities  Utilities for accessing ArangoDB
+     * @param vertexCollections  ArangoDB vertex collections
+     * @param vertexDocuments    ArangoDB vertex documents
+     * @param edgeCollections    ArangoDB edge collections
+     * @param edgeDocuments      ArangoDB edge documents
+     * @param batchSize          Maximum number of documents in each batch
+     * @param maxCollections     Maximum number of collections loading at once
+     * @param insertedVertexKeys Keys of the vertices written, or kept in each vertex collection
+     * @param incremental        Flag to synchronize, rather than insert documents
+     * @param keptVertexKeys     Keys of stored vertices to keep in each vertex collection
+     * @param checkpoint         Journal of committed batches, or null
+     * @return Report for each batch
+     */
+    public static List<BatchReport> insertInParallel(ArangoDbUtilities arangoDbUtilities,
+                                                     Map<String, ArangoVertexCollection> vertexCollections,
+                                                     Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                     Map<String, ArangoEdgeCollection> edgeCollections,
+                                                     Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                                     int batchSize,
+                                                     int maxCollections,
+                                                     Map<String, Set<String>> insertedVertexKeys,
+                                                     boolean incremental,
+                                                     Map<String, Set<String>> keptVertexKeys,
+                                                     LoadCheckpoint checkpoint) throws IOException {
+        System.out.println("Inserting vertices and edges in batches of " + batchSize + " into at most " + maxCollections + " collections at once");
+        long startTime = System.nanoTime();
+        Map<String, List<BaseDocument>> verticesToInsert = collectVerticesToInsert(vertexDocuments);
+        Semaphore permits = new Semaphore(maxCollections);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            // Load each vertex collection, recording the vertices written in a set owned by the loading thread
+            Map<String, CompletableFuture<List<BatchReport>>> vertexFutures = new HashMap<>();
+            for (String id : verticesToInsert.keySet()) {
+                Set<String> insertedKeys = ConcurrentHashMap.newKeySet();
+                insertedVertexKeys.put(id, insertedKeys);
+                vertexFutures.put(id, CompletableFuture.supplyAsync(() -> withPermit(permits,
+                        () -> insertVertexCollection(arangoDbUtilities,
+                                vertexCollections.get(id),
+                                verticesToInsert.get(id),
+                                batchSize,
+                                insertedKeys,
+                                incremental,
+                                keptVertexKeys.getOrDefault(id, Set.of()),
+                                checkpoint)), executor));
+            }
+
+            // Load each edge collection after both of its vertex collections
+            List<CompletableFuture<List<BatchReport>>> edgeFutures = new ArrayList<>();
+            CompletableFuture<List<BatchReport>> loaded = CompletableFuture.completedFuture(List.of());
+            for (String idPair : edgeDocuments.keySet()) {
+                Collection<BaseEdgeDocument> docs = edgeDocuments.get(idPair).values();
+                if (docs.isEmpty()) continue;
+                BaseEdgeDocument doc = docs.iterator().next();
+                CompletableFuture<List<BatchReport>> fromFuture = vertexFutures.getOrDefault(getDocumentCollectionName(
+                        doc.getFrom()), loaded);
+                CompletableFuture<List<BatchReport>> toFuture = vertexFutures.getOrDefault(getDocumentCollectionName(
+                        doc.getTo()), loaded);
+                edgeFutures.add(CompletableFuture.allOf(fromFuture, toFuture).thenApplyAsync(v -> withPermit(permits,
+                        () -> insertEdgeCollection(arangoDbUtilities,
+                                edgeCollections.get(idPair),
+                                collectEdgesToInsert(docs, insertedVertexKeys),
+                                batchSize,
+                                incremental,
+                                checkpoint)), executor));
+            }
+
+            // Wait for all collections to load
+            List<BatchReport> batchReports = new ArrayList<>();
+            try {
+                for (CompletableFuture<List<BatchReport>> future : vertexFutures.values()) {
+                    batchReports.addAll(future.join());
+                }
+                for (CompletableFuture<List<BatchReport>> future : edgeFutures) {
+                    batchReports.addAll(future.join());
+                }
+            } catch (CompletionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            long stopTime = System.nanoTime();
+            System.out.println("Inserted " + vertexFutures.size() + " vertex collections, and " + edgeFutures.size() + " edge collections in " + batchReports.size() + " batches in " + (stopTime - startTime) / 1e9 + " s");
+            return batchReports;
+        }
+    }
+
+    /**
+     * Run a task while holding one of the specified permits.
+     *
+     * @param permits Permits limiting the number of tasks running at once
+     * @param task    Task to run
+     * @param <T>     Result type
+     * @return Result of the task
+     */
+    private static <T> T withPermit(Semaphore permits, Supplier<T> task) {
+        permits.acquireUninterruptibly();
+        try {
+            return task.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Test if the vertex with the specified document id was written.
+     *
+     * @param insertedVertexKeys Keys of the vertices written to each vertex collection
+     * @param documentId         Vertex document id
+     * @return True if the vertex was written
+     */
+    public static boolean isVertexInserted(Map<String, Set<String>> insertedVertexKeys, String documentId) {
+        Set<String> insertedKeys = insertedVertexKeys.get(getDocumentCollectionName(documentId));
+        return insertedKeys != null && insertedKeys.contains(getDocumentKey(documentId));
+    }
+
+    /**
+     * Get the comma separated values of a command line option, given as the argument following the option.
+     *
+     * @param args   Command line arguments
+     * @param option Option name, such as "--ontologies"
+     * @return Values of the option, or an empty list if the option is not given
+     */
+    public static List<String> getOptionValues(String[] args, String option) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(option)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Option " + option + " requires a value");
+                }
+                List<String> values = new ArrayList<>();
+                for (String value : args[i + 1].split(",")) {
+                    if (!value.isBlank()) {
+                        values.add(value.trim());
                     }
+                }
+                return values;
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Select the ontology files with the specified file stems, such as "mondo-simple".
+     *
+     * @param files Paths to all ontology files
+     * @param stems File stems of the ontology files to select
+     * @return Paths to the selected ontology files
+     */
+    public static List<Path> selectOntologyFiles(List<Path> files, Collection<String> stems) {
+        List<Path> selectedFiles = new ArrayList<>();
+        Set<String> unmatchedStems = new HashSet<>(stems);
+        for (Path file : files) {
+            String stem = PathUtilities.getFileStem(file);
+            if (stems.contains(stem)) {
+                selectedFiles.add(file);
+                unmatchedStems.remove(stem);
+            }
+        }
+        if (!unmatchedStems.isEmpty()) {
+            throw new IllegalArgumentException("No ontology files found for " + unmatchedStems);
+        }
+        return selectedFiles;
+    }
+
+    /**
+     * Get the normalized source of each ontology file, which is the upper case id of the vertex collections built
+     * from the file.
+     *
+     * @param files Paths to ontology files
+     * @return Normalized sources
+     */
+    public static Set<String> getSelectedSources(List<Path> files) {
+        Set<String> sources = new HashSet<>();
+        for (Path file : files) {
+            sources.add(normalizeEdgeSource(PathUtilities.getFileStem(file)));
+        }
+        return sources;
+    }
+
+    /**
+     * Test if a vertex collection, or an edge collection, named "SUBJ-OBJ", is built from one of the selected
+     * sources, which is the case when the vertex, or subject id normalizes to a selected source.
+     *
+     * @param collectionName Vertex or edge collection name
+     * @param sources        Normalized sources
+     * @return True if the collection is selected
+     */
+    public static boolean isSelectedCollection(String collectionName, Set<String> sources) {
+        int index = collectionName.indexOf("-");
+        String id = index < 0 ? collectionName : collectionName.substring(0, index);
+        return sources.contains(normalizeEdgeSource(id));
+    }
+
+    /**
+     * Retain only the vertex and edge documents of selected collections.
+     *
+     * @param sources         Normalized sources
+     * @param vertexDocuments ArangoDB vertex documents
+     * @param edgeDocuments   ArangoDB edge documents
+     */
+    public static void retainSelectedCollections(Set<String> sources,
+                                                 Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                 Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
+        vertexDocuments.keySet().removeIf(id -> !isSelectedCollection(id, sources));
+        edgeDocuments.keySet().removeIf(idPair -> !isSelectedCollection(idPair, sources));
+    }
+
+    /**
+     * Rebuild only the vertex and edge collections built from the selected sources, leaving every other collection
+     * untouched. Each selected collection is synchronized with its documents by content hash. Edges from selected
+     * collections to unselected vertex collections are written if the vertex to which they terminate is stored, and
+     * stored vertices of selected collections to which edges of unselected collections terminate are kept.
+     *
+     * @param arangoDbUtilities  Utilities for accessing ArangoDB
+     * @param graph              ArangoDB graph
+     * @param sources            Normalized sources
+     * @param vertexCollections  ArangoDB vertex collections
+     * @param vertexDocuments    ArangoDB vertex documents
+     * @param edgeCollections    ArangoDB edge collections
+     * @param edgeDocuments      ArangoDB edge documents
+     * @param insertedVertexKeys Keys of the vertices written, or kept in each vertex collection
+     * @return Report for each batch
+     */
+    public static List<BatchReport> rebuildSelectedCollections(ArangoDbUtilities arangoDbUtilities,
+                                                               ArangoGraph graph,
+                                                               Set<String> sources,
+                                                               Map<String, ArangoVertexCollection> vertexCollections,
+                                                               Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                                               Map<String, ArangoEdgeCollection> edgeCollections,
+                                                               Map<String, Map<String, BaseEdgeDocument>> edgeDocuments,
+                                                               Map<String, Set<String>> insertedVertexKeys) throws IOException {
+        System.out.println("Rebuilding collections built from " + sources);
+        long startTime = System.nanoTime();
+        retainSelectedCollections(sources, vertexDocuments, edgeDocuments);
+        createCollections(arangoDbUtilities, graph, vertexDocuments, edgeDocuments, vertexCollections,
+                edgeCollections);
+        addContentHashes(vertexDocuments);
+        addContentHashes(edgeDocuments);
+
+        // Record the stored vertices of unselected collections to which selected edges terminate
+        ArangoDatabase db = graph.db();
+        for (Map<String, BaseEdgeDocument> docs : edgeDocuments.values()) {
+            if (docs.isEmpty()) continue;
+            String toName = getDocumentCollectionName(docs.values().iterator().next().getTo());
+            if (!isSelectedCollection(toName, sources) && !insertedVertexKeys.containsKey(toName)) {
+                insertedVertexKeys.put(toName, arangoDbUtilities.getContentHashes(db.collection(toName)).keySet());
+            }
+        }
+
+        // Keep the stored vertices of selected collections to which unselected edges terminate
+        Map<String, Set<String>> keptVertexKeys = new HashMap<>();
+        for (String edgeName : graph.getEdgeDefinitions()) {
+            String toName = edgeName.substring(edgeName.indexOf("-") + 1);
+            if (!isSelectedCollection(edgeName, sources) && isSelectedCollection(toName, sources)) {
+                keptVertexKeys.computeIfAbsent(toName, k -> new HashSet<>()).addAll(arangoDbUtilities.getTargetKeys(
+                        db.collection(edgeName)));
+            }
+        }
+        long stopTime = System.nanoTime();
+        System.out.println("Selected " + vertexDocuments.size() + " vertex collections, and " + edgeDocuments.size() + " edge collections in " + (stopTime - startTime) / 1e9 + " s");
+        return insertInParallel(arangoDbUtilities,
+                vertexCollections,
+                vertexDocuments,
+                edgeCollections,
+                edgeDocuments,
+                arangoDbUtilities.batchSize,
+                arangoDbUtilities.maxCollections,
+                insertedVertexKeys,
+                true,
+                keptVertexKeys);
+    }
+
+    /**
+     * Apply the delta between the most recent archived version of an ontology file and its current version to a
+     * graph, rather than rebuilding the graph. The delta is only applied if the release version recorded in the
+     * database for the ontology is that of the archived version, so that a delta is never applied to a graph built
+     * from another release. The release version of the current version is recorded once every document is written.
+     *
+     * @param arangoDbUtilities   Utilities for accessing ArangoDB
+     * @param graph               ArangoDB graph
+     * @param currentFile         Path to the current ontology file
+     * @param ontologyElementMaps Maps terms and labels
+     * @return Report for each batch
+     * @throws IOException On read
+     */
+    public static List<BatchReport> applyDelta(ArangoDbUtilities arangoDbUtilities,
+                                               ArangoGraph graph,
+                                               Path currentFile,
+                                               Map<String, OntologyElementMap> ontologyElementMaps) throws IOException {
+        Path archivedFile = OntologyTripleDelta.findArchivedFile(currentFile);
+        if (archivedFile == null) {
+            System.out.println("No archived version of " + currentFile.getFileName() + " found, so no delta to apply");
+            return List.of();
+        }
+
+        // Refuse to apply the delta unless the graph was built from the archived release
+        String stem = PathUtilities.getFileStem(currentFile);
+        String archivedVersion = OntologyDownloader.findOboVersion(archivedFile);
+        String loadedVersion = arangoDbUtilities.getReleaseVersion(graph.db(), stem);
+        if (archivedVersion == null || !archivedVersion.equals(loadedVersion)) {
+            throw new RuntimeException("Cannot apply delta from " + archivedFile.getFileName() + " (release " + archivedVersion + ") to " + graph.db().name() + ", which was built from release " + loadedVersion + " of " + stem + ": rebuild with --ontologies " + stem + " instead");
+        }
+        System.out.println("Applying delta from " + archivedFile.getFileName() + " to " + currentFile.getFileName());
+        List<Triple> currentTriples = OntologyTripleParser.collectTriplesFromFile(currentFile, false);
+        OntologyTripleDelta.Delta delta = OntologyTripleDelta.computeDelta(OntologyTripleParser.collectTriplesFromFile(
+                archivedFile, false), currentTriples);
+        List<BatchReport> batchReports = delta.isEmpty() ? List.of() : applyDeltaPlan(arangoDbUtilities, graph,
+                planDelta(delta, currentTriples, ontologyElementMaps));
+
+        // Record the current release, unless some documents could not be written
+        if (batchReports.stream().anyMatch(BatchReport::hasErrors)) {
+            System.out.println("Not recording release of " + stem + " since some documents could not be written");
+        } else {
+            recordReleaseVersions(arangoDbUtilities, graph.db(), List.of(currentFile));
+        }
+        return batchReports;
+    }
+
+    /**
+     * Record the release version of each ontology file from which a database was built, by file stem.
+     *
+     * @param arangoDbUtilities Utilities for accessing ArangoDB
+     * @param db                ArangoDB database
+     * @param files             Paths to ontology files
+     */
+    public static void recordReleaseVersions(ArangoDbUtilities arangoDbUtilities, ArangoDatabase db,
+                                             List<Path> files) {
+        Map<String, String> versions = new HashMap<>();
+        for (Path file : files) {
+            String version = OntologyDownloader.findOboVersion(file);
+            if (version != null) {
+                versions.put(PathUtilities.getFileStem(file), version);
+            }
+        }
+        arangoDbUtilities.setReleaseVersions(db, versions);
+    }
+
+    /**
+     * Plan the changes to a graph which apply a delta, reconstructing documents from all current triples about each
+     * subject of an added, or removed triple, and each other object of an added triple.
+     * <ul>
+     * <li>Replaced: the vertex, and edges of each subject.</li>
+     * <li>Inserted, if not stored: the vertex of each object, unless deprecated, so that edges to new terms are
+     * written.</li>
+     * <li>Kept: vertices of subjects without current triples, which a full construction would still build, without
+     * attributes, while other triples reference them, and vertices of objects no longer referenced, which other
+     * ontologies may reference.</li>
+     * <li>Removed: vertices of deprecated subjects, with their edges, and edges of removed triples which are no
+     * longer constructed.</li>
+     * </ul>
+     *
+     * @param delta               Triples added, and removed
+     * @param currentTriples      Triples of the current version
+     * @param ontologyElementMaps Maps terms and labels
+     * @return Vertices, and edges to replace, vertices to insert, if not stored, keys of vertices without current
+     * triples, and keys of vertices, and edges to remove
+     */
+    public static DeltaPlan planDelta(OntologyTripleDelta.Delta delta,
+                                      Collection<Triple> currentTriples,
+                                      Map<String, OntologyElementMap> ontologyElementMaps) {
+        Set<Node> subjects = delta.getAffectedSubjects();
+        Map<String, Map<String, BaseDocument>> vertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> edgeDocuments = new HashMap<>();
+        constructGraph(OntologyTripleDelta.selectTriplesWithSubjects(currentTriples, subjects),
+                ontologyElementMaps,
+                vertexDocuments,
+                edgeDocuments);
+
+        // Replace the vertices of affected subjects, or remove those which are deprecated, and record those without
+        // current triples
+        Map<String, Map<String, BaseDocument>> verticesToReplace = new HashMap<>();
+        Map<String, Set<String>> verticesWithoutTriples = new HashMap<>();
+        Map<String, Set<String>> verticesToRemove = new HashMap<>();
+        for (Node subject : subjects) {
+            VTuple vtuple = createVTuple(subject);
+            if (!vtuple.isValidVertex) continue;
+            BaseDocument doc = vertexDocuments.getOrDefault(vtuple.id, Map.of()).get(vtuple.number);
+            if (doc == null) {
+                verticesWithoutTriples.computeIfAbsent(vtuple.id, k -> new HashSet<>()).add(vtuple.number);
+            } else if (isDeprecated(doc)) {
+                verticesToRemove.computeIfAbsent(vtuple.id, k -> new HashSet<>()).add(vtuple.number);
+            } else {
+                verticesToReplace.computeIfAbsent(vtuple.id, k -> new HashMap<>()).put(vtuple.number, doc);
+            }
+        }
+
+        // Insert the vertices of other objects of added triples, constructed from all current triples about them,
+        // unless deprecated
+        Set<Node> objects = new HashSet<>();
+        for (Triple triple : delta.added()) {
+            if (!triple.getObject().isLiteral() && !subjects.contains(triple.getObject())) {
+                objects.add(triple.getObject());
+            }
+        }
+        Map<String, Map<String, BaseDocument>> objectVertexDocuments = new HashMap<>();
+        constructGraph(OntologyTripleDelta.selectTriplesWithSubjects(currentTriples, objects),
+                ontologyElementMaps,
+                objectVertexDocuments,
+                new HashMap<>());
+        Map<String, Map<String, BaseDocument>> verticesToInsert = new HashMap<>();
+        for (Node object : objects) {
+            VTuple vtuple = createVTuple(object);
+            if (!vtuple.isValidVertex) continue;
+            BaseDocument doc = objectVertexDocuments.getOrDefault(vtuple.id, Map.of()).get(vtuple.number);
+            if (doc == null) {
+                doc = new BaseDocument(vtuple.number);
+            }
+            if (!isDeprecated(doc)) {
+                verticesToInsert.computeIfAbsent(vtuple.id, k -> new HashMap<>()).put(vtuple.number, doc);
+            }
+        }
+
+        // Replace the edges of affected subjects, except those of removed vertices
+        Map<String, Map<String, BaseEdgeDocument>> edgesToReplace = new HashMap<>();
+        Map<String, Set<String>> edgesToRemove = new HashMap<>();
+        for (String idPair : edgeDocuments.keySet()) {
+            for (BaseEdgeDocument doc : edgeDocuments.get(idPair).values()) {
+                if (verticesToRemove.getOrDefault(getDocumentCollectionName(doc.getFrom()), Set.of()).contains(
+                        getDocumentKey(doc.getFrom()))) {
+                    edgesToRemove.computeIfAbsent(idPair, k -> new HashSet<>()).add(doc.getKey());
                 } else {
-                    try {
-                        edgeCollection.updateEdge(docKey, doc);
-                    } catch (Exception e) {
-                        System.err.println("Error updating edge " + doc + ": " + e.getMessage());
-                    }
+                    edgesToReplace.computeIfAbsent(idPair, k -> new HashMap<>()).put(doc.getKey(), doc);
+                }
+            }
+        }
+
+        // Remove the edges of removed triples which are no longer constructed
+        for (Triple triple : delta.removed()) {
+            VTuple subjectVTuple = createVTuple(triple.getSubject());
+            VTuple objectVTuple = createVTuple(triple.getObject());
+            if (!subjectVTuple.isValidVertex || !objectVTuple.isValidVertex) continue;
+            String idPair = subjectVTuple.id + "-" + objectVTuple.id;
+            String key = subjectVTuple.number + "-" + objectVTuple.number;
+            if (!edgesToReplace.getOrDefault(idPair, Map.of()).containsKey(key)) {
+                edgesToRemove.computeIfAbsent(idPair, k -> new HashSet<>()).add(key);
+            }
+        }
+        return new DeltaPlan(verticesToReplace, verticesToInsert, edgesToReplace, verticesWithoutTriples,
+                verticesToRemove, edgesToRemove);
+    }
+
+    /**
+     * Apply planned changes to a graph. Vertices are replaced, and vertices which are not stored are inserted first,
+     * then edges to, and from vertices which are stored are replaced, and finally edges, and vertices are removed,
+     * with any edges which terminate at removed vertices. Vertices without current triples are then replaced by a
+     * vertex without attributes, as a full construction would build, if any stored edge, from any source, is still
+     * from, or to them, and are removed otherwise. Only documents which are stored are removed.
+     *
+     * @param arangoDbUtilities Utilities for accessing ArangoDB
+     * @param graph             ArangoDB graph
+     * @param plan              Vertices, and edges to replace, vertices to insert, if not stored, keys of vertices
+     *                          without current triples, and keys of vertices, and edges to remove
+     * @return Report for each batch
+     */
+    public static List<BatchReport> applyDeltaPlan(ArangoDbUtilities arangoDbUtilities, ArangoGraph graph,
+                                                   DeltaPlan plan) {
+        long startTime = System.nanoTime();
+        ArangoDatabase db = graph.db();
+        int batchSize = arangoDbUtilities.batchSize;
+        addContentHashes(plan.verticesToReplace());
+        addContentHashes(plan.verticesToInsert());
+        addContentHashes(plan.edgesToReplace());
+        Map<String, ArangoVertexCollection> vertexCollections = new HashMap<>();
+        createCollections(arangoDbUtilities,
+                graph,
+                plan.verticesToReplace(),
+                plan.edgesToReplace(),
+                vertexCollections,
+                new HashMap<>());
+        createCollections(arangoDbUtilities,
+                graph,
+                plan.verticesToInsert(),
+                Map.of(),
+                vertexCollections,
+                new HashMap<>());
+
+        // Replace the vertices, and insert the vertices which are not stored
+        List<BatchReport> batchReports = new ArrayList<>();
+        for (String id : plan.verticesToReplace().keySet()) {
+            batchReports.addAll(arangoDbUtilities.replaceDocuments(db.collection(id), new ArrayList<>(
+                    plan.verticesToReplace().get(id).values()), batchSize));
+        }
+        int nVerticesInserted = 0;
+        for (String id : plan.verticesToInsert().keySet()) {
+            Set<String> storedKeys = arangoDbUtilities.getExistingKeys(db.collection(id),
+                    plan.verticesToInsert().get(id).keySet());
+            List<BaseDocument> docs = plan.verticesToInsert().get(id).values().stream().filter(
+                    doc -> !storedKeys.contains(doc.getKey())).toList();
+            batchReports.addAll(arangoDbUtilities.insertDocuments(db.collection(id), docs, batchSize));
+            nVerticesInserted += docs.size();
+        }
+
+        // Find the stored vertices to, and from which edges are replaced
+        Map<String, Set<String>> endpointKeys = new HashMap<>();
+        for (Map<String, BaseEdgeDocument> docs : plan.edgesToReplace().values()) {
+            for (BaseEdgeDocument doc : docs.values()) {
+                for (String documentId : List.of(doc.getFrom(), doc.getTo())) {
+                    endpointKeys.computeIfAbsent(getDocumentCollectionName(documentId), k -> new HashSet<>()).add(
+                            getDocumentKey(documentId));
+                }
+            }
+        }
+        Map<String, Set<String>> storedVertexKeys = new HashMap<>();
+        for (String id : endpointKeys.keySet()) {
+            Set<String> storedKeys = arangoDbUtilities.getExistingKeys(db.collection(id), endpointKeys.get(id));
+            storedKeys.removeAll(plan.verticesToRemove().getOrDefault(id, Set.of()));
+            storedVertexKeys.put(id, storedKeys);
+        }
+
+        // Replace the edges to, and from stored vertices
+        int nEdgesReplaced = 0;
+        for (String idPair : plan.edgesToReplace().keySet()) {
+            List<BaseEdgeDocument> docs = collectEdgesToInsert(plan.edgesToReplace().get(idPair).values(),
+                    storedVertexKeys);
+            batchReports.addAll(arangoDbUtilities.replaceDocuments(db.collection(idPair), docs, batchSize));
+            nEdgesReplaced += docs.size();
+        }
+
+        // Remove the stored edges, then the stored vertices, and any edges which terminate at them
+        int nEdgesRemoved = 0;
+        for (String idPair : plan.edgesToRemove().keySet()) {
+            if (!graph.getEdgeDefinitions().contains(idPair)) continue;
+            List<String> keys = new ArrayList<>(arangoDbUtilities.getExistingKeys(db.collection(idPair),
+                    plan.edgesToRemove().get(idPair)));
+            batchReports.addAll(arangoDbUtilities.removeDocuments(db.collection(idPair), keys, batchSize));
+            nEdgesRemoved += keys.size();
+        }
+        int nVerticesRemoved = 0;
+        for (String id : plan.verticesToRemove().keySet()) {
+            if (!graph.getVertexCollections().contains(id)) continue;
+            List<String> keys = new ArrayList<>(arangoDbUtilities.getExistingKeys(db.collection(id),
+                    plan.verticesToRemove().get(id)));
+            batchReports.addAll(arangoDbUtilities.removeDocuments(db.collection(id), keys, batchSize));
+            nVerticesRemoved += keys.size();
+            List<String> vertexIds = keys.stream().map(key -> id + "/" + key).toList();
+            for (String edgeName : graph.getEdgeDefinitions()) {
+                if (!vertexIds.isEmpty() && edgeName.endsWith("-" + id)) {
+                    nEdgesRemoved += arangoDbUtilities.removeEdgesTo(db.collection(edgeName), vertexIds);
+                }
+            }
+        }
+
+        // Replace the stored vertices without current triples which still have edges by vertices without
+        // attributes, and remove the others
+        int nVerticesCleared = 0;
+        for (String id : plan.verticesWithoutTriples().keySet()) {
+            if (!graph.getVertexCollections().contains(id)) continue;
+            Set<String> keys = arangoDbUtilities.getExistingKeys(db.collection(id),
+                    plan.verticesWithoutTriples().get(id));
+            Set<String> vertexIds = new HashSet<>();
+            keys.forEach(key -> vertexIds.add(id + "/" + key));
+            Set<String> connectedIds = new HashSet<>();
+            for (String edgeName : graph.getEdgeDefinitions()) {
+                if (!vertexIds.isEmpty() && (edgeName.startsWith(id + "-") || edgeName.endsWith("-" + id))) {
+                    connectedIds.addAll(arangoDbUtilities.getConnectedVertexIds(db.collection(edgeName), vertexIds));
+                }
+            }
+            Map<String, BaseDocument> docs = new HashMap<>();
+            List<String> keysToRemove = new ArrayList<>();
+            for (String key : keys) {
+                if (connectedIds.contains(id + "/" + key)) {
+                    docs.put(key, new BaseDocument(key));
+                } else {
+                    keysToRemove.add(key);
                 }
             }
+            addContentHashes(Map.of(id, docs));
+            batchReports.addAll(arangoDbUtilities.replaceDocuments(db.collection(id), new ArrayList<>(docs.values()),
+                    batchSize));
+            batchReports.addAll(arangoDbUtilities.removeDocuments(db.collection(id), keysToRemove, batchSize));
+            nVerticesCleared += docs.size();
+            nVerticesRemoved += keysToRemove.size();
         }
         long stopTime = System.nanoTime();
-        System.out.println("Inserted " + nEdges + " edges in " + (stopTime - startTime) / 1e9 + " s");
+        System.out.println("Applied delta: replaced " + (plan.verticesToReplace().values().stream().mapToInt(Map::size).sum() + nVerticesCleared) + " vertices and " + nEdgesReplaced + " edges, inserted " + nVerticesInserted + " vertices, and removed " + nVerticesRemoved + " vertices and " + nEdgesRemoved + " edges in " + (stopTime - startTime) / 1e9 + " s");
+        return batchReports;
     }
 
     /**
      * Load triples parsed from ontology files in the data/obo directory into a local ArangoDB server instance.
      *
-     * @param args (None expected)
+     * @param args Optionally, "--incremental" to synchronize the existing databases with the documents constructed,
+     *             rather than delete, and rebuild them, and "--ontologies" followed by comma separated ontology file
+     *             stems, such as "mondo-simple,hsapdv", to parse only those files, and rebuild only the collections
+     *             built from them, and "--delta" to apply only the triples added to, and removed from each, or each
+     *             selected ontology file since its most recent archived version, or "--blue-green" to rebuild
+     *             each database in a staging copy, then swap it into service under its public name once validated,
+     *             and "--resume" to resume an interrupted rebuild from the last batch committed
      */
     public static void main(String[] args) throws IOException {
 
+        // Parse options
+        boolean incremental = Arrays.asList(args).contains("--incremental");
+        List<String> selectedStems = getOptionValues(args, "--ontologies");
+        boolean selective = !selectedStems.isEmpty();
+        boolean delta = Arrays.asList(args).contains("--delta");
+        boolean partial = selective || delta;
+        boolean blueGreen = Arrays.asList(args).contains("--blue-green");
+        if (blueGreen && (incremental || partial)) {
+            throw new IllegalArgumentException("Option --blue-green rebuilds each database in full, so cannot be used with --incremental, --ontologies, or --delta");
+        }
+        boolean resume = Arrays.asList(args).contains("--resume");
+        if (resume && (incremental || partial)) {
+            throw new IllegalArgumentException("Option --resume resumes a full rebuild, so cannot be used with --incremental, --ontologies, or --delta, which only write changed documents when run again");
+        }
+
         // List all ontology files
         String oboPath = oboDir.toString();
         String oboPattern = ".*\\.owl";
@@ -503,63 +1723,112 @@ public class OntologyGraphBuilder {
             throw new RuntimeException(e);
         }
 
-        // Parse ontology elements, and collect unique triples
-        Map<String, OntologyElementMap> ontologyElementMaps = parseOntologyElements(oboFiles);
-        HashSet<Triple> ontologyTriples = collectUniqueTriples(oboFiles, false);
+        // Map ontology elements, loaded when first requested, and collect unique triples from all, or the selected
+        // ontology files, unless applying deltas
+        Map<String, OntologyElementMap> ontologyElementMaps = loadOntologyElements(oboFiles);
+        List<Path> parsedFiles = selective ? selectOntologyFiles(oboFiles, selectedStems) : oboFiles;
+        CompactTripleStore ontologyTriples = delta ? new CompactTripleStore() : collectCompactTriples(parsedFiles,
+                false);
 
-        // Initialize the ontology database and graph
-        String ontologyDatabaseName = "Cell-KN-Ontologies";
+        // Initialize the ontology database, in service, or staged, and graph
+        String ontologyPublicName = "Cell-KN-Ontologies";
         String ontologyGraphName = "KN-Ontologies-v2.0";
         ArangoDbUtilities arangoDbUtilities = new ArangoDbUtilities();
-        arangoDbUtilities.deleteDatabase(ontologyDatabaseName);
+        String ontologyDatabaseName = blueGreen ? arangoDbUtilities.getStagingDatabaseName(ontologyPublicName) :
+                arangoDbUtilities.resolveDatabase(ontologyPublicName);
+
+        // Refuse to load while a database named exactly a public name is stale, before loading either database
+        arangoDbUtilities.checkNotStale(ontologyPublicName);
+        arangoDbUtilities.checkNotStale("Cell-KN-Phenotypes");
+
+        // Journal the batches committed by a full rebuild, resuming a journal for the same inputs, if requested
+        boolean rebuild = !incremental && !partial;
+        String inputFingerprint = rebuild ? LoadCheckpoint.computeFingerprint(oboFiles,
+                String.valueOf(arangoDbUtilities.batchSize)) : null;
+        LoadCheckpoint ontologyCheckpoint = rebuild ? new LoadCheckpoint(checkpointDir.resolve(
+                ontologyPublicName + ".journal"), inputFingerprint + "\t" + ontologyDatabaseName, resume) : null;
+        boolean resumeOntology = ontologyCheckpoint != null && ontologyCheckpoint.isResumed();
+        if (rebuild && !resumeOntology) {
+            arangoDbUtilities.deleteDatabase(ontologyDatabaseName);
+        }
         ArangoDatabase ontologyDb = arangoDbUtilities.createOrGetDatabase(ontologyDatabaseName);
-        arangoDbUtilities.deleteGraph(ontologyDb, ontologyGraphName);
+        if (rebuild && !resumeOntology) {
+            arangoDbUtilities.deleteGraph(ontologyDb, ontologyGraphName);
+        }
         ArangoGraph ontologyGraph = arangoDbUtilities.createOrGetGraph(ontologyDb, ontologyGraphName);
 
-        // Create, update, and insert the vertices
+        // Create, and update the vertices, and create the edges, capturing unique labels
         Map<String, ArangoVertexCollection> ontologyVertexCollections = new HashMap<>();
         Map<String, Map<String, BaseDocument>> ontologyVertexDocuments = new HashMap<>();
-        constructVertices(ontologyTriples,
-                arangoDbUtilities,
-                ontologyGraph,
-                ontologyVertexCollections,
-                ontologyVertexDocuments);
-        try {
-            updateVertices(ontologyTriples, ontologyElementMaps, ontologyVertexDocuments);
-        } catch (RuntimeException e) {
-            throw new RuntimeException(e);
-        }
-        try {
-            insertVertices(ontologyVertexCollections, ontologyVertexDocuments);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        // Create, and insert the edges, capturing unique labels
+        Map<String, Set<String>> ontologyVertexKeys = new HashMap<>();
         Map<String, ArangoEdgeCollection> ontologyEdgeCollections = new HashMap<>();
         Map<String, Map<String, BaseEdgeDocument>> ontologyEdgeDocuments = new HashMap<>();
-        HashSet<String> edgeLabels = new HashSet<>();
-        try {
-            edgeLabels.addAll(constructEdges(ontologyTriples,
-                    ontologyElementMaps,
-                    arangoDbUtilities,
+        HashSet<String> edgeLabels = new HashSet<>(constructGraph(ontologyTriples,
+                ontologyElementMaps,
+                ontologyVertexDocuments,
+                ontologyEdgeDocuments,
+                Runtime.getRuntime().availableProcessors()));
+        if (delta) {
+
+            // Apply the delta between the archived, and current version of each ontology file
+            for (Path file : parsedFiles) {
+                printBatchErrors(applyDelta(arangoDbUtilities, ontologyGraph, file, ontologyElementMaps));
+            }
+        } else if (selective) {
+
+            // Rebuild only the collections built from the selected ontology files
+            printBatchErrors(rebuildSelectedCollections(arangoDbUtilities,
                     ontologyGraph,
+                    getSelectedSources(parsedFiles),
+                    ontologyVertexCollections,
+                    ontologyVertexDocuments,
                     ontologyEdgeCollections,
-                    ontologyEdgeDocuments));
-        } catch (RuntimeException e) {
-            throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new IOException(e);
+                    ontologyEdgeDocuments,
+                    ontologyVertexKeys));
+        } else {
+            createCollections(arangoDbUtilities,
+                    ontologyGraph,
+                    ontologyVertexDocuments,
+                    ontologyEdgeDocuments,
+                    ontologyVertexCollections,
+                    ontologyEdgeCollections);
+
+            // Insert, or synchronize the vertices and edges
+            addContentHashes(ontologyVertexDocuments);
+            addContentHashes(ontologyEdgeDocuments);
+            printBatchErrors(insertInParallel(arangoDbUtilities,
+                    ontologyVertexCollections,
+                    ontologyVertexDocuments,
+                    ontologyEdgeCollections,
+                    ontologyEdgeDocuments,
+                    arangoDbUtilities.batchSize,
+                    arangoDbUtilities.maxCollections,
+                    ontologyVertexKeys,
+                    incremental,
+                    Map.of(),
+                    ontologyCheckpoint));
         }
-        insertEdges(ontologyVertexCollections, ontologyEdgeCollections, ontologyEdgeDocuments);
+        if (!delta) {
 
-        // Document unique labels, and their normalized values
-        Charset charset = StandardCharsets.US_ASCII;
-        BufferedWriter edgeLabelsWriter = Files.newBufferedWriter(edgeLabelsFile, charset);
-        for (String label : edgeLabels) {
-            edgeLabelsWriter.write(label + ": " + normalizeEdgeLabel(label) + "\n");
+            // Record the release of each ontology file parsed, so deltas are only applied to the same release
+            recordReleaseVersions(arangoDbUtilities, ontologyDb, parsedFiles);
+        }
+
+        // Document unique labels, and their normalized values, unless only some labels were captured
+        if (!partial) {
+            Charset charset = StandardCharsets.US_ASCII;
+            BufferedWriter edgeLabelsWriter = Files.newBufferedWriter(edgeLabelsFile, charset);
+            for (String label : edgeLabels) {
+                edgeLabelsWriter.write(label + ": " + normalizeEdgeLabel(label) + "\n");
+            }
+            edgeLabelsWriter.close();
+        }
+
+        // Leave the phenotype database untouched, unless the Cell Ontology is selected
+        if (selective && !selectedStems.contains("cl")) {
+            arangoDbUtilities.arangoDB.shutdown();
+            return;
         }
-        edgeLabelsWriter.close();
 
         // List the Cell Ontology file
         oboPattern = "cl.owl";
@@ -572,61 +1841,170 @@ public class OntologyGraphBuilder {
             throw new RuntimeException(e);
         }
 
-        // Parse Cell Ontology elements, and collect unique triples
-        Map<String, OntologyElementMap> phenotypeElementMaps = parseOntologyElements(oboFiles);
+        // Map Cell Ontology elements, loaded when first requested, and collect unique triples
+        Map<String, OntologyElementMap> phenotypeElementMaps = loadOntologyElements(oboFiles);
         phenotypeElementMaps.put("ro", ontologyElementMaps.get("ro"));
-        HashSet<Triple> phenotypeTriples = collectUniqueTriples(oboFiles, true);
+        CompactTripleStore phenotypeTriples = collectCompactTriples(oboFiles, true);
 
-        // Initialize the phenotype database and subgraph
-        String phenotypeDatabaseName = "Cell-KN-Phenotypes";
+        // Initialize the phenotype database, in service, or staged, and subgraph
+        String phenotypePublicName = "Cell-KN-Phenotypes";
         String phenotypeGraphName = "KN-Phenotypes-v2.0";
-        arangoDbUtilities.deleteDatabase(phenotypeDatabaseName);
+        String phenotypeDatabaseName = blueGreen ? arangoDbUtilities.getStagingDatabaseName(phenotypePublicName) :
+                arangoDbUtilities.resolveDatabase(phenotypePublicName);
+        LoadCheckpoint phenotypeCheckpoint = rebuild ? new LoadCheckpoint(checkpointDir.resolve(
+                phenotypePublicName + ".journal"), inputFingerprint + "\t" + phenotypeDatabaseName, resume) : null;
+        boolean resumePhenotype = phenotypeCheckpoint != null && phenotypeCheckpoint.isResumed();
+        if (rebuild && !resumePhenotype) {
+            arangoDbUtilities.deleteDatabase(phenotypeDatabaseName);
+        }
         ArangoDatabase phenotypeDb = arangoDbUtilities.createOrGetDatabase(phenotypeDatabaseName);
-        arangoDbUtilities.deleteGraph(phenotypeDb, phenotypeGraphName);
+        if (rebuild && !resumePhenotype) {
+            arangoDbUtilities.deleteGraph(phenotypeDb, phenotypeGraphName);
+        }
         ArangoGraph phenotypeGraph = arangoDbUtilities.createOrGetGraph(phenotypeDb, phenotypeGraphName);
 
-        // Create, update, and insert the vertices
+        // Create, and update the vertices, and create the edges, capturing unique labels
         Map<String, ArangoVertexCollection> phenotypeVertexCollections = new HashMap<>();
         Map<String, Map<String, BaseDocument>> phenotypeVertexDocuments = new HashMap<>();
-        constructVertices(phenotypeTriples,
-                arangoDbUtilities,
+        Map<String, Set<String>> phenotypeVertexKeys = new HashMap<>();
+        Map<String, ArangoEdgeCollection> phenotypeEdgeCollections = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> phenotypeEdgeDocuments = new HashMap<>();
+        edgeLabels.addAll(constructGraph(phenotypeTriples,
+                phenotypeElementMaps,
+                phenotypeVertexDocuments,
+                phenotypeEdgeDocuments,
+                Runtime.getRuntime().availableProcessors()));
+        createCollections(arangoDbUtilities,
                 phenotypeGraph,
+                phenotypeVertexDocuments,
+                phenotypeEdgeDocuments,
                 phenotypeVertexCollections,
-                phenotypeVertexDocuments);
-        try {
-            updateVertices(phenotypeTriples, phenotypeElementMaps, phenotypeVertexDocuments);
-        } catch (RuntimeException e) {
-            throw new RuntimeException(e);
-        }
-        try {
-            insertVertices(phenotypeVertexCollections, phenotypeVertexDocuments);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+                phenotypeEdgeCollections);
+
+        // Insert, or synchronize the vertices and edges, since the phenotype database is built from the Cell Ontology
+        // alone
+        addContentHashes(phenotypeVertexDocuments);
+        addContentHashes(phenotypeEdgeDocuments);
+        printBatchErrors(insertInParallel(arangoDbUtilities,
+                phenotypeVertexCollections,
+                phenotypeVertexDocuments,
+                phenotypeEdgeCollections,
+                phenotypeEdgeDocuments,
+                arangoDbUtilities.batchSize,
+                arangoDbUtilities.maxCollections,
+                phenotypeVertexKeys,
+                incremental || partial,
+                Map.of(),
+                phenotypeCheckpoint));
+
+        // Swap the staged databases into service together, after both are loaded, and validated
+        if (blueGreen) {
+            arangoDbUtilities.promoteDatabases(Map.of(ontologyPublicName, ontologyDatabaseName, phenotypePublicName,
+                    phenotypeDatabaseName));
         }
 
-        // Create, and insert the edges, capturing unique labels
-        Map<String, ArangoEdgeCollection> phenotypeEdgeCollections = new HashMap<>();
-        Map<String, Map<String, BaseEdgeDocument>> phenotypeEdgeDocuments = new HashMap<>();
-        try {
-            edgeLabels.addAll(constructEdges(phenotypeTriples,
-                    phenotypeElementMaps,
-                    arangoDbUtilities,
-                    phenotypeGraph,
-                    phenotypeEdgeCollections,
-                    phenotypeEdgeDocuments));
-        } catch (RuntimeException e) {
-            throw new RuntimeException(e);
-        } catch (IOException e) {
-            throw new IOException(e);
+        // Remove the journals, since the rebuild is complete
+        if (rebuild) {
+            ontologyCheckpoint.complete();
+            phenotypeCheckpoint.complete();
         }
-        insertEdges(phenotypeVertexCollections, phenotypeEdgeCollections, phenotypeEdgeDocuments);
 
         // Disconnect from a local ArangoDB server instance
         arangoDbUtilities.arangoDB.shutdown();
     }
 
+    // Define a record describing the indices of the triples touching each vertex, and edge shard, classified from a
+    // chunk of triples
+    private record GraphChunk(Map<String, TripleIndices> vertexIndices, Map<String, TripleIndices> edgeIndices) {
+
+    }
+
+    /**
+     * Growable array of the indices of triples in a compact triple store, in triple order.
+     */
+    private static class TripleIndices {
+
+        // Indices, and the number of indices used
+        private int[] indices = new int[16];
+        private int size;
+
+        /**
+         * Append an index.
+         *
+         * @param index Index of a triple
+         */
+        void add(int index) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, 2 * indices.length);
+            }
+            indices[size++] = index;
+        }
+    }
+
+    /**
+     * Caches the VTuple of each node of a compact triple store, by node id, so that each node is parsed once during a
+     * construction pass. Threads may race to parse the same node, which only parses it twice, since VTuples are
+     * immutable.
+     */
+    private static class VTupleCache {
+
+        // Store, and VTuple of each node id, null until parsed
+        private final CompactTripleStore triples;
+        private final VTuple[] vTuples;
+
+        /**
+         * Construct an empty cache for the nodes of a store.
+         *
+         * @param triples Triples whose nodes to cache
+         */
+        VTupleCache(CompactTripleStore triples) {
+            this.triples = triples;
+            this.vTuples = new VTuple[triples.nodeCount()];
+        }
+
+        /**
+         * Get the VTuple of the subject of a triple.
+         *
+         * @param index Index of the triple
+         * @return VTuple of the subject
+         */
+        VTuple getSubject(int index) {
+            return get(triples.getSubjectId(index));
+        }
+
+        /**
+         * Get the VTuple of the object of a triple.
+         *
+         * @param index Index of the triple
+         * @return VTuple of the object
+         */
+        VTuple getObject(int index) {
+            return get(triples.getObjectId(index));
+        }
+
+        private VTuple get(int nodeId) {
+            VTuple vtuple = vTuples[nodeId];
+            if (vtuple == null) {
+                vtuple = createVTuple(triples.getNode(nodeId));
+                vTuples[nodeId] = vtuple;
+            }
+            return vtuple;
+        }
+    }
+
+    // Define a record describing the vertices, and edges to replace, the vertices to insert, if not stored, the keys of
+    // the vertices without current triples, and the keys of the vertices, and edges to remove, each by collection name,
+    // which apply a delta
+    public record DeltaPlan(Map<String, Map<String, BaseDocument>> verticesToReplace,
+                            Map<String, Map<String, BaseDocument>> verticesToInsert,
+                            Map<String, Map<String, BaseEdgeDocument>> edgesToReplace,
+                            Map<String, Set<String>> verticesWithoutTriples,
+                            Map<String, Set<String>> verticesToRemove, Map<String, Set<String>> edgesToRemove) {
+
+    }
+
     // Define a record describing a vertex
-    public record VTuple(String term, String id, String number, Boolean isValidVertex) {
+    public record VTuple(String term, String id, String number, boolean isValidVertex) {
 
     }
 }
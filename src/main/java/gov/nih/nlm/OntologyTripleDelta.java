@@ -0,0 +1,165 @@
+package gov.nih.nlm;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static gov.nih.nlm.OntologyTripleParser.collectTriplesFromFile;
+
+/**
+ * Computes the flattened triples added to, and removed from an ontology
+ * between the version archived by OntologyDownloader, and the current version.
+ */
+public class OntologyTripleDelta {
+
+    // Assign pattern for extracting YYYY-MM-DD dates from archived file names
+    private static final String DATE_REGEX = "(\\d{4}-\\d{2}-\\d{2})";
+
+    /**
+     * Find the most recent archived version of an ontology file, named
+     * "stem-YYYY-MM-DD.suffix", or "stem-YYYY-MM-DD.suffix.gz" if compressed,
+     * in the ".archive" directory beside the file.
+     *
+     * @param currentFile Path to the current ontology file
+     * @return Path to the most recent archived file, or null if none
+     * @throws IOException On read
+     */
+    public static Path findArchivedFile(Path currentFile) throws IOException {
+        Path archiveDir = currentFile.toAbsolutePath().getParent().resolve(".archive");
+        if (!Files.isDirectory(archiveDir)) {
+            return null;
+        }
+        String fileName = PathUtilities.getUncompressedFileName(currentFile);
+        int index = fileName.lastIndexOf('.');
+        String stem = index < 0 ? fileName : fileName.substring(0, index);
+        String suffix = index < 0 ? "" : fileName.substring(index);
+        Pattern pattern = Pattern.compile(Pattern.quote(stem) + "-" + DATE_REGEX + Pattern.quote(
+                suffix) + "(?:" + Pattern.quote(PathUtilities.GZIP_SUFFIX) + ")?");
+        Path archivedFile = null;
+        String archivedVersion = null;
+        try (Stream<Path> paths = Files.list(archiveDir)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                Matcher matcher = pattern.matcher(path.getFileName().toString());
+                if (matcher.matches() && (archivedVersion == null || matcher.group(1).compareTo(archivedVersion) > 0)) {
+                    archivedFile = path;
+                    archivedVersion = matcher.group(1);
+                }
+            }
+        }
+        return archivedFile;
+    }
+
+    /**
+     * Compute the delta between the flattened triples of an archived, and a
+     * current version of an ontology file, collected, or loaded from the cache,
+     * as OntologyTripleParser does.
+     *
+     * @param archivedFile Path to the archived ontology file
+     * @param currentFile  Path to the current ontology file
+     * @return Triples added, and removed
+     */
+    public static Delta computeDelta(Path archivedFile, Path currentFile) {
+        return computeDelta(collectTriplesFromFile(archivedFile, false), collectTriplesFromFile(currentFile, false));
+    }
+
+    /**
+     * Compute the delta between archived, and current triples by hashing each
+     * into a compact triple store, then probing each store with the triples of
+     * the other. Triples with a blank node are ignored, since blank node labels
+     * differ between parses, and such triples are not loaded.
+     *
+     * @param archivedTriples Triples of the archived version
+     * @param currentTriples  Triples of the current version
+     * @return Triples added, and removed
+     */
+    public static Delta computeDelta(Collection<Triple> archivedTriples, Collection<Triple> currentTriples) {
+        System.out.println("Computing delta between " + archivedTriples.size() + " archived and " + currentTriples.size() + " current triples");
+        long startTime = System.nanoTime();
+        CompactTripleStore archived = collectNamedTriples(archivedTriples);
+        CompactTripleStore current = collectNamedTriples(currentTriples);
+        CompactTripleStore added = new CompactTripleStore();
+        for (Triple triple : current) {
+            if (!archived.contains(triple)) {
+                added.add(triple);
+            }
+        }
+        CompactTripleStore removed = new CompactTripleStore();
+        for (Triple triple : archived) {
+            if (!current.contains(triple)) {
+                removed.add(triple);
+            }
+        }
+        long stopTime = System.nanoTime();
+        System.out.println("Found " + added.size() + " added and " + removed.size() + " removed triples in " + (stopTime - startTime) / 1e9 + " s");
+        return new Delta(added, removed);
+    }
+
+    /**
+     * Select the triples with one of the specified subjects.
+     *
+     * @param triples  Triples from which to select
+     * @param subjects Subjects to select
+     * @return Selected triples, in order
+     */
+    public static List<Triple> selectTriplesWithSubjects(Collection<Triple> triples, Set<Node> subjects) {
+        List<Triple> selectedTriples = new ArrayList<>();
+        for (Triple triple : triples) {
+            if (subjects.contains(triple.getSubject())) {
+                selectedTriples.add(triple);
+            }
+        }
+        return selectedTriples;
+    }
+
+    /**
+     * Collect unique triples without a blank node.
+     *
+     * @param triples Triples to collect
+     * @return Unique triples without a blank node
+     */
+    private static CompactTripleStore collectNamedTriples(Collection<Triple> triples) {
+        CompactTripleStore namedTriples = new CompactTripleStore();
+        for (Triple triple : triples) {
+            if (!triple.getSubject().isBlank() && !triple.getObject().isBlank()) {
+                namedTriples.add(triple);
+            }
+        }
+        return namedTriples;
+    }
+
+    // Define a record describing the triples added to, and removed from an ontology
+    public record Delta(CompactTripleStore added, CompactTripleStore removed) {
+
+        /**
+         * Test if no triples were added or removed.
+         *
+         * @return True if no triples were added or removed
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        /**
+         * Get the subject of each triple added, or removed.
+         *
+         * @return Subjects affected by the delta
+         */
+        public Set<Node> getAffectedSubjects() {
+            Set<Node> subjects = new HashSet<>();
+            added.forEach(triple -> subjects.add(triple.getSubject()));
+            removed.forEach(triple -> subjects.add(triple.getSubject()));
+            return subjects;
+        }
+    }
+}
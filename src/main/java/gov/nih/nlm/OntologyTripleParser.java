@@ -1,5 +1,7 @@
 package gov.nih.nlm;
 
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.ontapi.OntModelFactory;
 import org.apache.jena.ontapi.model.OntClass;
@@ -9,20 +11,39 @@ import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.RDF;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static gov.nih.nlm.OntologyElementParser.parseOntologyElements;
+import static gov.nih.nlm.OntologyElementParser.loadOntologyElements;
+import static gov.nih.nlm.PathUtilities.getCacheFile;
 import static gov.nih.nlm.PathUtilities.listFilesMatchingPattern;
+import static gov.nih.nlm.PathUtilities.writeCacheFile;
 
 /**
  * Parses each ontology file in the data/obo directory to collect unique triples.
@@ -48,25 +69,145 @@ public class OntologyTripleParser {
         } return subjectIsValid;
     }
 
+    // Assign version of the triple cache, incremented whenever the cache format, or the triples collected, change
+    static final int TRIPLE_CACHE_VERSION = 1;
+
+    // Assign estimated heap bytes required to retain the triples streamed from each byte of an ontology file
+    private static final double HEAP_PER_BYTE = 2.0;
+
+    // Assign predicates used to identify classes, the root term, and restrictions
+    private static final Node rdfType = NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+    private static final Node owlClass = NodeFactory.createURI("http://www.w3.org/2002/07/owl#Class");
+    private static final Node owlOntology = NodeFactory.createURI("http://www.w3.org/2002/07/owl#Ontology");
+    private static final Node rootTermProperty = NodeFactory.createURI("http://purl.obolibrary.org/obo/IAO_0000700");
+    private static final Node subClassOf = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#subClassOf");
+    private static final Node onProperty = NodeFactory.createURI("http://www.w3.org/2002/07/owl#onProperty");
+    private static final Node someValuesFrom = NodeFactory.createURI("http://www.w3.org/2002/07/owl#someValuesFrom");
+
     /**
-     * Read an OWL file and identify the root namespace. Collect triples from statements which contain a named object
-     * and a predicate in one of the specified namespaces. Handle statements which contain an anonymous object and an
-     * rdfs:subClassOf predicate by flattening all statements about the anonymous object into a single statement with a
-     * named subject and object, then collecting the triple from the single statement. Optionally skip statements with a
-     * named object not in the root namespace
+     * Collect triples from an OWL file as streamTriplesFromFile does, loading them from a cache in the ".cache"
+     * directory beside the file, if the cache contains triples collected from a file with the same content and flag,
+     * in the current version of the cache. Otherwise, stream the file, then cache the triples in RDF Thrift format,
+     * replacing any cache for a previous version of the file, or of the cache.
      *
      * @param owlFile            Path to OWL file
      * @param testObjectInRootNS Flag to check that named objects are in the root namespace
      * @return List of triples with named subject and object nodes
      */
     public static List<Triple> collectTriplesFromFile(Path owlFile, boolean testObjectInRootNS) {
+        String cacheSuffix = "-" + testObjectInRootNS + ".trdf";
+        Path cacheFile;
+        try {
+            cacheFile = getCacheFile(owlFile, cacheSuffix, TRIPLE_CACHE_VERSION);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Load triples from the cache, if possible
+        if (Files.isRegularFile(cacheFile)) {
+            System.out.println("Loading triples for " + owlFile.getFileName() + " from " + cacheFile.getFileName());
+            long startTime = System.nanoTime();
+            List<Triple> triples = new ArrayList<>();
+            try {
+                RDFParser.source(cacheFile).lang(Lang.RDFTHRIFT).parse(new StreamRDFBase() {
+                    @Override
+                    public void triple(Triple triple) {
+                        triples.add(triple);
+                    }
+                });
+                long stopTime = System.nanoTime();
+                System.out.println("Loaded " + triples.size() + " triples for " + owlFile.getFileName() + " in " + (stopTime - startTime) / 1e9 + " s");
+                return triples;
+            } catch (RiotException e) {
+                System.err.println("Could not load triples from " + cacheFile + ": " + e.getMessage());
+            }
+        }
+
+        // Stream the file, then replace any previous cache
+        List<Triple> triples = streamTriplesFromFile(owlFile, testObjectInRootNS);
+        try {
+            writeCacheFile(cacheFile, cacheSuffix, file -> {
+                try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    StreamRDF writer = StreamRDFWriter.getWriterStream(outputStream, RDFFormat.RDF_THRIFT);
+                    writer.start();
+                    triples.forEach(writer::triple);
+                    writer.finish();
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not cache triples in " + cacheFile + ": " + e.getMessage());
+        }
+        return triples;
+    }
+
+    /**
+     * Get the base URI against which relative IRIs in an OWL file are resolved, which is the URI of the file, without
+     * its compression suffix, if any.
+     *
+     * @param owlFile Path to OWL file
+     * @return Base URI
+     */
+    private static String getBaseURI(Path owlFile) {
+        return owlFile.toAbsolutePath().resolveSibling(PathUtilities.getUncompressedFileName(owlFile)).toUri().toString();
+    }
+
+    /**
+     * Stream an OWL file and identify the root namespace. Collect triples from statements about classes which contain a
+     * named object and a predicate in one of the specified namespaces. Handle statements which contain an anonymous
+     * object and an rdfs:subClassOf predicate by flattening all statements about the anonymous object into a single
+     * statement with a named subject and object, then collecting the triple from the single statement. Optionally skip
+     * statements with a named object not in the root namespace. Produces the same triples as reading the file into an
+     * ontology model, while retaining only candidate triples in the root namespace, once known from the header, and
+     * the restriction triples needed for flattening.
+     *
+     * @param owlFile            Path to OWL file
+     * @param testObjectInRootNS Flag to check that named objects are in the root namespace
+     * @return List of triples with named subject and object nodes
+     */
+    public static List<Triple> streamTriplesFromFile(Path owlFile, boolean testObjectInRootNS) {
+        System.out.println("Collecting triples from within " + owlFile.getFileName());
+        long startTime = System.nanoTime();
+
+        // Stream the OWL file
+        TripleCollector tripleCollector = new TripleCollector(testObjectInRootNS);
+        try (InputStream in = PathUtilities.newInputStream(owlFile)) {
+            RDFParser.source(in).base(getBaseURI(owlFile)).lang(Lang.RDFXML).parse(tripleCollector);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Consider each retained statement about each class in the root name space
+        String rootNS = tripleCollector.getRootNS();
+        System.out.println("Filter on root NS " + rootNS);
+        List<Triple> triples = tripleCollector.collectTriples(rootNS);
+        long stopTime = System.nanoTime();
+        System.out.println("Collected triples from within " + owlFile.getFileName() + " in " + (stopTime - startTime) / 1e9 + " s");
+        return triples;
+    }
+
+    /**
+     * Read an OWL file into an ontology model and identify the root namespace. Collect triples from statements which
+     * contain a named object and a predicate in one of the specified namespaces. Handle statements which contain an
+     * anonymous object and an rdfs:subClassOf predicate by flattening all statements about the anonymous object into a
+     * single statement with a named subject and object, then collecting the triple from the single statement.
+     * Optionally skip statements with a named object not in the root namespace
+     *
+     * @param owlFile            Path to OWL file
+     * @param testObjectInRootNS Flag to check that named objects are in the root namespace
+     * @return List of triples with named subject and object nodes
+     */
+    public static List<Triple> collectTriplesFromOntModel(Path owlFile, boolean testObjectInRootNS) {
         List<Triple> triples = new ArrayList<>();
         System.out.println("Collecting triples from within " + owlFile.getFileName());
         long startTime = System.nanoTime();
 
         // Read the OWL file
         OntModel ontModel = OntModelFactory.createModel();
-        RDFDataMgr.read(ontModel, owlFile.toString());
+        try (InputStream in = PathUtilities.newInputStream(owlFile)) {
+            RDFDataMgr.read(ontModel, in, getBaseURI(owlFile), Lang.RDFXML);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         // Consider each statement about each class in the root name space
         String rootNS = getRootNS(ontModel);
@@ -150,26 +291,255 @@ public class OntologyTripleParser {
     }
 
     /**
-     * Collect unique triples with named subject and object nodes.
+     * Retains triples as they are streamed from an OWL file: rdf:type declarations of classes and of the ontology, the
+     * ontology root term, statements about named subjects with a predicate in one of the selected namespaces, and the
+     * owl:onProperty and owl:someValuesFrom statements about anonymous restrictions. Once the root term of the ontology
+     * arrives, which is in the header, statements about subjects outside the root namespace are dropped as they
+     * arrive, and statements with a named object are tested for validity as they arrive. Until then, and throughout
+     * ontologies without a root term, statements are retained and tested when collected, since the namespace is then
+     * that of the first class declared, which is only known at the end. Class membership, and the validity of
+     * flattened statements, are also tested when collected, since a class may be declared, and a restriction
+     * described, after the statements which refer to it.
+     */
+    private static class TripleCollector extends StreamRDFBase {
+
+        // Named classes, and the first class declared
+        private final Set<Node> classes = new HashSet<>();
+        private Node firstClass;
+
+        // First ontology declared, and the root term of each subject
+        private Node ontology;
+        private final Map<Node, Node> rootTerms = new HashMap<>();
+
+        // Root namespace, once the root term of the ontology has arrived
+        private String rootNS;
+        private final boolean testObjectInRootNS;
+
+        // Candidate statements in arrival order, including rdfs:subClassOf
+        // statements with an anonymous object
+        private final Set<Triple> candidates = new LinkedHashSet<>();
+
+        // Property and object of each anonymous restriction
+        private final Map<Node, Node> restrictionProperties = new HashMap<>();
+        private final Map<Node, Node> restrictionObjects = new HashMap<>();
+
+        /**
+         * Create a collector.
+         *
+         * @param testObjectInRootNS Flag to check that named objects are in the root namespace
+         */
+        TripleCollector(boolean testObjectInRootNS) {
+            this.testObjectInRootNS = testObjectInRootNS;
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            Node subject = triple.getSubject();
+            Node predicate = triple.getPredicate();
+            Node object = triple.getObject();
+            if (subject.isBlank()) {
+                if (predicate.equals(onProperty)) {
+                    restrictionProperties.put(subject, object);
+                } else if (predicate.equals(someValuesFrom)) {
+                    restrictionObjects.put(subject, object);
+                }
+                return;
+            }
+            if (predicate.equals(rdfType)) {
+                if (object.equals(owlClass) && subject.isURI()) {
+                    classes.add(subject);
+                    if (firstClass == null) {
+                        firstClass = subject;
+                    }
+                } else if (object.equals(owlOntology) && ontology == null) {
+                    ontology = subject;
+                    setRootNS(rootTerms.get(ontology));
+                }
+            } else if (predicate.equals(rootTermProperty)) {
+                rootTerms.putIfAbsent(subject, object);
+                if (subject.equals(ontology)) {
+                    setRootNS(rootTerms.get(ontology));
+                }
+            }
+            if (!object.isBlank()) {
+                String predicateURI = predicate.getURI();
+                if (predicateNameSpaces.stream().anyMatch(predicateURI::startsWith) && isCandidate(triple)) {
+                    candidates.add(triple);
+                }
+            } else if (predicate.equals(subClassOf) && isCandidate(triple)) {
+                candidates.add(triple);
+            }
+        }
+
+        /**
+         * Set the root namespace from the root term of the ontology, if known and not already set, then drop the
+         * candidate statements retained before it was set which are not candidates in it.
+         *
+         * @param rootTerm Root term of the ontology, or null
+         */
+        private void setRootNS(Node rootTerm) {
+            if (rootNS != null || rootTerm == null) {
+                return;
+            }
+            rootNS = rootTerm.getURI().split("_")[0];
+            candidates.removeIf(candidate -> !isCandidate(candidate));
+        }
+
+        /**
+         * Test if a statement may yield a triple in the root namespace, if known. The subject must be in the root
+         * namespace, and a statement with a named object must be valid.
+         *
+         * @param triple Statement about a named subject
+         * @return True if the statement is retained
+         */
+        private boolean isCandidate(Triple triple) {
+            if (rootNS == null) {
+                return true;
+            }
+            if (!triple.getSubject().isURI() || !triple.getSubject().getURI().startsWith(rootNS)) {
+                return false;
+            }
+            return triple.getObject().isBlank() || isValidTriple(triple, rootNS, testObjectInRootNS);
+        }
+
+        /**
+         * Find the root namespace from the ontology root term, or from the first class declared (only expected for
+         * taxslim.owl).
+         *
+         * @return The root namespace
+         */
+        String getRootNS() {
+            if (ontology == null) {
+                throw new RuntimeException("No root NS found: no ontology resource found");
+            }
+            if (rootNS != null) {
+                return rootNS;
+            }
+            if (firstClass == null) {
+                throw new RuntimeException("No root NS found: first class found is null");
+            }
+            return firstClass.getURI().split("_")[0];
+        }
+
+        /**
+         * Collect triples from candidate statements about classes in the root namespace, flattening statements with
+         * an anonymous object.
+         *
+         * @param rootNS The root namespace
+         * @return List of triples with named subject and object nodes
+         */
+        List<Triple> collectTriples(String rootNS) {
+            List<Triple> triples = new ArrayList<>();
+            for (Triple candidate : candidates) {
+                Node subject = candidate.getSubject();
+                if (!classes.contains(subject) || !subject.getURI().startsWith(rootNS)) {
+                    continue;
+                }
+                Triple triple = candidate;
+                if (candidate.getObject().isBlank()) {
+                    Node predicate = restrictionProperties.get(candidate.getObject());
+                    Node object = restrictionObjects.get(candidate.getObject());
+                    if (predicate == null || !predicate.isURI() || object == null) {
+                        continue;
+                    }
+                    triple = Triple.create(subject, predicate, object);
+                }
+                if (isValidTriple(triple, rootNS, testObjectInRootNS)) {
+                    triples.add(triple);
+                }
+            }
+            return triples;
+        }
+    }
+
+    /**
+     * Collect unique triples with named subject and object nodes, parsing files concurrently when more than one file
+     * can be processed at once.
      *
      * @param files              Paths to ontology files
      * @param testObjectInRootNS Flag to check that named objects are in the root namespace
      * @return Set of unique triples with named subject and object nodes
      */
     public static HashSet<Triple> collectUniqueTriples(List<Path> files, boolean testObjectInRootNS) {
-        HashSet<Triple> uniqueTriplesSet = new HashSet<>();
-        System.out.println("Collecting unique triples from within " + files.size() + " files");
+        return collectUniqueTriples(files, testObjectInRootNS, ConcurrencyUtilities.getParallelism(files,
+                HEAP_PER_BYTE));
+    }
+
+    /**
+     * Collect unique triples with named subject and object nodes, parsing the specified number of files at once, and
+     * deduplicating into a concurrent set. The set of triples does not depend on the parallelism.
+     *
+     * @param files              Paths to ontology files
+     * @param testObjectInRootNS Flag to check that named objects are in the root namespace
+     * @param parallelism        Number of files to parse at once
+     * @return Set of unique triples with named subject and object nodes
+     */
+    public static HashSet<Triple> collectUniqueTriples(List<Path> files, boolean testObjectInRootNS,
+                                                       int parallelism) {
+        System.out.println("Collecting unique triples from within " + files.size() + " files using " + parallelism + " threads");
         long startTime = System.nanoTime();
-        for (Path file : files) {
-            if (file.getFileName().toString().equals("ro.owl")) continue;
-            List<Triple> triples = collectTriplesFromFile(file, testObjectInRootNS);
-            uniqueTriplesSet.addAll(triples);
+        HashSet<Triple> uniqueTriplesSet;
+        if (parallelism > 1) {
+            Set<Triple> concurrentTriplesSet = ConcurrentHashMap.newKeySet();
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (Path file : files) {
+                if (PathUtilities.getUncompressedFileName(file).equals("ro.owl")) continue;
+                tasks.add(() -> concurrentTriplesSet.addAll(collectTriplesFromFile(file, testObjectInRootNS)));
+            }
+            ConcurrencyUtilities.invokeAll(tasks, parallelism);
+            uniqueTriplesSet = new HashSet<>(concurrentTriplesSet);
+        } else {
+            uniqueTriplesSet = new HashSet<>();
+            for (Path file : files) {
+                if (PathUtilities.getUncompressedFileName(file).equals("ro.owl")) continue;
+                List<Triple> triples = collectTriplesFromFile(file, testObjectInRootNS);
+                uniqueTriplesSet.addAll(triples);
+            }
         }
         long stopTime = System.nanoTime();
         System.out.println("Collected " + uniqueTriplesSet.size() + " unique triples from within " + files.size() + " in " + (stopTime - startTime) / 1e9 + " s");
         return uniqueTriplesSet;
     }
 
+    /**
+     * Collect unique triples with named subject and object nodes into a compact triple store, parsing files
+     * concurrently when more than one file can be processed at once.
+     *
+     * @param files              Paths to ontology files
+     * @param testObjectInRootNS Flag to check that named objects are in the root namespace
+     * @return Store of unique triples with named subject and object nodes
+     */
+    public static CompactTripleStore collectCompactTriples(List<Path> files, boolean testObjectInRootNS) {
+        return collectCompactTriples(files, testObjectInRootNS, ConcurrencyUtilities.getParallelism(files,
+                HEAP_PER_BYTE));
+    }
+
+    /**
+     * Collect unique triples with named subject and object nodes into a compact triple store, parsing the specified
+     * number of files at once. Triples from each file are added in file order, so the store does not depend on the
+     * parallelism.
+     *
+     * @param files              Paths to ontology files
+     * @param testObjectInRootNS Flag to check that named objects are in the root namespace
+     * @param parallelism        Number of files to parse at once
+     * @return Store of unique triples with named subject and object nodes
+     */
+    public static CompactTripleStore collectCompactTriples(List<Path> files, boolean testObjectInRootNS,
+                                                           int parallelism) {
+        System.out.println("Collecting unique triples from within " + files.size() + " files using " + parallelism + " threads");
+        long startTime = System.nanoTime();
+        CompactTripleStore tripleStore = new CompactTripleStore();
+        List<Callable<List<Triple>>> tasks = new ArrayList<>();
+        for (Path file : files) {
+            if (PathUtilities.getUncompressedFileName(file).equals("ro.owl")) continue;
+            tasks.add(() -> collectTriplesFromFile(file, testObjectInRootNS));
+        }
+        ConcurrencyUtilities.forEachInOrder(tasks, parallelism, tripleStore::addAll);
+        long stopTime = System.nanoTime();
+        System.out.println("Collected " + tripleStore.size() + " unique triples with " + tripleStore.nodeCount() + " unique nodes from within " + files.size() + " in " + (stopTime - startTime) / 1e9 + " s");
+        return tripleStore;
+    }
+
     /**
      * Parse each ontology file in the data/obo directory to collect unique triples
      *
@@ -200,9 +570,9 @@ public class OntologyTripleParser {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        Map<String, OntologyElementMap> ontologyElementMaps = parseOntologyElements(roFile);
+        Map<String, OntologyElementMap> ontologyElementMaps = loadOntologyElements(roFile);
 
         // Collect unique triples
-        HashSet<Triple> uniqueTriplesSet = collectUniqueTriples(oboFiles, false);
+        CompactTripleStore uniqueTriples = collectCompactTriples(oboFiles, false);
     }
 }
@@ -1,20 +1,54 @@
 package gov.nih.nlm;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Collects common methods for handling paths.
  */
 public class PathUtilities {
 
+    // Assign the suffix of gzip compressed files
+    public static final String GZIP_SUFFIX = ".gz";
+
+    // Assign size of the buffer used to compress, and decompress files
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Assign the length of a hexadecimal SHA-256 digest, the prefix of the version in a cache file name, and the
+    // pattern of the digest, and optional version, in a cache file name
+    public static final int SHA256_HEX_LENGTH = 64;
+    private static final String CACHE_VERSION_PREFIX = "-v";
+    private static final String CACHE_KEY_REGEX = "[0-9a-f]{" + SHA256_HEX_LENGTH + "}(?:" + CACHE_VERSION_PREFIX + "\\d+)?";
+
+    // Assign the suffix of the file recording the size, last modified time, and content hash of a file
+    private static final String HASH_SUFFIX = ".sha256";
+
     /**
-     * List files in a directory matching a pattern.
+     * List files in a directory matching a pattern. Compressed files match
+     * by their uncompressed file name, and if both a compressed, and an
+     * uncompressed file have the same uncompressed name, only the most
+     * recently modified is listed.
      *
      * @param directoryPath Directory containing the files
      * @param filePattern   Pattern for matching to files
@@ -23,9 +57,298 @@ public class PathUtilities {
      */
     public static List<Path> listFilesMatchingPattern(String directoryPath, String filePattern) throws IOException {
         Pattern pattern = Pattern.compile(filePattern);
+        List<Path> files;
         try (var filesStream = Files.list(Paths.get(directoryPath))) {
-            return filesStream.filter(Files::isRegularFile).filter(path -> pattern.matcher(path.getFileName().toString()).matches()).collect(
-                    Collectors.toList());
+            files = filesStream.filter(Files::isRegularFile).filter(path -> pattern.matcher(getUncompressedFileName(
+                    path)).matches()).collect(Collectors.toList());
+        }
+        Map<String, Path> filesByName = new HashMap<>();
+        for (Path file : files) {
+            Path other = filesByName.putIfAbsent(getUncompressedFileName(file), file);
+            if (other != null && Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(other)) > 0) {
+                filesByName.put(getUncompressedFileName(file), file);
+            }
+        }
+        files.retainAll(filesByName.values());
+        return files;
+    }
+
+    /**
+     * Test if a file is gzip compressed, by its suffix.
+     *
+     * @param file Path to the file
+     * @return True if the file is gzip compressed
+     */
+    public static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Get the name of a file without its compression suffix, if any.
+     *
+     * @param file Path to the file
+     * @return Uncompressed file name
+     */
+    public static String getUncompressedFileName(Path file) {
+        String fileName = file.getFileName().toString();
+        return isCompressed(file) ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length()) : fileName;
+    }
+
+    /**
+     * Open a file for reading, decompressing it while streaming if it is
+     * gzip compressed.
+     *
+     * @param file Path to the file
+     * @return Stream of the uncompressed content
+     * @throws IOException On read
+     */
+    public static InputStream newInputStream(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (isCompressed(file)) {
+            try {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Get the size of the uncompressed content of a file. For gzip
+     * compressed files, the size is read from the gzip trailer, which
+     * records the size modulo 2^32.
+     *
+     * @param file Path to the file
+     * @return Size of the uncompressed content, in bytes
+     * @throws IOException On read
+     */
+    public static long getUncompressedSize(Path file) throws IOException {
+        long size = Files.size(file);
+        if (!isCompressed(file) || size < 4) {
+            return size;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(size - 4);
+            channel.read(trailer);
+            return Integer.toUnsignedLong(trailer.getInt(0));
+        }
+    }
+
+    /**
+     * Copy a file, decompressing, or compressing it while streaming as
+     * specified, and compute the SHA-256 hash of its uncompressed content.
+     *
+     * @param source           Path to the file to copy
+     * @param sourceCompressed Flag indicating the source is gzip compressed
+     * @param target           Path to the file to write, or null to only compute the hash
+     * @param targetCompressed Flag to gzip compress the target
+     * @return Hexadecimal SHA-256 hash of the uncompressed content
+     * @throws IOException On read, or write
+     */
+    public static String transcode(Path source, boolean sourceCompressed, Path target, boolean targetCompressed)
+            throws IOException {
+        MessageDigest digest = newSha256Digest();
+        try (InputStream fileIn = Files.newInputStream(source);
+             InputStream in = sourceCompressed ? new GZIPInputStream(fileIn, BUFFER_SIZE) : fileIn;
+             OutputStream fileOut = target != null ? Files.newOutputStream(target) : OutputStream.nullOutputStream();
+             OutputStream out = targetCompressed ? new GZIPOutputStream(fileOut, BUFFER_SIZE) : fileOut) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int nRead;
+            while ((nRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, nRead);
+                out.write(buffer, 0, nRead);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Compute the SHA-256 hash of the content of a file.
+     *
+     * @param file Path to the file
+     * @return Hexadecimal SHA-256 hash
+     * @throws IOException On read
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newSha256Digest();
+        updateDigest(digest, file);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Get the SHA-256 hash of the content of a file, reusing the hash
+     * recorded in the ".cache" directory beside the file while the size, and
+     * last modified time of the file are unchanged, otherwise computing, and
+     * recording it. Finding each cache of a file, and fingerprinting the
+     * file, then read the file once, rather than once each.
+     *
+     * @param file Path to the file
+     * @return Hexadecimal SHA-256 hash
+     * @throws IOException On read, or write
+     */
+    public static String getContentHash(Path file) throws IOException {
+        Path hashFile = file.toAbsolutePath().getParent().resolve(".cache").resolve(file.getFileName() + HASH_SUFFIX);
+        String stamp = Files.size(file) + "\t" + Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+        if (Files.isRegularFile(hashFile)) {
+            String[] fields = Files.readString(hashFile, StandardCharsets.US_ASCII).trim().split("\t");
+            if (fields.length == 3 && (fields[0] + "\t" + fields[1]).equals(stamp) && fields[2].length() == SHA256_HEX_LENGTH) {
+                return fields[2];
+            }
+        }
+        String sha256 = sha256(file);
+        Files.createDirectories(hashFile.getParent());
+        Path tempFile = Files.createTempFile(hashFile.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tempFile, stamp + "\t" + sha256 + "\n", StandardCharsets.US_ASCII);
+            Files.move(tempFile, hashFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
+        return sha256;
+    }
+
+    /**
+     * Create a SHA-256 message digest.
+     *
+     * @return SHA-256 message digest
+     */
+    public static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Update a message digest with the content of a file.
+     *
+     * @param digest Message digest to update
+     * @param file   Path to the file
+     * @throws IOException On read
+     */
+    public static void updateDigest(MessageDigest digest, Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int nRead;
+            while ((nRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, nRead);
+            }
+        }
+    }
+
+    /**
+     * Replace a file with a hard link to another file, or with a copy if the
+     * file system does not support hard links.
+     *
+     * @param source Path to the file to link to
+     * @param target Path to the link to create
+     * @throws IOException On link, or copy
+     */
+    public static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    /**
+     * Get the name of a file without its extension, or its compression
+     * suffix.
+     *
+     * @param file Path to the file
+     * @return File name without extension
+     */
+    public static String getFileStem(Path file) {
+        String fileName = getUncompressedFileName(file);
+        int index = fileName.lastIndexOf('.');
+        return index > 0 ? fileName.substring(0, index) : fileName;
+    }
+
+    /**
+     * Get the path to a cache file in the ".cache" directory beside a file,
+     * named by the file stem, the SHA-256 hash of the file content, and a
+     * suffix.
+     *
+     * @param file   Path to the file
+     * @param suffix Suffix of the cache file name
+     * @return Path to the cache file
+     * @throws IOException On read
+     */
+    public static Path getCacheFile(Path file, String suffix) throws IOException {
+        Path cacheDir = file.toAbsolutePath().getParent().resolve(".cache");
+        return cacheDir.resolve(getFileStem(file) + "-" + getContentHash(file) + suffix);
+    }
+
+    /**
+     * Get the path to a cache file in the ".cache" directory beside a file,
+     * named by the file stem, the SHA-256 hash of the file content, the
+     * version of the cache format, and a suffix, so that a cache written in
+     * another format is not read.
+     *
+     * @param file    Path to the file
+     * @param suffix  Suffix of the cache file name
+     * @param version Version of the cache format
+     * @return Path to the cache file
+     * @throws IOException On read
+     */
+    public static Path getCacheFile(Path file, String suffix, int version) throws IOException {
+        return getCacheFile(file, CACHE_VERSION_PREFIX + version + suffix);
+    }
+
+    /**
+     * Write a cache file atomically, after deleting cache files for any
+     * previous content of the same file, or in any previous version of the
+     * cache format, and with the same suffix.
+     *
+     * @param cacheFile Path to the cache file
+     * @param suffix    Suffix of the cache file name, without the version of the cache format
+     * @param writer    Writes the cache file content to a temporary file
+     * @throws IOException On write
+     */
+    public static void writeCacheFile(Path cacheFile, String suffix, CacheWriter writer) throws IOException {
+        Path cacheDir = cacheFile.getParent();
+        String cacheFileName = cacheFile.getFileName().toString();
+        Matcher matcher = Pattern.compile("(.+-)" + CACHE_KEY_REGEX + Pattern.quote(suffix)).matcher(cacheFileName);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a cache file name with suffix " + suffix + ": " + cacheFileName);
+        }
+        String cachePrefix = matcher.group(1);
+        Pattern previousPattern = Pattern.compile(Pattern.quote(cachePrefix) + CACHE_KEY_REGEX + Pattern.quote(suffix));
+        Files.createDirectories(cacheDir);
+        try (var cacheFiles = Files.list(cacheDir)) {
+            for (Path previousFile : cacheFiles.toList()) {
+                if (previousPattern.matcher(previousFile.getFileName().toString()).matches()) {
+                    Files.deleteIfExists(previousFile);
+                }
+            }
+        }
+        Path tempFile = Files.createTempFile(cacheDir, cachePrefix, ".tmp");
+        try {
+            writer.write(tempFile);
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Writes the content of a cache file.
+     */
+    @FunctionalInterface
+    public interface CacheWriter {
+
+        /**
+         * Write the content of a cache file.
+         *
+         * @param file Path to which to write
+         * @throws IOException On write
+         */
+        void write(Path file) throws IOException;
     }
 }
@@ -1,6 +1,9 @@
 package gov.nih.nlm;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
@@ -8,8 +11,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
@@ -18,8 +23,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import com.arangodb.ArangoCollection;
 import com.arangodb.ArangoDatabase;
 import com.arangodb.ArangoGraph;
+import com.arangodb.entity.BaseDocument;
 import com.arangodb.entity.ViewEntity;
 import com.arangodb.entity.arangosearch.analyzer.SearchAnalyzer;
 
@@ -164,6 +171,205 @@ class ArangoDbUtilitiesTest {
 		assertFalse(graph.db().collection(edgeName).exists());
 	}
 
+	@Test
+	void insertDocuments() {
+		ArangoDatabase db = arangoDbUtilities.createOrGetDatabase(databaseName);
+		ArangoGraph graph = arangoDbUtilities.createOrGetGraph(db, graphName);
+		arangoDbUtilities.createOrGetVertexCollection(graph, fromVertexName);
+		ArangoCollection collection = db.collection(fromVertexName);
+
+		// Insert five documents in batches of two
+		List<BaseDocument> docs = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			BaseDocument doc = new BaseDocument(String.valueOf(i));
+			doc.addAttribute("label", "first");
+			docs.add(doc);
+		}
+		List<ArangoDbUtilities.BatchReport> batchReports = arangoDbUtilities.insertDocuments(collection, docs, 2);
+		assertEquals(3, batchReports.size());
+		assertTrue(batchReports.stream().noneMatch(ArangoDbUtilities.BatchReport::hasErrors));
+		assertEquals(5L, collection.count().getCount());
+
+		// Insert the same documents again, which updates them
+		for (BaseDocument doc : docs) {
+			doc.updateAttribute("label", "second");
+		}
+		batchReports = arangoDbUtilities.insertDocuments(collection, docs, 2);
+		assertTrue(batchReports.stream().noneMatch(ArangoDbUtilities.BatchReport::hasErrors));
+		assertEquals(5L, collection.count().getCount());
+		assertEquals("second", collection.getDocument("0", BaseDocument.class).getAttribute("label"));
+	}
+
+	@Test
+	void insertDocumentsAsync() {
+		ArangoDatabase db = arangoDbUtilities.createOrGetDatabase(databaseName);
+		ArangoGraph graph = arangoDbUtilities.createOrGetGraph(db, graphName);
+		arangoDbUtilities.createOrGetVertexCollection(graph, fromVertexName);
+		ArangoCollection collection = db.collection(fromVertexName);
+
+		// Insert ten documents in batches of three, with two batches in flight
+		List<BaseDocument> docs = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			docs.add(new BaseDocument(String.valueOf(i)));
+		}
+		List<ArangoDbUtilities.BatchReport> batchReports = arangoDbUtilities.insertDocumentsAsync(collection, docs, 3, 2);
+		assertEquals(4, batchReports.size());
+		for (int i = 0; i < batchReports.size(); i++) {
+			assertEquals(i, batchReports.get(i).batchNumber());
+			assertFalse(batchReports.get(i).hasErrors());
+		}
+		assertEquals(10L, collection.count().getCount());
+	}
+
+	@Test
+	void insertDocumentsAsync_commitsEachBatch() throws IOException {
+		ArangoDatabase db = arangoDbUtilities.createOrGetDatabase(databaseName);
+		ArangoGraph graph = arangoDbUtilities.createOrGetGraph(db, graphName);
+		arangoDbUtilities.createOrGetVertexCollection(graph, fromVertexName);
+		ArangoCollection collection = db.collection(fromVertexName);
+		List<BaseDocument> docs = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			docs.add(new BaseDocument(String.valueOf(i)));
+		}
+		Path journalFile = Files.createTempDirectory("checkpoint").resolve("test.journal");
+
+		// Skip the batch committed in a previous run, and commit each other batch of three
+		try (LoadCheckpoint checkpoint = new LoadCheckpoint(journalFile, "abc", false)) {
+			checkpoint.commit(fromVertexName, 1);
+			List<ArangoDbUtilities.BatchReport> batchReports = arangoDbUtilities.insertDocumentsAsync(collection,
+					docs, 3, 2, checkpoint);
+			assertEquals(List.of(0, 2, 3), batchReports.stream().map(ArangoDbUtilities.BatchReport::batchNumber)
+					.toList());
+			assertTrue(batchReports.stream().noneMatch(ArangoDbUtilities.BatchReport::hasErrors));
+			for (int batchNumber = 0; batchNumber < 4; batchNumber++) {
+				assertTrue(checkpoint.isCommitted(fromVertexName, batchNumber));
+			}
+		}
+		assertEquals(7L, collection.count().getCount());
+	}
+
+	@Test
+	void replaceAndRemoveDocuments() {
+		ArangoDatabase db = arangoDbUtilities.createOrGetDatabase(databaseName);
+		ArangoGraph graph = arangoDbUtilities.createOrGetGraph(db, graphName);
+		arangoDbUtilities.createOrGetVertexCollection(graph, fromVertexName);
+		ArangoCollection collection = db.collection(fromVertexName);
+
+		// Insert three documents with a content hash
+		List<BaseDocument> docs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			BaseDocument doc = new BaseDocument(String.valueOf(i));
+			doc.addAttribute("label", "first");
+			doc.addAttribute("comment", "removed on replace");
+			doc.addAttribute(ArangoDbUtilities.CONTENT_HASH, ArangoDbUtilities.computeContentHash(doc));
+			docs.add(doc);
+		}
+		arangoDbUtilities.insertDocuments(collection, docs, 2);
+		Map<String, String> contentHashes = arangoDbUtilities.getContentHashes(collection);
+		assertEquals(3, contentHashes.size());
+		assertEquals(docs.get(0).getAttribute(ArangoDbUtilities.CONTENT_HASH), contentHashes.get("0"));
+
+		// Replace one document, which removes attributes no longer present
+		BaseDocument doc = new BaseDocument("0");
+		doc.addAttribute("label", "second");
+		List<ArangoDbUtilities.BatchReport> batchReports = arangoDbUtilities.replaceDocuments(collection, List.of(doc), 2);
+		assertTrue(batchReports.stream().noneMatch(ArangoDbUtilities.BatchReport::hasErrors));
+		BaseDocument replaced = collection.getDocument("0", BaseDocument.class);
+		assertEquals("second", replaced.getAttribute("label"));
+		assertNull(replaced.getAttribute("comment"));
+
+		// Remove two documents, and report a missing document
+		batchReports = arangoDbUtilities.removeDocuments(collection, List.of("1", "2", "3"), 2);
+		assertEquals(2, batchReports.size());
+		assertEquals(List.of("3"), batchReports.get(1).failedKeys());
+		assertEquals(1L, collection.count().getCount());
+	}
+
+	@Test
+	void validateCounts() {
+		assertTrue(ArangoDbUtilities.validateCounts(Map.of("CL", 10L), Map.of(), 0.9).isEmpty());
+		assertTrue(ArangoDbUtilities.validateCounts(Map.of("CL", 9L, "GO", 1L), Map.of("CL", 10L), 0.9).isEmpty());
+		assertEquals(1, ArangoDbUtilities.validateCounts(Map.of("CL", 10L), Map.of("CL", 10L, "GO", 1L), 0.9).size());
+		assertEquals(1, ArangoDbUtilities.validateCounts(Map.of("CL", 8L), Map.of("CL", 10L), 0.9).size());
+		assertEquals(1, ArangoDbUtilities.validateCounts(Map.of(), Map.of(), 0.9).size());
+	}
+
+	@Test
+	void promoteDatabase() {
+		String publicName = "public";
+
+		// Stage, and promote the blue copy, deleting the database named by the public name
+		ArangoDatabase publicDb = arangoDbUtilities.createOrGetDatabase(publicName);
+		publicDb.createCollection(fromVertexName);
+		publicDb.collection(fromVertexName).insertDocument(new BaseDocument("0"));
+		assertEquals(publicName, arangoDbUtilities.resolveDatabase(publicName));
+		assertFalse(arangoDbUtilities.isStale(publicName));
+		String blueName = arangoDbUtilities.getStagingDatabaseName(publicName);
+		assertEquals(publicName + "-blue", blueName);
+		ArangoDatabase blueDb = arangoDbUtilities.createOrGetDatabase(blueName);
+		blueDb.createCollection(fromVertexName);
+		blueDb.collection(fromVertexName).insertDocument(new BaseDocument("0"));
+		arangoDbUtilities.promoteDatabase(publicName, blueName);
+		assertEquals(blueName, arangoDbUtilities.resolveDatabase(publicName));
+		assertFalse(publicDb.exists());
+		assertFalse(arangoDbUtilities.isStale(publicName));
+		arangoDbUtilities.checkNotStale(publicName);
+
+		// A database named exactly the public name, recreated after the pointer moved, is stale
+		arangoDbUtilities.createOrGetDatabase(publicName);
+		assertTrue(arangoDbUtilities.isStale(publicName));
+		assertThrows(IllegalStateException.class, () -> arangoDbUtilities.checkNotStale(publicName));
+		arangoDbUtilities.deleteDatabase(publicName);
+
+		// An empty green copy fails validation, and leaves the blue copy in service
+		String greenName = arangoDbUtilities.getStagingDatabaseName(publicName);
+		assertEquals(publicName + "-green", greenName);
+		ArangoDatabase greenDb = arangoDbUtilities.createOrGetDatabase(greenName);
+		assertThrows(RuntimeException.class, () -> arangoDbUtilities.promoteDatabase(publicName, greenName));
+		assertEquals(blueName, arangoDbUtilities.resolveDatabase(publicName));
+
+		// A loaded green copy replaces the blue copy
+		greenDb.createCollection(fromVertexName);
+		greenDb.collection(fromVertexName).insertDocument(new BaseDocument("0"));
+		arangoDbUtilities.promoteDatabase(publicName, greenName);
+		assertEquals(greenName, arangoDbUtilities.resolveDatabase(publicName));
+		assertFalse(arangoDbUtilities.arangoDB.db(blueName).exists());
+	}
+
+	@Test
+	void promoteDatabases_validatesAllBeforeSwapping() {
+		String otherName = "other";
+		String blueName = arangoDbUtilities.getStagingDatabaseName(otherName);
+		ArangoDatabase blueDb = arangoDbUtilities.createOrGetDatabase(blueName);
+		blueDb.createCollection(fromVertexName);
+		blueDb.collection(fromVertexName).insertDocument(new BaseDocument("0"));
+		arangoDbUtilities.promoteDatabase(otherName, blueName);
+
+		// An empty copy of one database fails validation, so neither pointer moves
+		String greenName = arangoDbUtilities.getStagingDatabaseName(otherName);
+		ArangoDatabase greenDb = arangoDbUtilities.createOrGetDatabase(greenName);
+		greenDb.createCollection(fromVertexName);
+		greenDb.collection(fromVertexName).insertDocument(new BaseDocument("0"));
+		String publicName = "public";
+		String publicBlueName = arangoDbUtilities.getStagingDatabaseName(publicName);
+		arangoDbUtilities.createOrGetDatabase(publicBlueName);
+		assertThrows(RuntimeException.class, () -> arangoDbUtilities.promoteDatabases(Map.of(otherName, greenName,
+				publicName, publicBlueName)));
+		assertEquals(blueName, arangoDbUtilities.resolveDatabase(otherName));
+		assertEquals(publicName, arangoDbUtilities.resolveDatabase(publicName));
+		assertTrue(blueDb.exists());
+	}
+
+	@Test
+	void setReleaseVersions() {
+		ArangoDatabase db = arangoDbUtilities.createOrGetDatabase(databaseName);
+		assertNull(arangoDbUtilities.getReleaseVersion(db, "cl"));
+		arangoDbUtilities.setReleaseVersions(db, Map.of("cl", "2024-09-26", "mondo-simple", "2024-10-01"));
+		arangoDbUtilities.setReleaseVersions(db, Map.of("cl", "2025-01-01"));
+		assertEquals("2025-01-01", arangoDbUtilities.getReleaseVersion(db, "cl"));
+		assertEquals("2024-10-01", arangoDbUtilities.getReleaseVersion(db, "mondo-simple"));
+	}
+
 	@Test
 	void createAndDeleteAnalyzers() {
 		ArangoDatabase db = arangoDbUtilities.createOrGetDatabase(databaseName);
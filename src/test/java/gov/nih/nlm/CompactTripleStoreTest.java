@@ -0,0 +1,87 @@
+package gov.nih.nlm;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactTripleStoreTest {
+
+    private static final Node subClassOf = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#subClassOf");
+    private static final Node label = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#label");
+
+    private static Node cl(int id) {
+        return NodeFactory.createURI(String.format("http://purl.obolibrary.org/obo/CL_%07d", id));
+    }
+
+    @Test
+    void add_deduplicates() {
+        CompactTripleStore store = new CompactTripleStore();
+        Triple triple = Triple.create(cl(235), subClassOf, cl(113));
+
+        assertTrue(store.add(triple));
+        assertFalse(store.add(Triple.create(cl(235), subClassOf, cl(113))));
+        assertEquals(1, store.size());
+        assertEquals(3, store.nodeCount());
+        assertTrue(store.contains(triple));
+        assertFalse(store.contains(Triple.create(cl(113), subClassOf, cl(235))));
+        assertFalse(store.contains(Triple.create(cl(1), subClassOf, cl(113))));
+    }
+
+    @Test
+    void add_literalsDeduplicateByValue() {
+        CompactTripleStore store = new CompactTripleStore();
+        store.add(Triple.create(cl(235), label, NodeFactory.createLiteralString("macrophage")));
+        store.add(Triple.create(cl(235), label, NodeFactory.createLiteralString("macrophage")));
+        store.add(Triple.create(cl(235), label, NodeFactory.createLiteralLang("macrophage", "en")));
+
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void iterator_matchesHashSetInInsertionOrder() {
+        List<Triple> triples = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            triples.add(Triple.create(cl(i), subClassOf, cl(i % 100)));
+            triples.add(Triple.create(cl(i % 50), subClassOf, cl(i % 100)));
+        }
+        Set<Triple> expected = new HashSet<>(triples);
+        CompactTripleStore store = new CompactTripleStore(triples);
+
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected, new HashSet<>(store));
+        assertEquals(triples.getFirst(), store.get(0));
+        for (Triple triple : expected) {
+            assertTrue(store.contains(triple));
+        }
+    }
+
+    @Test
+    void getNode_byIdsOfTriple() {
+        CompactTripleStore store = new CompactTripleStore();
+        store.add(Triple.create(cl(235), subClassOf, cl(113)));
+        store.add(Triple.create(cl(113), subClassOf, cl(235)));
+
+        assertEquals(cl(235), store.getNode(store.getSubjectId(0)));
+        assertEquals(cl(113), store.getNode(store.getObjectId(0)));
+        assertEquals(store.getSubjectId(0), store.getObjectId(1));
+        assertEquals(store.getObjectId(0), store.getSubjectId(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getSubjectId(2));
+    }
+
+    @Test
+    void get_outOfBoundsThrows() {
+        CompactTripleStore store = new CompactTripleStore();
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(0));
+    }
+}
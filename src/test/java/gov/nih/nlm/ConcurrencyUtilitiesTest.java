@@ -0,0 +1,74 @@
+package gov.nih.nlm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyUtilitiesTest {
+
+    @Test
+    void getParallelism_limitedByFileCount(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("small.owl"), "<rdf:RDF/>");
+        assertEquals(1, ConcurrencyUtilities.getParallelism(List.of(file), 1.0));
+    }
+
+    @Test
+    void getParallelism_limitedByHeap(@TempDir Path tempDir) throws IOException {
+        Path first = Files.writeString(tempDir.resolve("first.owl"), "<rdf:RDF/>");
+        Path second = Files.writeString(tempDir.resolve("second.owl"), "<rdf:RDF/>");
+        // Each file requires more than the maximum heap, so only one at a time
+        double heapPerByte = 2.0 * Runtime.getRuntime().maxMemory() / Files.size(first);
+        assertEquals(1, ConcurrencyUtilities.getParallelism(List.of(first, second), heapPerByte));
+    }
+
+    @Test
+    void getParallelism_atLeastOne() {
+        assertTrue(ConcurrencyUtilities.getParallelism(List.of(), 1.0) >= 1);
+    }
+
+    @Test
+    void invokeAll_returnsResultsInTaskOrder() {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            tasks.add(() -> {
+                Thread.sleep(10 - n);
+                return n;
+            });
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), ConcurrencyUtilities.invokeAll(tasks, 4));
+    }
+
+    @Test
+    void invokeAll_rethrowsRuntimeException() {
+        List<Callable<Integer>> tasks = List.of(() -> {
+            throw new IllegalStateException("failed");
+        });
+        assertThrows(IllegalStateException.class, () -> ConcurrencyUtilities.invokeAll(tasks, 2));
+    }
+
+    @Test
+    void forEachInOrder_consumesResultsInTaskOrder() {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            tasks.add(() -> {
+                Thread.sleep(10 - n);
+                return n;
+            });
+        }
+        List<Integer> results = new ArrayList<>();
+        ConcurrencyUtilities.forEachInOrder(tasks, 4, results::add);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), results);
+    }
+}
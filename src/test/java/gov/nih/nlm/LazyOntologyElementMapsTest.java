@@ -0,0 +1,57 @@
+package gov.nih.nlm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LazyOntologyElementMapsTest {
+
+    @Test
+    void get_loadsOnlyRequestedMap(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path roOwl = OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+        LazyOntologyElementMaps maps = new LazyOntologyElementMaps(List.of(clOwl, roOwl));
+
+        assertEquals(2, maps.size());
+        assertTrue(maps.containsKey("cl"));
+        assertFalse(maps.isLoaded("cl"));
+        assertFalse(maps.isLoaded("ro"));
+
+        OntologyElementMap ro = maps.get("ro");
+        assertEquals("develops from", ro.terms.get("RO_0002202").label);
+        assertTrue(maps.isLoaded("ro"));
+        assertFalse(maps.isLoaded("cl"));
+        assertSame(ro, maps.get("ro"));
+        assertFalse(Files.exists(PathUtilities.getCacheFile(clOwl, ".oem",
+                OntologyElementParser.SNAPSHOT_VERSION)));
+        assertTrue(Files.isRegularFile(PathUtilities.getCacheFile(roOwl, ".oem",
+                OntologyElementParser.SNAPSHOT_VERSION)));
+        assertNull(maps.get("go"));
+    }
+
+    @Test
+    void put_replacesFile(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        LazyOntologyElementMaps maps = new LazyOntologyElementMaps(List.of(clOwl));
+        OntologyElementMap ro = new OntologyElementMap();
+
+        maps.put("ro", ro);
+        maps.put("cl", ro);
+
+        assertEquals(2, maps.size());
+        assertSame(ro, maps.get("ro"));
+        assertSame(ro, maps.get("cl"));
+        assertEquals(Set.of("ro", "cl"), maps.keySet());
+    }
+}
@@ -0,0 +1,67 @@
+package gov.nih.nlm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadCheckpointTest {
+
+    @Test
+    void resume_skipsCommittedBatches(@TempDir Path tempDir) throws IOException {
+        Path journalFile = tempDir.resolve(".checkpoint").resolve("Cell-KN-Ontologies.journal");
+        try (LoadCheckpoint checkpoint = new LoadCheckpoint(journalFile, "abc", false)) {
+            assertFalse(checkpoint.isResumed());
+            checkpoint.commit("CL", 0);
+            checkpoint.commit("CL-GO", 2);
+        }
+
+        // Simulate an interruption while writing a line
+        Files.writeString(journalFile, "CL\t", StandardOpenOption.APPEND);
+
+        try (LoadCheckpoint checkpoint = new LoadCheckpoint(journalFile, "abc", true)) {
+            assertTrue(checkpoint.isResumed());
+            assertTrue(checkpoint.isCommitted("CL", 0));
+            assertFalse(checkpoint.isCommitted("CL", 1));
+            assertTrue(checkpoint.isCommitted("CL-GO", 2));
+            checkpoint.commit("CL", 1);
+        }
+        LoadCheckpoint checkpoint = new LoadCheckpoint(journalFile, "abc", true);
+        assertTrue(checkpoint.isCommitted("CL", 1));
+        checkpoint.complete();
+        assertFalse(Files.exists(journalFile));
+    }
+
+    @Test
+    void resume_startsOverWhenInputsChange(@TempDir Path tempDir) throws IOException {
+        Path journalFile = tempDir.resolve("Cell-KN-Ontologies.journal");
+        try (LoadCheckpoint checkpoint = new LoadCheckpoint(journalFile, "abc", false)) {
+            checkpoint.commit("CL", 0);
+        }
+        try (LoadCheckpoint checkpoint = new LoadCheckpoint(journalFile, "def", true)) {
+            assertFalse(checkpoint.isResumed());
+            assertFalse(checkpoint.isCommitted("CL", 0));
+        }
+        assertEquals(List.of("fingerprint\tdef"), Files.readAllLines(journalFile));
+    }
+
+    @Test
+    void computeFingerprint_changesWithInputs(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        String fingerprint = LoadCheckpoint.computeFingerprint(List.of(clOwl), "10000");
+
+        assertEquals(fingerprint, LoadCheckpoint.computeFingerprint(List.of(clOwl), "10000"));
+        assertNotEquals(fingerprint, LoadCheckpoint.computeFingerprint(List.of(clOwl), "5000"));
+        Files.writeString(clOwl, "changed", StandardOpenOption.APPEND);
+        assertNotEquals(fingerprint, LoadCheckpoint.computeFingerprint(List.of(clOwl), "10000"));
+    }
+}
@@ -1,18 +1,102 @@
 package gov.nih.nlm;
 
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class OntologyDownloaderTest {
 
     private static final Path testOboDir = Paths.get(System.getProperty("user.dir")).resolve("src/test/data/obo");
 
+    private final Map<String, String> served = new ConcurrentHashMap<>();
+    private final AtomicInteger nBodiesServed = new AtomicInteger();
+    private final AtomicInteger nBytesServed = new AtomicInteger();
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/redirect/")) {
+                exchange.getResponseHeaders().add("Location", path.substring("/redirect".length()));
+                exchange.sendResponseHeaders(302, -1);
+            } else if (served.containsKey(path)) {
+                String etag = "\"" + served.get(path).hashCode() + "\"";
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = served.get(path).getBytes(StandardCharsets.UTF_8);
+                nBodiesServed.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Last-Modified", "Thu, 26 Sep 2024 00:00:00 GMT");
+                if (path.startsWith("/gzip/") && "gzip".equals(exchange.getRequestHeaders().getFirst(
+                        "Accept-Encoding"))) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (OutputStream out = new GZIPOutputStream(compressed)) {
+                        out.write(body);
+                    }
+                    body = compressed.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range != null && etag.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+                    int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                    exchange.getResponseHeaders().add("Content-Range",
+                            "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+                    body = Arrays.copyOfRange(body, start, body.length);
+                    exchange.sendResponseHeaders(206, body.length);
+                } else {
+                    exchange.sendResponseHeaders(200, body.length);
+                }
+                nBytesServed.addAndGet(body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
     // --- findOboVersion tests ---
 
     @Test
@@ -43,6 +127,22 @@ class OntologyDownloaderTest {
         assertNull(version);
     }
 
+    @Test
+    void findOboVersion_readsOnlyHeader(@TempDir Path tempDir) throws IOException {
+        // Malformed content after the header is never read
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL.replace(
+                "</owl:Ontology>", "</owl:Ontology>\n<owl:Class></owl:Malformed>"));
+        assertEquals("2024-09-26", OntologyDownloader.findOboVersion(clOwl));
+    }
+
+    @Test
+    void findOboVersion_fallsBackWhenVersionInfoHasNoDate(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL.replace(
+                "<owl:versionInfo>2024-09-26</owl:versionInfo>", "<owl:versionInfo>release</owl:versionInfo>").replace(
+                "releases/2024-09-26", "releases/2024-10-01"));
+        assertEquals("2024-10-01", OntologyDownloader.findOboVersion(clOwl));
+    }
+
     // --- OBO_PURLS tests ---
 
     @Test
@@ -51,4 +151,175 @@ class OntologyDownloaderTest {
         assertTrue(OntologyDownloader.OBO_PURLS.contains("http://purl.obolibrary.org/obo/cl.owl"));
         assertTrue(OntologyDownloader.OBO_PURLS.contains("http://purl.obolibrary.org/obo/ro.owl"));
     }
+
+    // --- updateDownloads tests ---
+
+    @Test
+    void updateDownloads_streamsConcurrentlyAndArchives(@TempDir Path tempDir) throws Exception {
+        String olderClOwl = OntologyTestFixtures.MINI_CL_OWL.replace("2024-09-26", "2024-01-01");
+        OntologyTestFixtures.writeOntology(tempDir, "cl.owl", olderClOwl);
+        served.put("/obo/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        served.put("/obo/ro.owl", OntologyTestFixtures.MINI_CL_OWL.replace("cl/releases", "ro/releases"));
+
+        OntologyDownloader.updateDownloads(List.of(url("/redirect/obo/cl.owl"), url("/obo/ro.owl")), tempDir, 2);
+
+        assertEquals(OntologyTestFixtures.MINI_CL_OWL, Files.readString(tempDir.resolve("cl.owl")));
+        assertEquals(olderClOwl, Files.readString(tempDir.resolve(".archive").resolve("cl-2024-01-01.owl")));
+        assertTrue(Files.exists(tempDir.resolve("ro.owl")));
+        assertFalse(Files.exists(tempDir.resolve("cl-new.owl")));
+    }
+
+    @Test
+    void updateDownloads_skipsUnchangedFiles(@TempDir Path tempDir) throws Exception {
+        served.put("/obo/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        List<String> urls = List.of(url("/obo/cl.owl"));
+
+        OntologyDownloader.updateDownloads(urls, tempDir, 2);
+        assertEquals(1, nBodiesServed.get());
+        OntologyDownloader.DownloadMetadata metadata = OntologyDownloader.readMetadata(tempDir.resolve(
+                OntologyDownloader.METADATA_FILE_NAME)).get(urls.get(0));
+        assertEquals("Thu, 26 Sep 2024 00:00:00 GMT", metadata.lastModified());
+        assertEquals(OntologyTestFixtures.MINI_CL_OWL.getBytes(StandardCharsets.UTF_8).length,
+                metadata.contentLength());
+
+        // Not modified
+        OntologyDownloader.updateDownloads(urls, tempDir, 2);
+        assertEquals(1, nBodiesServed.get());
+        assertFalse(Files.exists(tempDir.resolve("cl-new.owl")));
+
+        // Modified
+        String newerClOwl = OntologyTestFixtures.MINI_CL_OWL.replace("2024-09-26", "2025-01-01");
+        served.put("/obo/cl.owl", newerClOwl);
+        OntologyDownloader.updateDownloads(urls, tempDir, 2);
+        assertEquals(2, nBodiesServed.get());
+        assertEquals(newerClOwl, Files.readString(tempDir.resolve("cl.owl")));
+
+        // Downloaded again if the current file is missing
+        Files.delete(tempDir.resolve("cl.owl"));
+        OntologyDownloader.updateDownloads(urls, tempDir, 2);
+        assertEquals(3, nBodiesServed.get());
+    }
+
+    @Test
+    void updateDownloads_resumesPartialDownload(@TempDir Path tempDir) throws Exception {
+        served.put("/obo/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        byte[] body = OntologyTestFixtures.MINI_CL_OWL.getBytes(StandardCharsets.UTF_8);
+        Path storeDir = Files.createDirectories(tempDir.resolve(OntologyDownloader.STORE_DIR_NAME));
+        Files.write(storeDir.resolve("cl.owl.part"), Arrays.copyOf(body, 100));
+        Files.writeString(storeDir.resolve("cl.owl.part.json"),
+                "{\"etag\":\"\\\"" + OntologyTestFixtures.MINI_CL_OWL.hashCode() + "\\\"\"}");
+
+        OntologyDownloader.updateDownloads(List.of(url("/obo/cl.owl")), tempDir, 2);
+
+        assertEquals(body.length - 100, nBytesServed.get());
+        assertEquals(OntologyTestFixtures.MINI_CL_OWL, Files.readString(tempDir.resolve("cl.owl")));
+        String sha256 = PathUtilities.sha256(tempDir.resolve("cl.owl"));
+        assertTrue(Files.exists(storeDir.resolve(sha256 + ".owl")));
+        assertFalse(Files.exists(storeDir.resolve("cl.owl.part")));
+        assertFalse(Files.exists(storeDir.resolve("cl.owl.part.json")));
+        assertEquals(sha256, OntologyDownloader.readMetadata(tempDir.resolve(OntologyDownloader.METADATA_FILE_NAME)).get(
+                url("/obo/cl.owl")).sha256());
+    }
+
+    @Test
+    void updateDownloads_startsOverWhenPartialDownloadIsStale(@TempDir Path tempDir) throws Exception {
+        served.put("/obo/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        byte[] body = OntologyTestFixtures.MINI_CL_OWL.getBytes(StandardCharsets.UTF_8);
+        Path storeDir = Files.createDirectories(tempDir.resolve(OntologyDownloader.STORE_DIR_NAME));
+        Files.writeString(storeDir.resolve("cl.owl.part"), "stale content");
+        Files.writeString(storeDir.resolve("cl.owl.part.json"), "{\"etag\":\"\\\"stale\\\"\"}");
+
+        OntologyDownloader.updateDownloads(List.of(url("/obo/cl.owl")), tempDir, 2);
+
+        assertEquals(body.length, nBytesServed.get());
+        assertEquals(OntologyTestFixtures.MINI_CL_OWL, Files.readString(tempDir.resolve("cl.owl")));
+    }
+
+    @Test
+    void updateDownloads_storesIdenticalReleasesOnce(@TempDir Path tempDir) throws Exception {
+        served.put("/obo/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        List<String> urls = List.of(url("/obo/cl.owl"));
+        OntologyDownloader.updateDownloads(urls, tempDir, 2);
+
+        // Download again without the metadata, so the server sends the same file
+        Files.delete(tempDir.resolve(OntologyDownloader.METADATA_FILE_NAME));
+        OntologyDownloader.updateDownloads(urls, tempDir, 2);
+
+        assertEquals(2, nBodiesServed.get());
+        try (Stream<Path> storeFiles = Files.list(tempDir.resolve(OntologyDownloader.STORE_DIR_NAME))) {
+            assertEquals(1, storeFiles.count());
+        }
+        assertEquals(OntologyTestFixtures.MINI_CL_OWL, Files.readString(tempDir.resolve("cl.owl")));
+        assertFalse(Files.exists(tempDir.resolve("cl-new.owl")));
+    }
+
+    @Test
+    void updateDownloads_prunesUnlinkedStoreFiles(@TempDir Path tempDir) throws Exception {
+        String newerClOwl = OntologyTestFixtures.MINI_CL_OWL.replace("2024-09-26", "2025-01-01");
+        OntologyTestFixtures.writeOntology(tempDir, "cl.owl", newerClOwl);
+        served.put("/obo/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        served.put("/obo/ro.owl", OntologyTestFixtures.MINI_CL_OWL.replace("cl/releases", "ro/releases"));
+
+        // The download of cl.owl is not newer, so only ro.owl remains in the store
+        OntologyDownloader.updateDownloads(List.of(url("/obo/cl.owl"), url("/obo/ro.owl")), tempDir, 2);
+
+        assertEquals(newerClOwl, Files.readString(tempDir.resolve("cl.owl")));
+        Path storeDir = tempDir.resolve(OntologyDownloader.STORE_DIR_NAME);
+        try (Stream<Path> storeFiles = Files.list(storeDir)) {
+            assertEquals(List.of(storeDir.resolve(PathUtilities.sha256(tempDir.resolve("ro.owl")) + ".owl")),
+                    storeFiles.toList());
+        }
+
+        // Removing the current file releases its store file
+        Files.delete(tempDir.resolve("ro.owl"));
+        OntologyDownloader.pruneStore(storeDir);
+        try (Stream<Path> storeFiles = Files.list(storeDir)) {
+            assertEquals(0, storeFiles.count());
+        }
+    }
+
+    @Test
+    void updateDownloads_storesCompressedFiles(@TempDir Path tempDir) throws Exception {
+        String olderClOwl = OntologyTestFixtures.MINI_CL_OWL.replace("2024-09-26", "2024-01-01");
+        OntologyTestFixtures.writeOntology(tempDir, "cl.owl", olderClOwl);
+        served.put("/gzip/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        served.put("/obo/ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+
+        OntologyDownloader.updateDownloads(List.of(url("/gzip/cl.owl"), url("/obo/ro.owl")), tempDir, 2, true);
+
+        assertFalse(Files.exists(tempDir.resolve("cl.owl")));
+        assertTrue(Files.exists(tempDir.resolve(".archive").resolve("cl-2024-01-01.owl")));
+        for (String fileName : List.of("cl.owl.gz", "ro.owl.gz")) {
+            try (InputStream in = PathUtilities.newInputStream(tempDir.resolve(fileName))) {
+                assertEquals(OntologyTestFixtures.MINI_CL_OWL, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals("2024-09-26", OntologyDownloader.findOboVersion(tempDir.resolve("cl.owl.gz")));
+        assertEquals(PathUtilities.sha256(Files.writeString(tempDir.resolve("expected.txt"),
+                OntologyTestFixtures.MINI_CL_OWL)), OntologyDownloader.readMetadata(tempDir.resolve(
+                OntologyDownloader.METADATA_FILE_NAME)).get(url("/gzip/cl.owl")).sha256());
+    }
+
+    @Test
+    void updateDownloads_decompressesCompressedTransfer(@TempDir Path tempDir) throws Exception {
+        served.put("/gzip/cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+
+        OntologyDownloader.updateDownloads(List.of(url("/gzip/cl.owl")), tempDir, 2);
+
+        assertTrue(nBytesServed.get() < OntologyTestFixtures.MINI_CL_OWL.length());
+        assertEquals(OntologyTestFixtures.MINI_CL_OWL, Files.readString(tempDir.resolve("cl.owl")));
+    }
+
+    @Test
+    void updateDownloads_failsOnMissingFile(@TempDir Path tempDir) {
+        assertThrows(IOException.class, () -> OntologyDownloader.updateDownloads(List.of(url("/obo/go.owl")),
+                tempDir, 2));
+    }
+
+    @Test
+    void formatProgress_percentAndThroughput() {
+        assertEquals("50.0 MB (25%) at 25.0 MB/s", OntologyDownloader.formatProgress(50_000_000L, 200_000_000L,
+                2_000_000_000L));
+        assertEquals("1.5 MB at 1.5 MB/s", OntologyDownloader.formatProgress(1_500_000L, -1, 1_000_000_000L));
+    }
 }
@@ -1,14 +1,22 @@
 package gov.nih.nlm;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.w3c.dom.Document;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -189,4 +197,196 @@ class OntologyElementParserTest {
         assertTrue(maps.containsKey("macrophage"));
         assertTrue(maps.containsKey("ro"));
     }
+
+    // --- streamOntologyElements tests ---
+
+    @Test
+    void streamOntologyElements_miniCl(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        OntologyElementMap map = OntologyElementParser.streamOntologyElements(file);
+
+        assertEquals("Cell Ontology", map.title);
+        assertEquals("An ontology of cell types", map.description);
+        assertEquals(URI.create("http://purl.obolibrary.org/obo/cl.owl"), map.purl);
+        assertEquals(URI.create("http://purl.obolibrary.org/obo/cl/releases/2024-09-26/cl.owl"), map.versionIRI);
+        assertEquals(URI.create("http://purl.obolibrary.org/obo/CL_0000000"), map.root);
+        assertTrue(map.ids.contains("CL"));
+        assertTrue(map.ids.contains("RO"));
+        assertFalse(map.ids.contains("valid"));
+        assertEquals("macrophage", map.terms.get("CL_0000235").label);
+        assertEquals("develops from", map.terms.get("RO_0002202").label);
+        assertEquals(URI.create("http://purl.obolibrary.org/obo/CL_0000235"), map.terms.get("CL_0000235").purl);
+    }
+
+    @Test
+    void streamOntologyElements_matchesDocument(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        assertSameElementMap(OntologyElementParser.parseOntologyDocument(OntologyElementParser.parseXmlFile(file.toFile())),
+                OntologyElementParser.streamOntologyElements(file));
+    }
+
+    @Test
+    void streamOntologyElements_readsCompressedFile(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path compressedFile = OntologyTestFixtures.writeCompressedOntology(tempDir, "cl-copy.owl.gz",
+                OntologyTestFixtures.MINI_CL_OWL);
+        assertSameElementMap(OntologyElementParser.streamOntologyElements(file),
+                OntologyElementParser.streamOntologyElements(compressedFile));
+        assertSameElementMap(OntologyElementParser.streamOntologyElements(file),
+                OntologyElementParser.parseOntologyDocument(OntologyElementParser.parseXmlFile(compressedFile.toFile())));
+        assertTrue(OntologyElementParser.parseOntologyElements(List.of(compressedFile), 1).containsKey("cl-copy"));
+    }
+
+    @Test
+    void streamOntologyElements_matchesDocumentForNestedElements(@TempDir Path tempDir) throws IOException {
+        // The outer class has no label of its own before the nested class, so its first
+        // label is that of the nested class, and the repeated class keeps its last label
+        String owl = """
+                <?xml version="1.0"?>
+                <rdf:RDF xmlns:owl="http://www.w3.org/2002/07/owl#"
+                     xmlns:rdf="http://www.w3.org/1999/02/22-rdf-syntax-ns#"
+                     xmlns:rdfs="http://www.w3.org/2000/01/rdf-schema#">
+                    <owl:Class rdf:about="http://purl.obolibrary.org/obo/CL_0000001">
+                        <owl:equivalentClass>
+                            <owl:Class rdf:about="http://purl.obolibrary.org/obo/CL_0000002">
+                                <rdfs:label>inner <![CDATA[cell]]></rdfs:label>
+                            </owl:Class>
+                        </owl:equivalentClass>
+                        <rdfs:label>outer cell</rdfs:label>
+                    </owl:Class>
+                    <owl:Class rdf:about="http://purl.obolibrary.org/obo/CL_0000003">
+                        <rdfs:label>first</rdfs:label>
+                    </owl:Class>
+                    <owl:Class rdf:about="http://purl.obolibrary.org/obo/CL_0000003"/>
+                    <owl:Class rdf:about="http://purl.obolibrary.org/obo/CL_0000003">
+                        <rdfs:label>second</rdfs:label>
+                    </owl:Class>
+                </rdf:RDF>
+                """;
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "nested.owl", owl);
+        OntologyElementMap map = OntologyElementParser.streamOntologyElements(file);
+        assertEquals("inner cell", map.terms.get("CL_0000001").label);
+        assertEquals("inner cell", map.terms.get("CL_0000002").label);
+        assertEquals("second", map.terms.get("CL_0000003").label);
+        assertNull(map.purl);
+        assertSameElementMap(OntologyElementParser.parseOntologyDocument(OntologyElementParser.parseXmlFile(file.toFile())),
+                map);
+    }
+
+    @Test
+    void parseOntologyElements_miniCl(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Map<String, OntologyElementMap> maps = OntologyElementParser.parseOntologyElements(List.of(file));
+
+        assertEquals(1, maps.size());
+        assertEquals("Cell Ontology", maps.get("cl").title);
+    }
+
+    @Test
+    void parseOntologyElements_parallelMatchesSerial(@TempDir Path tempDir) throws IOException {
+        List<Path> files = List.of(OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL),
+                OntologyTestFixtures.writeOntology(tempDir, "cl-copy.owl", OntologyTestFixtures.MINI_CL_OWL),
+                OntologyTestFixtures.writeOntology(tempDir, "cl-other.owl", OntologyTestFixtures.MINI_CL_OWL));
+        Map<String, OntologyElementMap> serialMaps = OntologyElementParser.parseOntologyElements(files, 1);
+        Map<String, OntologyElementMap> parallelMaps = OntologyElementParser.parseOntologyElements(files, 3);
+
+        assertEquals(serialMaps.keySet(), parallelMaps.keySet());
+        for (String key : serialMaps.keySet()) {
+            assertSameElementMap(serialMaps.get(key), parallelMaps.get(key));
+        }
+    }
+
+    @Test
+    void loadOntologyElements_parsesFilesWithoutSnapshotConcurrently(@TempDir Path tempDir) throws IOException {
+        List<Path> files = List.of(OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL),
+                OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL));
+
+        // Each parse waits until both files are parsing, which only happens on more than one worker
+        CountDownLatch parsing = new CountDownLatch(files.size());
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        Map<String, OntologyElementMap> maps = OntologyElementParser.loadOntologyElements(files, 2, file -> {
+            threadNames.add(Thread.currentThread().getName());
+            parsing.countDown();
+            try {
+                assertTrue(parsing.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return OntologyElementParser.streamOntologyElements(file);
+        });
+
+        assertEquals(2, threadNames.size());
+        for (Path file : files) {
+            assertTrue(Files.isRegularFile(PathUtilities.getCacheFile(file, ".oem",
+                    OntologyElementParser.SNAPSHOT_VERSION)));
+        }
+
+        // Elements are still loaded lazily, from the snapshots, and no file is parsed again
+        assertFalse(((LazyOntologyElementMaps) maps).isLoaded("cl"));
+        assertEquals("develops from", maps.get("ro").terms.get("RO_0002202").label);
+        OntologyElementParser.loadOntologyElements(files, 2, file -> {
+            throw new AssertionError("Parsed " + file + " again");
+        });
+    }
+
+    @Test
+    void writeOntologyElementSnapshot_roundTrip(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        OntologyElementMap expected = OntologyElementParser.streamOntologyElements(file);
+        expected.description = null;
+        Path snapshotFile = tempDir.resolve("cl.oem");
+
+        OntologyElementParser.writeOntologyElementSnapshot(expected, snapshotFile);
+        OntologyElementMap actual = OntologyElementParser.readOntologyElementSnapshot(snapshotFile);
+
+        assertSameElementMap(expected, actual);
+        assertNull(actual.description);
+    }
+
+    @Test
+    void readOntologyElementSnapshot_truncatedThrows(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path snapshotFile = tempDir.resolve("cl.oem");
+        OntologyElementParser.writeOntologyElementSnapshot(OntologyElementParser.streamOntologyElements(file),
+                snapshotFile);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        Files.write(snapshotFile, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> OntologyElementParser.readOntologyElementSnapshot(snapshotFile));
+    }
+
+    @Test
+    void loadOntologyElements_writesThenReadsSnapshot(@TempDir Path tempDir) throws IOException {
+        Path file = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        OntologyElementMap expected = OntologyElementParser.streamOntologyElements(file);
+
+        assertSameElementMap(expected, OntologyElementParser.loadOntologyElements(file));
+        Path snapshotFile = PathUtilities.getCacheFile(file, ".oem", OntologyElementParser.SNAPSHOT_VERSION);
+        assertTrue(Files.isRegularFile(snapshotFile));
+
+        // A corrupt snapshot is replaced
+        Files.write(snapshotFile, new byte[]{0, 1, 2});
+        assertSameElementMap(expected, OntologyElementParser.loadOntologyElements(file));
+        assertSameElementMap(expected, OntologyElementParser.readOntologyElementSnapshot(snapshotFile));
+
+        // A snapshot of another version is rejected
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        bytes[7]++;
+        Path otherVersionFile = Files.write(tempDir.resolve("cl-other.oem"), bytes);
+        assertThrows(IOException.class, () -> OntologyElementParser.readOntologyElementSnapshot(otherVersionFile));
+    }
+
+    private static void assertSameElementMap(OntologyElementMap expected, OntologyElementMap actual) {
+        assertEquals(expected.title, actual.title);
+        assertEquals(expected.description, actual.description);
+        assertEquals(expected.purl, actual.purl);
+        assertEquals(expected.versionIRI, actual.versionIRI);
+        assertEquals(expected.root, actual.root);
+        assertEquals(expected.ids, actual.ids);
+        assertEquals(expected.terms.keySet(), actual.terms.keySet());
+        for (String term : expected.terms.keySet()) {
+            assertEquals(expected.terms.get(term).purl, actual.terms.get(term).purl);
+            assertEquals(expected.terms.get(term).label, actual.terms.get(term).label);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package gov.nih.nlm;
 
+import com.arangodb.ArangoCollection;
 import com.arangodb.ArangoDatabase;
 import com.arangodb.ArangoEdgeCollection;
 import com.arangodb.ArangoGraph;
@@ -8,13 +9,16 @@ import com.arangodb.entity.BaseDocument;
 import com.arangodb.entity.BaseEdgeDocument;
 import org.apache.commons.io.FileUtils;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -137,6 +141,69 @@ class OntologyGraphBuilderTest {
         assertTrue(vtuple.isValidVertex());
     }
 
+    @Test
+    void createVTuple_equalForRepeatedNodes() {
+        var node = NodeFactory.createURI("http://purl.obolibrary.org/obo/CL_0000576");
+        OntologyGraphBuilder.VTuple vtuple = OntologyGraphBuilder.createVTuple(node);
+
+        assertEquals(vtuple, OntologyGraphBuilder.createVTuple(NodeFactory.createURI(
+                "http://purl.obolibrary.org/obo/CL_0000576")));
+    }
+
+    @Test
+    void parseVTuple_matchesParseVTupleFromURI() {
+        List<String> uris = List.of("http://purl.obolibrary.org/obo/CL_0000235",
+                "https://purl.obolibrary.org/obo/CL_0000235",
+                "http://purl.obolibrary.org/obo/CL_0000235/",
+                "http://purl.obolibrary.org/obo//CL_0000235",
+                "http://purl.obolibrary.org/obo/CL_0000235#fragment",
+                "http://purl.obolibrary.org/obo/CL_0000235#frag#ment",
+                "http://purl.obolibrary.org/obo/CL_0000235?query",
+                "http://purl.obolibrary.org/obo/CL_",
+                "http://purl.obolibrary.org/obo/CL__",
+                "http://purl.obolibrary.org/obo/_0000235",
+                "http://purl.obolibrary.org/obo/CL_0000235_",
+                "http://purl.obolibrary.org/obo/CL__0000235",
+                "http://purl.obolibrary.org/obo/_",
+                "http://purl.obolibrary.org/obo/CL:0000235",
+                "http://purl.obolibrary.org/obo/CL:0000235:",
+                "http://purl.obolibrary.org/obo/CL:0000235:1",
+                "http://purl.obolibrary.org/obo/a_b:c",
+                "http://purl.obolibrary.org/obo/CL%5F0000235",
+                "http://purl.obolibrary.org/obo/pcl/CS201910150_c4",
+                "http://identifiers.org/ensembl/ENSG00000139618",
+                "http://purl.obolibrary.org",
+                "http://purl.obolibrary.org/",
+                "http:///CL_0000235",
+                "http://user@purl.obolibrary.org/obo/CL_0000235",
+                "http://purl.obolibrary.org:8080/obo/CL_0000235",
+                "http://purl.obolibrary.org/obo/CL 0000235",
+                "http://www.w3.org/2000/01/rdf-schema#subClassOf",
+                "http://www.ebi.ac.uk/efo/EFO_0000001",
+                "urn:CL_0000235",
+                "mailto:CL_0000235");
+        for (String uri : uris) {
+            assertEquals(OntologyGraphBuilder.parseVTupleFromURI(uri), OntologyGraphBuilder.parseVTuple(uri), uri);
+        }
+    }
+
+    @Test
+    void parseVTuple_matchesParseVTupleFromURIForCreateVTupleCases() {
+        // Each URI of the createVTuple tests above
+        List<String> uris = List.of("http://purl.obolibrary.org/obo/CL_0000235",
+                "http://purl.obolibrary.org/obo/GO_0031268",
+                "http://purl.obolibrary.org/obo/UBERON_0000061",
+                "http://purl.obolibrary.org/obo/BFO_0000002",
+                "http://www.w3.org/2000/01/rdf-schema#subClassOf",
+                "http://purl.obolibrary.org/obo/NCBITaxon_9606",
+                "http://purl.obolibrary.org/obo/HP_0000001",
+                "http://purl.obolibrary.org/obo/MONDO_0000001",
+                "http://purl.obolibrary.org/obo/CL_0000576");
+        for (String uri : uris) {
+            assertEquals(OntologyGraphBuilder.parseVTupleFromURI(uri), OntologyGraphBuilder.parseVTuple(uri), uri);
+        }
+    }
+
     // --- parsePredicate tests (no ArangoDB needed) ---
 
     @Test
@@ -253,6 +320,30 @@ class OntologyGraphBuilderTest {
         assertEquals("LABEL", OntologyGraphBuilder.normalizeEdgeLabel("label"));
     }
 
+    // --- isDeprecated tests ---
+
+    @Test
+    void isDeprecated_deprecatedAttribute() {
+        BaseDocument doc = new BaseDocument("0000001");
+        doc.addAttribute("deprecated", "true");
+        assertTrue(OntologyGraphBuilder.isDeprecated(doc));
+    }
+
+    @Test
+    void isDeprecated_obsoleteLabel() {
+        BaseDocument doc = new BaseDocument("0000001");
+        doc.addAttribute("label", "obsolete macrophage");
+        assertTrue(OntologyGraphBuilder.isDeprecated(doc));
+    }
+
+    @Test
+    void isDeprecated_currentTerm() {
+        BaseDocument doc = new BaseDocument("0000235");
+        doc.addAttribute("label", "macrophage");
+        doc.addAttribute("deprecated", "false");
+        assertFalse(OntologyGraphBuilder.isDeprecated(doc));
+    }
+
     // --- getDocumentCollectionName tests ---
 
     @Test
@@ -297,6 +388,516 @@ class OntologyGraphBuilderTest {
         assertNull(OntologyGraphBuilder.getDocumentKey("CL0000235"));
     }
 
+    // --- isVertexInserted tests ---
+
+    @Test
+    void isVertexInserted_insertedVertex() {
+        Map<String, Set<String>> insertedVertexKeys = Map.of("CL", Set.of("0000235"));
+        assertTrue(OntologyGraphBuilder.isVertexInserted(insertedVertexKeys, "CL/0000235"));
+    }
+
+    @Test
+    void isVertexInserted_missingKey() {
+        Map<String, Set<String>> insertedVertexKeys = Map.of("CL", Set.of("0000235"));
+        assertFalse(OntologyGraphBuilder.isVertexInserted(insertedVertexKeys, "CL/0000576"));
+    }
+
+    @Test
+    void isVertexInserted_missingCollection() {
+        Map<String, Set<String>> insertedVertexKeys = Map.of("CL", Set.of("0000235"));
+        assertFalse(OntologyGraphBuilder.isVertexInserted(insertedVertexKeys, "GO/0031268"));
+    }
+
+    // --- constructGraph tests (no ArangoDB needed) ---
+
+    /**
+     * Reference path for constructGraph: construct vertices from each subject and object which contain a valid id,
+     * in one pass over the triples.
+     */
+    private static void constructVertices(Collection<Triple> triples,
+                                          Map<String, Map<String, BaseDocument>> vertexDocuments) {
+        for (Triple triple : triples) {
+            for (var n : List.of(triple.getSubject(), triple.getObject())) {
+                OntologyGraphBuilder.VTuple vtuple = OntologyGraphBuilder.createVTuple(n);
+                if (vtuple.isValidVertex()) {
+                    OntologyGraphBuilder.constructVertex(vtuple, vertexDocuments);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reference path for constructGraph: update the vertex of each subject which contains a valid id using each
+     * object literal, in a second pass over the triples.
+     */
+    private static void updateVertices(Collection<Triple> triples,
+                                       Map<String, OntologyElementMap> ontologyElementMaps,
+                                       Map<String, Map<String, BaseDocument>> vertexDocuments) {
+        for (Triple triple : triples) {
+            if (!triple.getObject().isLiteral()) continue;
+            OntologyGraphBuilder.VTuple vtuple = OntologyGraphBuilder.createVTuple(triple.getSubject());
+            if (vtuple.isValidVertex()) {
+                String attribute = OntologyGraphBuilder.parsePredicate(ontologyElementMaps, triple.getPredicate());
+                OntologyGraphBuilder.updateVertex(vertexDocuments.get(vtuple.id()).get(vtuple.number()), attribute,
+                        triple.getObject().getLiteralValue().toString());
+            }
+        }
+    }
+
+    /**
+     * Reference path for constructGraph: construct an edge between each subject and object which contain a valid
+     * id, in a third pass over the triples.
+     */
+    private static HashSet<String> constructEdges(Collection<Triple> triples,
+                                                  Map<String, OntologyElementMap> ontologyElementMaps,
+                                                  Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
+        HashSet<String> edgeLabels = new HashSet<>();
+        for (Triple triple : triples) {
+            OntologyGraphBuilder.VTuple subjectVTuple = OntologyGraphBuilder.createVTuple(triple.getSubject());
+            OntologyGraphBuilder.VTuple objectVTuple = OntologyGraphBuilder.createVTuple(triple.getObject());
+            if (!subjectVTuple.isValidVertex() || !objectVTuple.isValidVertex()) continue;
+            String label = OntologyGraphBuilder.parsePredicate(ontologyElementMaps, triple.getPredicate());
+            edgeLabels.add(label);
+            OntologyGraphBuilder.constructEdge(subjectVTuple, objectVTuple, label, edgeDocuments);
+        }
+        return edgeLabels;
+    }
+
+    @Test
+    void insertDocuments_keepsAsyncPathWithCheckpoint(@TempDir Path tempDir) throws IOException {
+        Map<String, String> env = Map.of("ARANGO_DB_HOST", "localhost", "ARANGO_DB_PORT", "8529", "ARANGO_DB_USER",
+                "root", "ARANGO_DB_PASSWORD", "");
+        List<String> asyncKeys = new ArrayList<>();
+        ArangoDbUtilities stubArangoDbUtilities = new ArangoDbUtilities(env) {
+            @Override
+            public <T extends BaseDocument> List<BatchReport> insertDocuments(ArangoCollection collection,
+                                                                              List<T> documents, int batchSize) {
+                throw new AssertionError("Documents were inserted synchronously");
+            }
+
+            @Override
+            public <T extends BaseDocument> List<BatchReport> insertDocumentsAsync(ArangoCollection collection,
+                                                                                   List<T> documents, int batchSize,
+                                                                                   int maxInFlight,
+                                                                                   LoadCheckpoint checkpoint) {
+                documents.forEach(doc -> asyncKeys.add(doc.getKey()));
+                return List.of();
+            }
+        };
+        ArangoCollection collection = stubArangoDbUtilities.arangoDB.db("test").collection("CL");
+        List<BaseDocument> docs = List.of(new BaseDocument("0000576"), new BaseDocument("0000000"),
+                new BaseDocument("0000235"));
+
+        // The documents are sorted, so that each journal batch is the same in each run, and sent asynchronously
+        try (LoadCheckpoint checkpoint = new LoadCheckpoint(tempDir.resolve("test.journal"), "abc", false)) {
+            OntologyGraphBuilder.insertDocuments(stubArangoDbUtilities, collection, docs, 2, checkpoint);
+        }
+        assertTrue(stubArangoDbUtilities.maxInFlight > 1);
+        assertEquals(List.of("0000000", "0000235", "0000576"), asyncKeys);
+    }
+
+    @Test
+    void constructGraph_matchesThreePhases(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path roOwl = OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Map<String, OntologyElementMap> ontologyElementMaps = OntologyElementParser.parseOntologyElements(List.of(clOwl,
+                roOwl));
+        CompactTripleStore triples = OntologyTripleParser.collectCompactTriples(List.of(clOwl), false, 1);
+
+        // Construct, and update vertices, and construct edges in three passes
+        Map<String, Map<String, BaseDocument>> expectedVertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> expectedEdgeDocuments = new HashMap<>();
+        constructVertices(triples, expectedVertexDocuments);
+        updateVertices(triples, ontologyElementMaps, expectedVertexDocuments);
+        HashSet<String> expectedEdgeLabels = constructEdges(triples, ontologyElementMaps, expectedEdgeDocuments);
+
+        // Construct the same in a single pass, without, and with cached VTuples
+        Map<String, Map<String, BaseDocument>> listVertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> listEdgeDocuments = new HashMap<>();
+        HashSet<String> listEdgeLabels = OntologyGraphBuilder.constructGraph(new ArrayList<>(triples),
+                ontologyElementMaps, listVertexDocuments, listEdgeDocuments);
+        assertEquals(expectedEdgeLabels, listEdgeLabels);
+        assertSameDocuments(expectedVertexDocuments, expectedEdgeDocuments, listVertexDocuments, listEdgeDocuments);
+
+        Map<String, Map<String, BaseDocument>> vertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> edgeDocuments = new HashMap<>();
+        HashSet<String> edgeLabels = OntologyGraphBuilder.constructGraph(triples, ontologyElementMaps,
+                vertexDocuments, edgeDocuments);
+
+        assertEquals(expectedEdgeLabels, edgeLabels);
+        assertSameDocuments(expectedVertexDocuments, expectedEdgeDocuments, vertexDocuments, edgeDocuments);
+
+        // Spot check the macrophage vertex and edges
+        assertEquals("macrophage", vertexDocuments.get("CL").get("0000235").getAttribute("label"));
+        assertEquals("DEVELOPS_FROM", edgeDocuments.get("CL-CL").get("0000235-0000576").getAttribute("Label"));
+        assertEquals("CAPABLE_OF", edgeDocuments.get("CL-GO").get("0000235-0031268").getAttribute("Label"));
+    }
+
+    /**
+     * Assert vertex and edge documents, and the order of their keys, are the same.
+     */
+    private static void assertSameDocuments(Map<String, Map<String, BaseDocument>> expectedVertexDocuments,
+                                            Map<String, Map<String, BaseEdgeDocument>> expectedEdgeDocuments,
+                                            Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                            Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
+        assertEquals(new ArrayList<>(expectedVertexDocuments.keySet()), new ArrayList<>(vertexDocuments.keySet()));
+        for (String id : expectedVertexDocuments.keySet()) {
+            assertEquals(new ArrayList<>(expectedVertexDocuments.get(id).keySet()),
+                    new ArrayList<>(vertexDocuments.get(id).keySet()));
+            for (String number : expectedVertexDocuments.get(id).keySet()) {
+                assertEquals(expectedVertexDocuments.get(id).get(number).getProperties(),
+                        vertexDocuments.get(id).get(number).getProperties());
+            }
+        }
+        assertEquals(new ArrayList<>(expectedEdgeDocuments.keySet()), new ArrayList<>(edgeDocuments.keySet()));
+        for (String idPair : expectedEdgeDocuments.keySet()) {
+            assertEquals(new ArrayList<>(expectedEdgeDocuments.get(idPair).keySet()),
+                    new ArrayList<>(edgeDocuments.get(idPair).keySet()));
+            for (String key : expectedEdgeDocuments.get(idPair).keySet()) {
+                BaseEdgeDocument expected = expectedEdgeDocuments.get(idPair).get(key);
+                BaseEdgeDocument actual = edgeDocuments.get(idPair).get(key);
+                assertEquals(expected.getFrom(), actual.getFrom());
+                assertEquals(expected.getTo(), actual.getTo());
+                assertEquals(expected.getProperties(), actual.getProperties());
+            }
+        }
+    }
+
+    @Test
+    void constructGraph_parallelMatchesSequential(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path uberonOwl = OntologyTestFixtures.writeOntology(tempDir, "uberon.owl",
+                OntologyTestFixtures.MINI_CL_OWL.replace("CL_", "UBERON_"));
+        Path roOwl = OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Map<String, OntologyElementMap> ontologyElementMaps = OntologyElementParser.parseOntologyElements(List.of(clOwl,
+                roOwl));
+        CompactTripleStore triples = OntologyTripleParser.collectCompactTriples(List.of(clOwl, uberonOwl), false, 1);
+
+        // Add triples for which the last label, and literal wins
+        var macrophage = NodeFactory.createURI("http://purl.obolibrary.org/obo/CL_0000235");
+        var monocyte = NodeFactory.createURI("http://purl.obolibrary.org/obo/CL_0000576");
+        var subClassOf = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#subClassOf");
+        var label = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#label");
+        triples.add(Triple.create(macrophage, subClassOf, monocyte));
+        triples.add(Triple.create(macrophage, label,
+                NodeFactory.createLiteralString("histiocyte")));
+
+        Map<String, Map<String, BaseDocument>> expectedVertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> expectedEdgeDocuments = new HashMap<>();
+        HashSet<String> expectedEdgeLabels = OntologyGraphBuilder.constructGraph(triples, ontologyElementMaps,
+                expectedVertexDocuments, expectedEdgeDocuments);
+        assertEquals("SUB_CLASS_OF", expectedEdgeDocuments.get("CL-CL").get("0000235-0000576").getAttribute("Label"));
+        assertEquals("histiocyte", expectedVertexDocuments.get("CL").get("0000235").getAttribute("label"));
+
+        for (int parallelism : List.of(1, 2, 3, 8)) {
+            Map<String, Map<String, BaseDocument>> vertexDocuments = new HashMap<>();
+            Map<String, Map<String, BaseEdgeDocument>> edgeDocuments = new HashMap<>();
+            HashSet<String> edgeLabels = OntologyGraphBuilder.constructGraph(triples, ontologyElementMaps,
+                    vertexDocuments, edgeDocuments, parallelism);
+
+            assertEquals(expectedEdgeLabels, edgeLabels);
+            assertSameDocuments(expectedVertexDocuments, expectedEdgeDocuments, vertexDocuments, edgeDocuments);
+        }
+    }
+
+    // --- addContentHashes tests ---
+
+    @Test
+    void addContentHashes_independentOfAttributeOrder() {
+        BaseDocument first = new BaseDocument("0000235");
+        first.addAttribute("label", "macrophage");
+        first.addAttribute("hasExactSynonym", "histiocyte");
+        BaseDocument second = new BaseDocument("0000235");
+        second.addAttribute("hasExactSynonym", "histiocyte");
+        second.addAttribute("label", "macrophage");
+        second.addAttribute(ArangoDbUtilities.CONTENT_HASH, "stale");
+
+        OntologyGraphBuilder.addContentHashes(Map.of("CL", Map.of("0000235", first), "GO", Map.of("0000235",
+                second)));
+
+        assertEquals(64, ((String) first.getAttribute(ArangoDbUtilities.CONTENT_HASH)).length());
+        assertEquals(first.getAttribute(ArangoDbUtilities.CONTENT_HASH), second.getAttribute(
+                ArangoDbUtilities.CONTENT_HASH));
+    }
+
+    @Test
+    void addContentHashes_changesWithContent() {
+        BaseDocument doc = new BaseDocument("0000235");
+        doc.addAttribute("label", "macrophage");
+        String contentHash = ArangoDbUtilities.computeContentHash(doc);
+        doc.updateAttribute("label", "histiocyte");
+        assertNotEquals(contentHash, ArangoDbUtilities.computeContentHash(doc));
+
+        // Edge endpoints are part of the content
+        BaseEdgeDocument edge = new BaseEdgeDocument("0000235-0000113", "CL/0000235", "CL/0000113");
+        BaseEdgeDocument otherEdge = new BaseEdgeDocument("0000235-0000113", "CL/0000235", "CL/0000576");
+        assertNotEquals(ArangoDbUtilities.computeContentHash(edge), ArangoDbUtilities.computeContentHash(otherEdge));
+    }
+
+    // --- Selective rebuild tests ---
+
+    @Test
+    void getOptionValues_commaSeparated() {
+        String[] args = {"--incremental", "--ontologies", "mondo-simple, hsapdv,"};
+        assertEquals(List.of("mondo-simple", "hsapdv"), OntologyGraphBuilder.getOptionValues(args, "--ontologies"));
+        assertEquals(List.of(), OntologyGraphBuilder.getOptionValues(args, "--resume"));
+        assertThrows(IllegalArgumentException.class, () -> OntologyGraphBuilder.getOptionValues(new String[]{
+                "--ontologies"}, "--ontologies"));
+    }
+
+    @Test
+    void selectOntologyFiles_byStem() {
+        List<Path> files = List.of(Paths.get("data/obo/cl.owl"), Paths.get("data/obo/mondo-simple.owl"), Paths.get(
+                "data/obo/taxslim.owl"));
+        List<Path> selectedFiles = OntologyGraphBuilder.selectOntologyFiles(files, List.of("mondo-simple", "taxslim"));
+        assertEquals(List.of(files.get(1), files.get(2)), selectedFiles);
+        assertEquals(Set.of("MONDO", "NCBITAXON"), OntologyGraphBuilder.getSelectedSources(selectedFiles));
+        assertThrows(IllegalArgumentException.class, () -> OntologyGraphBuilder.selectOntologyFiles(files, List.of(
+                "hsapdv")));
+    }
+
+    @Test
+    void retainSelectedCollections_bySubjectSource() {
+        Map<String, Map<String, BaseDocument>> vertexDocuments = new HashMap<>();
+        for (String id : List.of("CL", "MONDO", "NCBITaxon", "UBERON")) {
+            vertexDocuments.put(id, new HashMap<>(Map.of("0000001", new BaseDocument("0000001"))));
+        }
+        Map<String, Map<String, BaseEdgeDocument>> edgeDocuments = new HashMap<>();
+        for (String idPair : List.of("CL-MONDO", "MONDO-UBERON", "MONDO-MONDO", "NCBITaxon-NCBITaxon", "UBERON-CL")) {
+            edgeDocuments.put(idPair, new HashMap<>());
+        }
+
+        OntologyGraphBuilder.retainSelectedCollections(Set.of("MONDO", "NCBITAXON"), vertexDocuments, edgeDocuments);
+
+        assertEquals(Set.of("MONDO", "NCBITaxon"), vertexDocuments.keySet());
+        assertEquals(Set.of("MONDO-UBERON", "MONDO-MONDO", "NCBITaxon-NCBITaxon"), edgeDocuments.keySet());
+    }
+
+    // --- Delta tests ---
+
+    @Test
+    void planDelta_replacesAffectedAndRemovesStale(@TempDir Path tempDir) throws IOException {
+        Path archiveDir = Files.createDirectories(tempDir.resolve(".archive"));
+        Path archivedOwl = OntologyTestFixtures.writeOntology(archiveDir, "cl-2024-09-26.owl",
+                OntologyTestFixtures.MINI_CL_OWL);
+        String currentContent = OntologyTestFixtures.MINI_CL_OWL.replace("<rdfs:label>monocyte</rdfs:label>",
+                "<rdfs:label>classical monocyte</rdfs:label>").replace(
+                "<rdfs:label>mononuclear phagocyte</rdfs:label>",
+                "<rdfs:label>obsolete mononuclear phagocyte</rdfs:label>").replace(
+                "<owl:onProperty rdf:resource=\"&obo;RO_0002215\"/>",
+                "<owl:onProperty rdf:resource=\"&obo;RO_0002202\"/>");
+        assertNotEquals(OntologyTestFixtures.MINI_CL_OWL, currentContent);
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", currentContent);
+        Path roOwl = OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Map<String, OntologyElementMap> ontologyElementMaps = OntologyElementParser.parseOntologyElements(List.of(clOwl,
+                roOwl));
+        List<Triple> currentTriples = OntologyTripleParser.collectTriplesFromFile(clOwl, false);
+        assertEquals(archivedOwl, OntologyTripleDelta.findArchivedFile(clOwl));
+        OntologyTripleDelta.Delta delta = OntologyTripleDelta.computeDelta(archivedOwl, clOwl);
+
+        OntologyGraphBuilder.DeltaPlan plan = OntologyGraphBuilder.planDelta(delta, currentTriples,
+                ontologyElementMaps);
+
+        // The relabeled monocyte, and macrophage, whose capability changed, are replaced
+        assertEquals(Set.of("0000235", "0000576"), plan.verticesToReplace().get("CL").keySet());
+        assertEquals("classical monocyte", plan.verticesToReplace().get("CL").get("0000576").getAttribute("label"));
+        assertEquals("DEVELOPS_FROM", plan.edgesToReplace().get("CL-GO").get("0000235-0031268").getAttribute(
+                "Label"));
+        assertFalse(plan.edgesToReplace().containsKey("CL-CL") && plan.edgesToReplace().get("CL-CL").containsKey(
+                "0000113-0000000"));
+
+        // The now obsolete mononuclear phagocyte, and its edges are removed
+        assertEquals(Map.of(), plan.verticesWithoutTriples());
+        assertEquals(Map.of("CL", Set.of("0000113")), plan.verticesToRemove());
+        assertEquals(Map.of("CL-CL", Set.of("0000113-0000000")), plan.edgesToRemove());
+    }
+
+    @Test
+    void planDelta_matchesFullConstruction(@TempDir Path tempDir) throws IOException {
+        Path archiveDir = Files.createDirectories(tempDir.resolve(".archive"));
+        Path archivedOwl = OntologyTestFixtures.writeOntology(archiveDir, "cl-2024-09-26.owl",
+                OntologyTestFixtures.MINI_CL_OWL);
+        String currentContent = OntologyTestFixtures.MINI_CL_OWL.replace("<rdfs:label>monocyte</rdfs:label>",
+                "<rdfs:label>classical monocyte</rdfs:label>\n<rdfs:subClassOf rdf:resource=\"&obo;CL_0000999\"/>").replace(
+                "<rdfs:label>mononuclear phagocyte</rdfs:label>",
+                "<rdfs:label>obsolete mononuclear phagocyte</rdfs:label>").replace(
+                "<rdfs:label>macrophage</rdfs:label>",
+                "<rdfs:label>macrophage</rdfs:label>\n<rdfs:subClassOf rdf:resource=\"&obo;CL_0000145\"/>");
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", currentContent);
+        Path roOwl = OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Map<String, OntologyElementMap> ontologyElementMaps = OntologyElementParser.parseOntologyElements(List.of(clOwl,
+                roOwl));
+        List<Triple> archivedTriples = OntologyTripleParser.collectTriplesFromFile(archivedOwl, false);
+        List<Triple> currentTriples = OntologyTripleParser.collectTriplesFromFile(clOwl, false);
+
+        // Apply the plan to the documents stored by a full construction of the archived version
+        Map<String, Map<String, BaseDocument>> vertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> edgeDocuments = new HashMap<>();
+        OntologyGraphBuilder.constructGraph(archivedTriples, ontologyElementMaps, vertexDocuments, edgeDocuments);
+        retainStoredDocuments(vertexDocuments, edgeDocuments);
+        OntologyGraphBuilder.DeltaPlan plan = OntologyGraphBuilder.planDelta(OntologyTripleDelta.computeDelta(
+                archivedTriples, currentTriples), currentTriples, ontologyElementMaps);
+        applyPlan(plan, vertexDocuments, edgeDocuments);
+        retainStoredDocuments(vertexDocuments, edgeDocuments);
+
+        // Compare with the documents stored by a full construction of the current version
+        Map<String, Map<String, BaseDocument>> expectedVertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> expectedEdgeDocuments = new HashMap<>();
+        OntologyGraphBuilder.constructGraph(currentTriples, ontologyElementMaps, expectedVertexDocuments,
+                expectedEdgeDocuments);
+        retainStoredDocuments(expectedVertexDocuments, expectedEdgeDocuments);
+        assertEquals(getStoredProperties(expectedVertexDocuments), getStoredProperties(vertexDocuments));
+        assertEquals(getStoredProperties(expectedEdgeDocuments), getStoredProperties(edgeDocuments));
+
+        // The new object vertex, and the edge to it, are written, but not the deprecated object vertex
+        assertEquals(Map.of("CL", Set.of("0000145")), Map.of("CL", plan.verticesToInsert().get("CL").keySet()));
+        assertTrue(edgeDocuments.get("CL-CL").containsKey("0000235-0000145"));
+        assertFalse(vertexDocuments.get("CL").containsKey("0000999"));
+    }
+
+    @Test
+    void planDelta_keepsTermsReferencedByOtherOntologies(@TempDir Path tempDir) throws IOException {
+        Path archiveDir = Files.createDirectories(tempDir.resolve(".archive"));
+        String archivedContent = OntologyTestFixtures.MINI_CL_OWL.replace("<owl:Class rdf:about=\"&obo;CL_0000999\">",
+                """
+                        <owl:Class rdf:about="&obo;CL_0000001">
+                            <rdfs:subClassOf rdf:resource="&obo;CL_0000000"/>
+                            <rdfs:label>primary cell culture</rdfs:label>
+                        </owl:Class>
+                        <owl:Class rdf:about="&obo;CL_0000999">""");
+        Path archivedOwl = OntologyTestFixtures.writeOntology(archiveDir, "cl-2024-09-26.owl", archivedContent);
+
+        // The current version drops monocyte, and primary cell culture, and no longer references either
+        String monocyte = archivedContent.substring(archivedContent.indexOf("<owl:Class rdf:about=\"&obo;CL_0000576\">"),
+                archivedContent.indexOf("<owl:Class rdf:about=\"&obo;CL_0000235\">"));
+        String culture = archivedContent.substring(archivedContent.indexOf("<owl:Class rdf:about=\"&obo;CL_0000001\">"),
+                archivedContent.indexOf("<owl:Class rdf:about=\"&obo;CL_0000999\">"));
+        String currentContent = archivedContent.replace(monocyte, "").replace(culture, "").replace(
+                "<owl:someValuesFrom rdf:resource=\"&obo;CL_0000576\"/>",
+                "<owl:someValuesFrom rdf:resource=\"&obo;CL_0000000\"/>");
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", currentContent);
+
+        // Another ontology still references monocyte
+        Path uberonOwl = OntologyTestFixtures.writeOntology(tempDir, "uberon.owl", OntologyTestFixtures.MINI_CL_OWL
+                .substring(0, OntologyTestFixtures.MINI_CL_OWL.indexOf("<owl:Ontology")) + """
+                    <owl:Ontology rdf:about="http://purl.obolibrary.org/obo/uberon.owl"/>
+                    <owl:Class rdf:about="&obo;UBERON_0000178">
+                        <rdfs:label>blood</rdfs:label>
+                        <rdfs:subClassOf>
+                            <owl:Restriction>
+                                <owl:onProperty rdf:resource="&obo;RO_0002202"/>
+                                <owl:someValuesFrom rdf:resource="&obo;CL_0000576"/>
+                            </owl:Restriction>
+                        </rdfs:subClassOf>
+                    </owl:Class>
+                </rdf:RDF>
+                """);
+        Path roOwl = OntologyTestFixtures.writeOntology(tempDir, "ro.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Map<String, OntologyElementMap> ontologyElementMaps = OntologyElementParser.parseOntologyElements(List.of(clOwl,
+                uberonOwl, roOwl));
+        List<Triple> archivedTriples = OntologyTripleParser.collectTriplesFromFile(archivedOwl, false);
+        List<Triple> currentTriples = OntologyTripleParser.collectTriplesFromFile(clOwl, false);
+        List<Triple> uberonTriples = OntologyTripleParser.collectTriplesFromFile(uberonOwl, false);
+
+        // Apply the plan to the documents stored by a full construction of the archived version, and the other
+        // ontology
+        Map<String, Map<String, BaseDocument>> vertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> edgeDocuments = new HashMap<>();
+        List<Triple> archivedGraphTriples = new ArrayList<>(archivedTriples);
+        archivedGraphTriples.addAll(uberonTriples);
+        OntologyGraphBuilder.constructGraph(archivedGraphTriples, ontologyElementMaps, vertexDocuments, edgeDocuments);
+        retainStoredDocuments(vertexDocuments, edgeDocuments);
+        assertTrue(edgeDocuments.get("UBERON-CL").containsKey("0000178-0000576"));
+        OntologyGraphBuilder.DeltaPlan plan = OntologyGraphBuilder.planDelta(OntologyTripleDelta.computeDelta(
+                archivedTriples, currentTriples), currentTriples, ontologyElementMaps);
+        assertEquals(Map.of("CL", Set.of("0000001", "0000576")), plan.verticesWithoutTriples());
+        assertEquals(Map.of(), plan.verticesToRemove());
+        applyPlan(plan, vertexDocuments, edgeDocuments);
+        retainStoredDocuments(vertexDocuments, edgeDocuments);
+
+        // Compare with the documents stored by a full construction of the current version, and the other ontology
+        Map<String, Map<String, BaseDocument>> expectedVertexDocuments = new HashMap<>();
+        Map<String, Map<String, BaseEdgeDocument>> expectedEdgeDocuments = new HashMap<>();
+        List<Triple> currentGraphTriples = new ArrayList<>(currentTriples);
+        currentGraphTriples.addAll(uberonTriples);
+        OntologyGraphBuilder.constructGraph(currentGraphTriples, ontologyElementMaps, expectedVertexDocuments,
+                expectedEdgeDocuments);
+        retainStoredDocuments(expectedVertexDocuments, expectedEdgeDocuments);
+        assertEquals(getStoredProperties(expectedVertexDocuments), getStoredProperties(vertexDocuments));
+        assertEquals(getStoredProperties(expectedEdgeDocuments), getStoredProperties(edgeDocuments));
+
+        // Monocyte is kept, without attributes, with the edge from the other ontology, but primary cell culture is
+        // removed
+        assertNull(vertexDocuments.get("CL").get("0000576").getAttribute("label"));
+        assertTrue(edgeDocuments.get("UBERON-CL").containsKey("0000178-0000576"));
+        assertFalse(vertexDocuments.get("CL").containsKey("0000001"));
+    }
+
+    /**
+     * Apply a plan to stored documents as applyDeltaPlan applies it to a graph: replace, and insert vertices, replace
+     * edges, remove edges, and vertices, with edges to removed vertices, then replace vertices without current triples
+     * which still have edges by vertices without attributes, and remove the others.
+     */
+    private static void applyPlan(OntologyGraphBuilder.DeltaPlan plan,
+                                  Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                  Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
+        plan.verticesToReplace().forEach((id, docs) -> vertexDocuments.computeIfAbsent(id,
+                k -> new HashMap<>()).putAll(docs));
+        plan.verticesToInsert().forEach((id, docs) -> docs.forEach((key, doc) -> vertexDocuments.computeIfAbsent(id,
+                k -> new HashMap<>()).putIfAbsent(key, doc)));
+        plan.edgesToReplace().forEach((idPair, docs) -> edgeDocuments.computeIfAbsent(idPair,
+                k -> new HashMap<>()).putAll(docs));
+        plan.edgesToRemove().forEach((idPair, keys) -> edgeDocuments.get(idPair).keySet().removeAll(keys));
+        plan.verticesToRemove().forEach((id, keys) -> {
+            vertexDocuments.get(id).keySet().removeAll(keys);
+            edgeDocuments.forEach((idPair, docs) -> {
+                if (idPair.endsWith("-" + id)) {
+                    docs.values().removeIf(doc -> keys.contains(OntologyGraphBuilder.getDocumentKey(doc.getTo())));
+                }
+            });
+        });
+        plan.verticesWithoutTriples().forEach((id, keys) -> {
+            for (String key : keys) {
+                if (!vertexDocuments.getOrDefault(id, Map.of()).containsKey(key)) continue;
+                String vertexId = id + "/" + key;
+                boolean connected = edgeDocuments.values().stream().flatMap(docs -> docs.values().stream()).anyMatch(
+                        doc -> doc.getFrom().equals(vertexId) || doc.getTo().equals(vertexId));
+                if (connected) {
+                    vertexDocuments.get(id).put(key, new BaseDocument(key));
+                } else {
+                    vertexDocuments.get(id).remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Retain the documents a full construction stores: vertices which are not deprecated, and edges to, and from
+     * them.
+     */
+    private static void retainStoredDocuments(Map<String, Map<String, BaseDocument>> vertexDocuments,
+                                              Map<String, Map<String, BaseEdgeDocument>> edgeDocuments) {
+        vertexDocuments.values().forEach(docs -> docs.values().removeIf(OntologyGraphBuilder::isDeprecated));
+        Map<String, Set<String>> storedVertexKeys = new HashMap<>();
+        vertexDocuments.forEach((id, docs) -> storedVertexKeys.put(id, docs.keySet()));
+        edgeDocuments.values().forEach(docs -> docs.values().removeIf(
+                doc -> !OntologyGraphBuilder.isVertexInserted(storedVertexKeys, doc.getFrom()) || !OntologyGraphBuilder.isVertexInserted(
+                        storedVertexKeys, doc.getTo())));
+    }
+
+    /**
+     * Get the properties, and endpoints of edges, of each document by collection name, and key, omitting empty
+     * collections.
+     */
+    private static Map<String, Map<String, Object>> getStoredProperties(
+            Map<String, ? extends Map<String, ? extends BaseDocument>> documents) {
+        Map<String, Map<String, Object>> properties = new HashMap<>();
+        documents.forEach((name, docs) -> docs.forEach((key, doc) -> properties.computeIfAbsent(name,
+                k -> new HashMap<>()).put(key, doc instanceof BaseEdgeDocument edge ? List.of(edge.getFrom(),
+                edge.getTo(), edge.getProperties()) : doc.getProperties())));
+        return properties;
+    }
+
     // --- Integration test (requires ArangoDB) ---
 
     @BeforeEach
@@ -0,0 +1,135 @@
+package gov.nih.nlm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Provides a small ontology file, modeled on the Cell Ontology, for tests which
+ * write their inputs to a temporary directory.
+ */
+final class OntologyTestFixtures {
+
+    /**
+     * A small ontology containing an ontology header, named classes with labels,
+     * restrictions to flatten, an obsolete class, and an annotation property
+     */
+    static final String MINI_CL_OWL = """
+            <?xml version="1.0"?>
+            <!DOCTYPE rdf:RDF [
+                <!ENTITY obo "http://purl.obolibrary.org/obo/" >
+                <!ENTITY owl "http://www.w3.org/2002/07/owl#" >
+                <!ENTITY xsd "http://www.w3.org/2001/XMLSchema#" >
+            ]>
+            <rdf:RDF xmlns="http://purl.obolibrary.org/obo/cl.owl#"
+                 xml:base="http://purl.obolibrary.org/obo/cl.owl"
+                 xmlns:dc="http://purl.org/dc/elements/1.1/"
+                 xmlns:obo="http://purl.obolibrary.org/obo/"
+                 xmlns:owl="http://www.w3.org/2002/07/owl#"
+                 xmlns:rdf="http://www.w3.org/1999/02/22-rdf-syntax-ns#"
+                 xmlns:xml="http://www.w3.org/XML/1998/namespace"
+                 xmlns:xsd="http://www.w3.org/2001/XMLSchema#"
+                 xmlns:rdfs="http://www.w3.org/2000/01/rdf-schema#"
+                 xmlns:oboInOwl="http://www.geneontology.org/formats/oboInOwl#">
+                <owl:Ontology rdf:about="http://purl.obolibrary.org/obo/cl.owl">
+                    <owl:versionIRI rdf:resource="http://purl.obolibrary.org/obo/cl/releases/2024-09-26/cl.owl"/>
+                    <obo:IAO_0000700 rdf:resource="&obo;CL_0000000"/>
+                    <dc:title>Cell Ontology</dc:title>
+                    <dc:description>An ontology of cell types</dc:description>
+                    <owl:versionInfo>2024-09-26</owl:versionInfo>
+                </owl:Ontology>
+                <owl:AnnotationProperty rdf:about="&obo;IAO_0000115">
+                    <rdfs:label>definition</rdfs:label>
+                </owl:AnnotationProperty>
+                <owl:ObjectProperty rdf:about="&obo;RO_0002202">
+                    <rdfs:label>develops from</rdfs:label>
+                </owl:ObjectProperty>
+                <owl:ObjectProperty rdf:about="&obo;RO_0002215">
+                    <rdfs:label>capable of</rdfs:label>
+                </owl:ObjectProperty>
+                <owl:Class rdf:about="&obo;CL_0000000">
+                    <rdfs:label>cell</rdfs:label>
+                </owl:Class>
+                <owl:Class rdf:about="&obo;CL_0000113">
+                    <rdfs:subClassOf rdf:resource="&obo;CL_0000000"/>
+                    <rdfs:label>mononuclear phagocyte</rdfs:label>
+                </owl:Class>
+                <owl:Class rdf:about="&obo;CL_0000576">
+                    <rdfs:subClassOf rdf:resource="&obo;CL_0000113"/>
+                    <rdfs:label>monocyte</rdfs:label>
+                </owl:Class>
+                <owl:Class rdf:about="&obo;CL_0000235">
+                    <rdfs:subClassOf rdf:resource="&obo;CL_0000113"/>
+                    <rdfs:subClassOf>
+                        <owl:Restriction>
+                            <owl:onProperty rdf:resource="&obo;RO_0002202"/>
+                            <owl:someValuesFrom rdf:resource="&obo;CL_0000576"/>
+                        </owl:Restriction>
+                    </rdfs:subClassOf>
+                    <rdfs:subClassOf>
+                        <owl:Restriction>
+                            <owl:onProperty rdf:resource="&obo;RO_0002215"/>
+                            <owl:someValuesFrom rdf:resource="&obo;GO_0031268"/>
+                        </owl:Restriction>
+                    </rdfs:subClassOf>
+                    <obo:IAO_0000115>A mononuclear phagocyte present in variety of tissues.</obo:IAO_0000115>
+                    <oboInOwl:hasExactSynonym>histiocyte</oboInOwl:hasExactSynonym>
+                    <oboInOwl:id>CL:0000235</oboInOwl:id>
+                    <rdfs:seeAlso rdf:resource="http://www.example.org/macrophage"/>
+                    <rdfs:label>macrophage</rdfs:label>
+                </owl:Class>
+                <owl:Class rdf:about="&obo;CL_0000999">
+                    <rdfs:subClassOf rdf:resource="&obo;CL_0000000"/>
+                    <owl:deprecated rdf:datatype="&xsd;boolean">true</owl:deprecated>
+                    <rdfs:label>obsolete cell</rdfs:label>
+                </owl:Class>
+                <owl:Class rdf:about="&obo;GO_0031268">
+                    <rdfs:label>pseudopodium organization</rdfs:label>
+                </owl:Class>
+                <owl:Class rdf:about="&obo;valid_term">
+                    <rdfs:label>valid term</rdfs:label>
+                </owl:Class>
+                <owl:Axiom>
+                    <owl:annotatedSource rdf:resource="&obo;CL_0000235"/>
+                    <owl:annotatedProperty rdf:resource="&obo;IAO_0000115"/>
+                    <owl:annotatedTarget>A mononuclear phagocyte present in variety of tissues.</owl:annotatedTarget>
+                </owl:Axiom>
+            </rdf:RDF>
+            """;
+
+    private OntologyTestFixtures() {
+    }
+
+    /**
+     * Write an ontology file to a directory.
+     *
+     * @param dir      Directory in which to write the file
+     * @param fileName Name of the file
+     * @param content  Content of the file
+     * @return Path to the file
+     * @throws IOException On write
+     */
+    static Path writeOntology(Path dir, String fileName, String content) throws IOException {
+        return Files.writeString(dir.resolve(fileName), content);
+    }
+
+    /**
+     * Write a gzip compressed ontology file to a directory.
+     *
+     * @param dir      Directory in which to write the file
+     * @param fileName Name of the file, ending with ".gz"
+     * @param content  Uncompressed content of the file
+     * @return Path to the file
+     * @throws IOException On write
+     */
+    static Path writeCompressedOntology(Path dir, String fileName, String content) throws IOException {
+        Path file = dir.resolve(fileName);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+package gov.nih.nlm;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OntologyTripleDeltaTest {
+
+    private static final Node macrophage = NodeFactory.createURI("http://purl.obolibrary.org/obo/CL_0000235");
+    private static final Node monocyte = NodeFactory.createURI("http://purl.obolibrary.org/obo/CL_0000576");
+    private static final Node developsFrom = NodeFactory.createURI("http://purl.obolibrary.org/obo/RO_0002202");
+    private static final Node capableOf = NodeFactory.createURI("http://purl.obolibrary.org/obo/RO_0002215");
+    private static final Node pseudopodium = NodeFactory.createURI("http://purl.obolibrary.org/obo/GO_0031268");
+
+    @Test
+    void findArchivedFile_mostRecentVersion(@TempDir Path tempDir) throws IOException {
+        Path goOwl = OntologyTestFixtures.writeOntology(tempDir, "go.owl", "");
+        assertNull(OntologyTripleDelta.findArchivedFile(goOwl));
+
+        Path archiveDir = Files.createDirectories(tempDir.resolve(".archive"));
+        OntologyTestFixtures.writeOntology(archiveDir, "go-2024-01-17.owl", "");
+        Path expectedFile = OntologyTestFixtures.writeOntology(archiveDir, "go-2024-06-10.owl", "");
+        OntologyTestFixtures.writeOntology(archiveDir, "go-plus-2025-01-01.owl", "");
+        OntologyTestFixtures.writeOntology(archiveDir, "go-2025-01-01.obo", "");
+
+        assertEquals(expectedFile, OntologyTripleDelta.findArchivedFile(goOwl));
+
+        // Compressed current, and archived files
+        Path compressedFile = OntologyTestFixtures.writeCompressedOntology(archiveDir, "go-2024-09-01.owl.gz", "");
+        assertEquals(compressedFile, OntologyTripleDelta.findArchivedFile(tempDir.resolve("go.owl.gz")));
+    }
+
+    @Test
+    void computeDelta_addedAndRemoved() {
+        Triple kept = Triple.create(macrophage, developsFrom, monocyte);
+        Triple removed = Triple.create(macrophage, capableOf, pseudopodium);
+        Triple added = Triple.create(monocyte, capableOf, pseudopodium);
+        Triple blank = Triple.create(macrophage, capableOf, NodeFactory.createBlankNode());
+
+        OntologyTripleDelta.Delta delta = OntologyTripleDelta.computeDelta(List.of(kept, removed, kept), List.of(blank,
+                added, kept));
+
+        assertEquals(Set.of(added), Set.copyOf(delta.added()));
+        assertEquals(Set.of(removed), Set.copyOf(delta.removed()));
+        assertEquals(Set.of(macrophage, monocyte), delta.getAffectedSubjects());
+        assertFalse(delta.isEmpty());
+        assertTrue(OntologyTripleDelta.computeDelta(List.of(kept), List.of(kept, blank)).isEmpty());
+        assertEquals(List.of(kept), OntologyTripleDelta.selectTriplesWithSubjects(List.of(added, kept), Set.of(
+                macrophage)));
+    }
+}
@@ -5,9 +5,13 @@ import org.apache.jena.ontapi.OntModelFactory;
 import org.apache.jena.ontapi.model.OntModel;
 import org.apache.jena.riot.RDFDataMgr;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
@@ -152,4 +156,143 @@ class OntologyTripleParserTest {
         assertNotNull(uniqueTriples);
         assertTrue(uniqueTriples.isEmpty());
     }
+
+    @Test
+    void collectTriplesFromFile_miniClMatchesOntModel(@TempDir Path tempDir) throws IOException {
+        Path owlFile = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+
+        for (boolean testObjectInRootNS : List.of(false, true)) {
+            List<Triple> streamed = OntologyTripleParser.collectTriplesFromFile(owlFile, testObjectInRootNS);
+            List<Triple> modeled = OntologyTripleParser.collectTriplesFromOntModel(owlFile, testObjectInRootNS);
+
+            assertFalse(streamed.isEmpty());
+            assertEquals(new HashSet<>(modeled), new HashSet<>(streamed));
+            assertEquals(modeled.size(), streamed.size());
+        }
+    }
+
+    @Test
+    void collectTriplesFromFile_readsCompressedFile(@TempDir Path tempDir) throws IOException {
+        Path owlFile = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path compressedDir = Files.createDirectories(tempDir.resolve("compressed"));
+        Path compressedFile = OntologyTestFixtures.writeCompressedOntology(compressedDir, "cl.owl.gz",
+                OntologyTestFixtures.MINI_CL_OWL);
+
+        List<Triple> expected = OntologyTripleParser.streamTriplesFromFile(owlFile, false);
+        assertEquals(new HashSet<>(expected), new HashSet<>(OntologyTripleParser.collectTriplesFromFile(compressedFile,
+                false)));
+        assertEquals(new HashSet<>(expected), new HashSet<>(OntologyTripleParser.collectTriplesFromOntModel(
+                compressedFile, false)));
+    }
+
+    @Test
+    void collectTriplesFromFile_miniClFlattenedRestrictions(@TempDir Path tempDir) throws IOException {
+        Path owlFile = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        List<Triple> triples = OntologyTripleParser.collectTriplesFromFile(owlFile, false);
+
+        String macrophageUri = "http://purl.obolibrary.org/obo/CL_0000235";
+        assertTrue(triples.stream().anyMatch(t -> t.getSubject().getURI().equals(macrophageUri) && t.getPredicate().getURI().equals(
+                "http://purl.obolibrary.org/obo/RO_0002202") && t.getObject().getURI().equals(
+                "http://purl.obolibrary.org/obo/CL_0000576")));
+        assertTrue(triples.stream().anyMatch(t -> t.getSubject().getURI().equals(macrophageUri) && t.getPredicate().getURI().equals(
+                "http://purl.obolibrary.org/obo/RO_0002215") && t.getObject().getURI().equals(
+                "http://purl.obolibrary.org/obo/GO_0031268")));
+
+        // Only classes in the root namespace are subjects, and no anonymous objects remain
+        for (Triple t : triples) {
+            assertTrue(t.getSubject().getURI().startsWith("http://purl.obolibrary.org/obo/CL"));
+            assertFalse(t.getObject().isBlank());
+        }
+    }
+
+    @Test
+    void collectUniqueTriples_parallelMatchesSerial(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path uberonOwl = OntologyTestFixtures.writeOntology(tempDir, "uberon.owl",
+                OntologyTestFixtures.MINI_CL_OWL.replace("CL_", "UBERON_"));
+        Path copyOwl = OntologyTestFixtures.writeOntology(tempDir, "cl-copy.owl", OntologyTestFixtures.MINI_CL_OWL);
+        List<Path> files = List.of(clOwl, uberonOwl, copyOwl);
+
+        HashSet<Triple> serial = OntologyTripleParser.collectUniqueTriples(files, false, 1);
+        HashSet<Triple> parallel = OntologyTripleParser.collectUniqueTriples(files, false, 3);
+
+        assertFalse(serial.isEmpty());
+        assertEquals(serial, parallel);
+        assertEquals(new HashSet<>(OntologyTripleParser.collectTriplesFromFile(clOwl, false)).size() * 2,
+                parallel.size());
+    }
+
+    @Test
+    void collectCompactTriples_matchesUniqueTriples(@TempDir Path tempDir) throws IOException {
+        Path clOwl = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path uberonOwl = OntologyTestFixtures.writeOntology(tempDir, "uberon.owl",
+                OntologyTestFixtures.MINI_CL_OWL.replace("CL_", "UBERON_"));
+        List<Path> files = List.of(clOwl, uberonOwl, clOwl);
+
+        HashSet<Triple> uniqueTriples = OntologyTripleParser.collectUniqueTriples(files, false, 1);
+        CompactTripleStore serial = OntologyTripleParser.collectCompactTriples(files, false, 1);
+        CompactTripleStore parallel = OntologyTripleParser.collectCompactTriples(files, false, 3);
+
+        assertEquals(uniqueTriples.size(), serial.size());
+        assertEquals(uniqueTriples, new HashSet<>(serial));
+        assertEquals(new ArrayList<>(serial), new ArrayList<>(parallel));
+    }
+
+    @Test
+    void collectTriplesFromFile_loadsFromCache(@TempDir Path tempDir) throws IOException {
+        Path owlFile = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+
+        List<Triple> streamed = OntologyTripleParser.collectTriplesFromFile(owlFile, false);
+        Path cacheFile = PathUtilities.getCacheFile(owlFile, "-false.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION);
+        assertTrue(Files.isRegularFile(cacheFile));
+
+        List<Triple> cached = OntologyTripleParser.collectTriplesFromFile(owlFile, false);
+        assertEquals(streamed, cached);
+
+        // The flag is part of the key
+        OntologyTripleParser.collectTriplesFromFile(owlFile, true);
+        assertTrue(Files.isRegularFile(PathUtilities.getCacheFile(owlFile, "-true.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION)));
+    }
+
+    @Test
+    void collectTriplesFromFile_replacesCacheWhenFileChanges(@TempDir Path tempDir) throws IOException {
+        Path owlFile = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        OntologyTripleParser.collectTriplesFromFile(owlFile, false);
+        Path previousCacheFile = PathUtilities.getCacheFile(owlFile, "-false.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION);
+
+        OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL.replace("macrophage",
+                "histiocyte"));
+        List<Triple> triples = OntologyTripleParser.collectTriplesFromFile(owlFile, false);
+
+        assertFalse(Files.exists(previousCacheFile));
+        assertTrue(Files.isRegularFile(PathUtilities.getCacheFile(owlFile, "-false.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION)));
+        assertEquals(OntologyTripleParser.streamTriplesFromFile(owlFile, false), triples);
+        assertTrue(triples.stream().anyMatch(t -> t.getObject().isLiteral() && t.getObject().getLiteralLexicalForm().equals(
+                "histiocyte")));
+    }
+
+    @Test
+    void collectTriplesFromFile_replacesCacheOfPreviousVersion(@TempDir Path tempDir) throws IOException {
+        Path owlFile = OntologyTestFixtures.writeOntology(tempDir, "cl.owl", OntologyTestFixtures.MINI_CL_OWL);
+        Path cacheDir = Files.createDirectories(tempDir.resolve(".cache"));
+        Path unversionedCacheFile = Files.writeString(cacheDir.resolve("cl-" + PathUtilities.sha256(
+                owlFile) + "-false.trdf"), "stale");
+        Path previousCacheFile = Files.writeString(PathUtilities.getCacheFile(owlFile, "-false.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION - 1), "stale");
+        Path otherFlagCacheFile = Files.writeString(PathUtilities.getCacheFile(owlFile, "-true.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION), "other");
+
+        List<Triple> triples = OntologyTripleParser.collectTriplesFromFile(owlFile, false);
+
+        assertEquals(OntologyTripleParser.streamTriplesFromFile(owlFile, false), triples);
+        assertFalse(Files.exists(unversionedCacheFile));
+        assertFalse(Files.exists(previousCacheFile));
+        assertTrue(Files.exists(otherFlagCacheFile));
+        assertTrue(Files.isRegularFile(PathUtilities.getCacheFile(owlFile, "-false.trdf",
+                OntologyTripleParser.TRIPLE_CACHE_VERSION)));
+    }
 }
@@ -1,13 +1,20 @@
 package gov.nih.nlm;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -57,4 +64,63 @@ class PathUtilitiesTest {
             assertTrue(file.toFile().isFile());
         }
     }
+
+    @Test
+    void sha256_knownContent(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("abc.txt"), "abc");
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", PathUtilities.sha256(file));
+    }
+
+    @Test
+    void getContentHash_reusesRecordedHashUntilFileChanges(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("abc.txt"), "abc");
+        FileTime lastModifiedTime = Files.getLastModifiedTime(file);
+        String sha256 = PathUtilities.getContentHash(file);
+        assertEquals(PathUtilities.sha256(file), sha256);
+        assertTrue(Files.isRegularFile(tempDir.resolve(".cache/abc.txt.sha256")));
+
+        // The recorded hash is reused, without reading the file, while its size, and time are unchanged
+        Files.writeString(file, "xyz");
+        Files.setLastModifiedTime(file, lastModifiedTime);
+        assertEquals(sha256, PathUtilities.getContentHash(file));
+
+        // The hash is computed again once either changes
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModifiedTime.toMillis() + 1000));
+        assertEquals(PathUtilities.sha256(file), PathUtilities.getContentHash(file));
+        assertNotEquals(sha256, PathUtilities.getContentHash(file));
+    }
+
+    @Test
+    void linkOrCopy_replacesTarget(@TempDir Path tempDir) throws IOException {
+        Path source = Files.writeString(tempDir.resolve("abc.txt"), "abc");
+        Path target = Files.writeString(tempDir.resolve("target.txt"), "old");
+        PathUtilities.linkOrCopy(source, target);
+        assertEquals("abc", Files.readString(target));
+    }
+
+    @Test
+    void newInputStream_decompressesGzipFiles(@TempDir Path tempDir) throws IOException {
+        Path compressedFile = OntologyTestFixtures.writeCompressedOntology(tempDir, "cl.owl.gz", "abc");
+        try (InputStream in = PathUtilities.newInputStream(compressedFile)) {
+            assertEquals("abc", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals("cl.owl", PathUtilities.getUncompressedFileName(compressedFile));
+        assertEquals("cl", PathUtilities.getFileStem(compressedFile));
+        assertEquals(3, PathUtilities.getUncompressedSize(compressedFile));
+        assertEquals(PathUtilities.sha256(Files.writeString(tempDir.resolve("abc.txt"), "abc")),
+                PathUtilities.transcode(compressedFile, true, tempDir.resolve("cl.owl"), false));
+        assertEquals("abc", Files.readString(tempDir.resolve("cl.owl")));
+    }
+
+    @Test
+    void listFilesMatchingPattern_matchesUncompressedName(@TempDir Path tempDir) throws IOException {
+        Path clOwl = Files.writeString(tempDir.resolve("cl.owl"), "abc");
+        Path clOwlGz = OntologyTestFixtures.writeCompressedOntology(tempDir, "cl.owl.gz", "abc");
+        Path goOwlGz = OntologyTestFixtures.writeCompressedOntology(tempDir, "go.owl.gz", "abc");
+        Files.setLastModifiedTime(clOwl, FileTime.fromMillis(Files.getLastModifiedTime(clOwlGz).toMillis() - 1000));
+
+        List<Path> files = PathUtilities.listFilesMatchingPattern(tempDir.toString(), ".*\\.owl");
+        assertEquals(Set.of(clOwlGz, goOwlGz), Set.copyOf(files));
+        assertEquals(List.of(goOwlGz), PathUtilities.listFilesMatchingPattern(tempDir.toString(), "go.owl"));
+    }
 }
@@ -0,0 +1,201 @@
+package gov.nih.nlm;
+
+import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoDBException;
+import com.arangodb.entity.BaseDocument;
+import com.arangodb.entity.BaseEdgeDocument;
+import com.arangodb.entity.MultiDocumentEntity;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nih.nlm.ArangoDbUtilities.BatchReport;
+import gov.nih.nlm.ArangoDbUtilities.WritePolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WritePolicyTest {
+
+    @Test
+    void batchSize_shrinksAndGrows() {
+        WritePolicy writePolicy = new WritePolicy(1000, 5, 100, 1000, 50, null);
+        assertEquals(1000, writePolicy.getBatchSize(10000));
+        assertEquals(500, writePolicy.getBatchSize(500));
+
+        writePolicy.recordFailure();
+        assertEquals(500, writePolicy.getBatchSize(10000));
+        writePolicy.recordLatency(100_000_000L);
+        assertEquals(250, writePolicy.getBatchSize(10000));
+        writePolicy.recordFailure();
+        writePolicy.recordFailure();
+        assertEquals(100, writePolicy.getBatchSize(10000));
+
+        writePolicy.recordLatency(10_000_000L);
+        assertEquals(200, writePolicy.getBatchSize(10000));
+        for (int i = 0; i < 20; i++) {
+            writePolicy.recordLatency(10_000_000L);
+        }
+        assertEquals(1000, writePolicy.getBatchSize(10000));
+    }
+
+    @Test
+    void backoff_doublesUpToMaximum() {
+        WritePolicy writePolicy = new WritePolicy(1000, 5, 100, 1000, 50, null);
+        for (int i = 0; i < 10; i++) {
+            long backoffMillis = writePolicy.getBackoffMillis(0);
+            assertTrue(backoffMillis >= 50 && backoffMillis <= 100);
+            backoffMillis = writePolicy.getBackoffMillis(2);
+            assertTrue(backoffMillis >= 200 && backoffMillis <= 400);
+            backoffMillis = writePolicy.getBackoffMillis(40);
+            assertTrue(backoffMillis >= 500 && backoffMillis <= 1000);
+        }
+    }
+
+    @Test
+    void isRetryable_timeoutsAndUnavailable() {
+        assertTrue(WritePolicy.isRetryable(new ArangoDBException("unavailable", 503)));
+        assertTrue(WritePolicy.isRetryable(ArangoDBException.of(new SocketTimeoutException())));
+        assertFalse(WritePolicy.isRetryable(new ArangoDBException("conflict", 409)));
+        assertFalse(WritePolicy.isRetryable(new IllegalArgumentException()));
+        assertTrue(WritePolicy.isRetryable(ArangoDBException.of(new ConnectException())));
+        assertTrue(WritePolicy.isRetryable(new CompletionException(new TimeoutException())));
+        assertFalse(WritePolicy.isRetryable(ArangoDBException.of(new IOException("serialization"))));
+    }
+
+    @Test
+    void writeDeadLetters_appendsJsonLines(@TempDir Path tempDir) throws IOException {
+        Path deadLetterFile = tempDir.resolve("obo").resolve("dead_letters.jsonl");
+        WritePolicy writePolicy = new WritePolicy(1000, Map.of("ARANGO_DB_DEAD_LETTER_FILE",
+                deadLetterFile.toString()));
+        BaseDocument vertex = new BaseDocument("0000235");
+        vertex.addAttribute("label", "macrophage");
+        BaseEdgeDocument edge = new BaseEdgeDocument("0000235-0000576", "CL/0000235", "CL/0000576");
+
+        writePolicy.writeDeadLetters("CL", List.of(vertex), List.of("timeout"));
+        writePolicy.writeDeadLetters("CL-CL", List.of(edge), List.of("unavailable"));
+
+        List<String> lines = Files.readAllLines(deadLetterFile);
+        assertEquals(2, lines.size());
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode deadLetter = mapper.readTree(lines.get(0));
+        assertEquals("CL", deadLetter.get("collection").asText());
+        assertEquals("timeout", deadLetter.get("error").asText());
+        assertEquals("0000235", deadLetter.get("document").get("_key").asText());
+        assertEquals("macrophage", deadLetter.get("document").get("label").asText());
+        deadLetter = mapper.readTree(lines.get(1));
+        assertEquals("CL/0000576", deadLetter.get("document").get("_to").asText());
+    }
+
+    /**
+     * Stub collection which throws each of the specified exceptions in turn
+     * for a multi-document insert, or remove, then reports every document
+     * written, or removed.
+     */
+    private static ArangoCollection createStubCollection(AtomicInteger nRequests, ArangoDBException... exceptions) {
+        return (ArangoCollection) Proxy.newProxyInstance(ArangoCollection.class.getClassLoader(),
+                new Class<?>[]{ArangoCollection.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "name" -> "CL";
+                    case "insertDocuments", "deleteDocuments" -> {
+                        int nRequest = nRequests.getAndIncrement();
+                        if (nRequest < exceptions.length) {
+                            throw exceptions[nRequest];
+                        }
+                        MultiDocumentEntity<Object> result = new MultiDocumentEntity<>();
+                        result.setDocumentsAndErrors(List.of());
+                        yield result;
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * ArangoDB utilities which never connect, and back off briefly.
+     */
+    private static ArangoDbUtilities createArangoDbUtilities(Path deadLetterFile) {
+        return new ArangoDbUtilities(Map.of("ARANGO_DB_HOST", "localhost", "ARANGO_DB_PORT", "8529",
+                "ARANGO_DB_USER", "root", "ARANGO_DB_PASSWORD", "", "ARANGO_DB_INITIAL_BACKOFF_MS", "1",
+                "ARANGO_DB_MAX_BACKOFF_MS", "2", "ARANGO_DB_DEAD_LETTER_FILE", deadLetterFile.toString()));
+    }
+
+    @Test
+    void insertDocuments_retriesUnavailable(@TempDir Path tempDir) {
+        Path deadLetterFile = tempDir.resolve("dead_letters.jsonl");
+        AtomicInteger nRequests = new AtomicInteger();
+        ArangoCollection collection = createStubCollection(nRequests, new ArangoDBException("unavailable", 503));
+        List<BaseDocument> documents = List.of(new BaseDocument("0000235"), new BaseDocument("0000576"));
+
+        List<BatchReport> batchReports = createArangoDbUtilities(deadLetterFile).insertDocuments(collection,
+                documents, 10);
+
+        assertEquals(2, nRequests.get());
+        assertEquals(1, batchReports.size());
+        assertFalse(batchReports.get(0).hasErrors());
+        assertFalse(Files.exists(deadLetterFile));
+    }
+
+    @Test
+    void insertDocuments_deadLettersNonRetryable(@TempDir Path tempDir) throws IOException {
+        Path deadLetterFile = tempDir.resolve("dead_letters.jsonl");
+        AtomicInteger nRequests = new AtomicInteger();
+        ArangoCollection collection = createStubCollection(nRequests, new ArangoDBException("conflict", 409));
+        List<BaseDocument> documents = List.of(new BaseDocument("0000235"), new BaseDocument("0000576"));
+
+        List<BatchReport> batchReports = createArangoDbUtilities(deadLetterFile).insertDocuments(collection,
+                documents, 10);
+
+        assertEquals(1, nRequests.get());
+        assertEquals(List.of("0000235", "0000576"), batchReports.get(0).failedKeys());
+        List<String> lines = Files.readAllLines(deadLetterFile);
+        assertEquals(2, lines.size());
+        assertEquals("conflict", new ObjectMapper().readTree(lines.get(0)).get("error").asText());
+    }
+
+    @Test
+    void removeDocuments_retriesUnavailable(@TempDir Path tempDir) {
+        Path deadLetterFile = tempDir.resolve("dead_letters.jsonl");
+        AtomicInteger nRequests = new AtomicInteger();
+        ArangoCollection collection = createStubCollection(nRequests, new ArangoDBException("unavailable", 503));
+
+        List<BatchReport> batchReports = createArangoDbUtilities(deadLetterFile).removeDocuments(collection,
+                List.of("0000235", "0000576"), 10);
+
+        assertEquals(2, nRequests.get());
+        assertEquals(1, batchReports.size());
+        assertFalse(batchReports.get(0).hasErrors());
+        assertFalse(Files.exists(deadLetterFile));
+    }
+
+    @Test
+    void removeDocuments_deadLettersAfterRetries(@TempDir Path tempDir) throws IOException {
+        Path deadLetterFile = tempDir.resolve("dead_letters.jsonl");
+        AtomicInteger nRequests = new AtomicInteger();
+        ArangoDBException unavailable = new ArangoDBException("unavailable", 503);
+        ArangoCollection collection = createStubCollection(nRequests, unavailable, unavailable, unavailable,
+                unavailable, unavailable, unavailable);
+
+        List<BatchReport> batchReports = createArangoDbUtilities(deadLetterFile).removeDocuments(collection,
+                List.of("0000235"), 10);
+
+        assertEquals(6, nRequests.get());
+        assertEquals(List.of("0000235"), batchReports.get(0).failedKeys());
+        List<String> lines = Files.readAllLines(deadLetterFile);
+        assertEquals(1, lines.size());
+        JsonNode deadLetter = new ObjectMapper().readTree(lines.get(0));
+        assertEquals("Could not remove: unavailable", deadLetter.get("error").asText());
+        assertEquals("0000235", deadLetter.get("document").get("_key").asText());
+    }
+}